@@ -0,0 +1,66 @@
+package com.minepath.twitchplugin;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// EventDecoder on the bodies the backend forwards, which still carry Twitch's own snake_case
+// fields next to the ones the plugin reads
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventDecodeBenchmark {
+    
+    private static final int BATCH_SIZE = 100;
+    
+    @Param({"subscribe", "gift_subscription", "cheer", "raid", "follow"})
+    public String type;
+    
+    private final EventDecoder decoder = new EventDecoder();
+    private byte[] payload;
+    private byte[] batch;
+    
+    @Setup
+    public void setup() throws IOException {
+        payload = Headless.payload(type);
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            ndjson.write(payload);
+            ndjson.write('\n');
+        }
+        batch = ndjson.toByteArray();
+    }
+    
+    // /twitch-event: one event per body
+    @Benchmark
+    public TwitchEvent decode() throws IOException {
+        return decoder.decode(new ByteArrayInputStream(payload));
+    }
+    
+    // /twitch-events: one streaming reader over newline-delimited events
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void decodeBatch(Blackhole blackhole) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(batch), StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        while (reader.peek() != JsonToken.END_DOCUMENT) {
+            blackhole.consume(decoder.decode(reader));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.minepath.twitchplugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// The decisions EventHandler.handleEvent makes for every event against the bundled config: the
+// event table lookup, rule matching and the broadcast message. Target resolution and the actions
+// themselves need a live world and are left to SpawnPlanBenchmark and the server.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventDispatchBenchmark {
+    
+    @Param({"subscribe", "gift_subscription", "cheer", "raid", "follow"})
+    public String type;
+    
+    private final StringBuilder buffer = new StringBuilder(128);
+    private final RuleCooldowns cooldowns = new RuleCooldowns();
+    private PluginSettings settings;
+    private TwitchEvent event;
+    private byte[] payload;
+    private EventDecoder decoder;
+    
+    @Setup
+    public void setup() throws IOException {
+        settings = Headless.bundledSettings();
+        decoder = new EventDecoder(t -> settings.getEvent(t) != null);
+        payload = Headless.payload(type);
+        event = decoder.decode(new ByteArrayInputStream(payload));
+    }
+    
+    @Benchmark
+    public int dispatch() {
+        return dispatch(event);
+    }
+    
+    // Body to broadcast line, everything the HTTP and main threads do before touching the world
+    @Benchmark
+    public int decodeAndDispatch() throws IOException {
+        return dispatch(decoder.decode(new ByteArrayInputStream(payload)));
+    }
+    
+    private int dispatch(TwitchEvent event) {
+        PluginSettings.EventSettings config = settings.getEvent(event.getType());
+        if (config == null || !config.isEnabled()) {
+            return 0;
+        }
+        EventRule rule = config.match(event, System.currentTimeMillis(), cooldowns);
+        if (rule == null) {
+            return 0;
+        }
+        MessageTemplate message = rule.getMessage() != null ? rule.getMessage() : config.getMessage();
+        buffer.setLength(0);
+        message.render(buffer, event, "Streamer", 5);
+        return buffer.length();
+    }
+}
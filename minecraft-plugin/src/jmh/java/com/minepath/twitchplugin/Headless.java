@@ -0,0 +1,183 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+// Stand-in for a running Bukkit server so plugin code can be benchmarked without one. Server,
+// World and Player are dynamic proxies that answer what the code under test asks and return
+// empty collections, zero or null for everything else. Also loads the bundled config.yml and the
+// sample payloads.
+final class Headless {
+    
+    private static final Logger LOGGER = Logger.getLogger("Headless");
+    
+    private Headless() {
+    }
+    
+    // Bukkit only accepts one server per JVM
+    static synchronized void install() {
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+        Bukkit.setServer(proxy(Server.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getLogger":
+                    return LOGGER;
+                case "getName":
+                    return "Headless";
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "1.18.2-R0.1-SNAPSHOT";
+                default:
+                    return defaultAnswer(proxy, method, args);
+            }
+        }));
+    }
+    
+    // A world where every chunk is loaded: stone up to y 64 with a 3x3 pillar in each chunk corner,
+    // so spawn planning finds open ground but has blocks to skip
+    static World flatWorld(String name) {
+        UUID id = UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8));
+        ChunkSnapshot snapshot = proxy(ChunkSnapshot.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getHighestBlockYAt":
+                    return isPillar((Integer) args[0], (Integer) args[1]) ? 70 : 64;
+                case "getBlockType":
+                    int y = (Integer) args[1];
+                    boolean pillar = isPillar((Integer) args[0], (Integer) args[2]);
+                    return y <= 64 || (pillar && y <= 70) ? Material.STONE : Material.AIR;
+                default:
+                    return defaultAnswer(proxy, method, args);
+            }
+        });
+        Chunk chunk = proxy(Chunk.class, (proxy, method, args) ->
+                method.getName().equals("getChunkSnapshot") ? snapshot : defaultAnswer(proxy, method, args));
+        return proxy(World.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getUID":
+                    return id;
+                case "getMinHeight":
+                    return -64;
+                case "getMaxHeight":
+                    return 320;
+                case "isChunkLoaded":
+                    return true;
+                case "getChunkAt":
+                    return chunk;
+                default:
+                    return defaultAnswer(proxy, method, args);
+            }
+        });
+    }
+    
+    private static boolean isPillar(int lx, int lz) {
+        return lx < 3 && lz < 3;
+    }
+    
+    // An online player standing at location
+    static Player player(String name, Location location) {
+        UUID id = UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8));
+        return proxy(Player.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getUniqueId":
+                    return id;
+                case "getLocation":
+                    return location.clone();
+                case "getWorld":
+                    return location.getWorld();
+                case "isOnline":
+                    return true;
+                default:
+                    return defaultAnswer(proxy, method, args);
+            }
+        });
+    }
+    
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+    
+    private static Object defaultAnswer(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Headless " + proxy.getClass().getInterfaces()[0].getSimpleName();
+            default:
+                break;
+        }
+        Class<?> type = method.getReturnType();
+        if (type == void.class) {
+            return null;
+        }
+        if (type.isPrimitive()) {
+            // The element of a fresh array is the type's default value
+            return Array.get(Array.newInstance(type, 1), 0);
+        }
+        if (type.isAssignableFrom(List.class)) {
+            return Collections.emptyList();
+        }
+        if (type.isAssignableFrom(Set.class)) {
+            return Collections.emptySet();
+        }
+        if (type.isAssignableFrom(Map.class)) {
+            return Collections.emptyMap();
+        }
+        return null;
+    }
+    
+    // The plugin's bundled config.yml, compiled as the plugin would on startup
+    static PluginSettings bundledSettings() throws IOException {
+        install();
+        try (Reader reader = new InputStreamReader(open("/config.yml"), StandardCharsets.UTF_8)) {
+            return PluginSettings.compile(YamlConfiguration.loadConfiguration(reader));
+        }
+    }
+    
+    // One of the EventSub-shaped sample bodies in src/jmh/resources/payloads
+    static byte[] payload(String type) throws IOException {
+        try (InputStream in = open("/payloads/" + type + ".json")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+    
+    private static InputStream open(String resource) throws IOException {
+        InputStream in = Headless.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Missing resource " + resource);
+        }
+        return in;
+    }
+}
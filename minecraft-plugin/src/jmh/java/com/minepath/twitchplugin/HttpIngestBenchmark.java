@@ -0,0 +1,146 @@
+package com.minepath.twitchplugin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Events accepted per second through a real IngestServer on loopback, single posts and NDJSON
+// batches, with several client threads on kept-alive connections. The handlers decode and queue
+// like the plugin's; the queue is drained by one thread standing in for the main thread.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class HttpIngestBenchmark {
+    
+    private static final int BATCH_SIZE = 50;
+    
+    // server.threads
+    @Param({"4"})
+    public int threads;
+    
+    private final BlockingQueue<TwitchEvent> queue = new ArrayBlockingQueue<>(1024);
+    private final EventDecoder decoder = new EventDecoder();
+    private IngestServer server;
+    private Thread drainer;
+    private HttpClient client;
+    private HttpRequest single;
+    private HttpRequest batch;
+    
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Headless.install();
+        MemoryConfiguration config = new MemoryConfiguration();
+        config.set("host", "127.0.0.1");
+        config.set("port", 0);
+        config.set("threads", threads);
+        server = new IngestServer(Logger.getLogger("HttpIngestBenchmark"), config);
+        server.start();
+        server.createContext("/twitch-event", exchange -> {
+            try {
+                TwitchEvent event = decoder.decode(server.openBody(exchange),
+                        exchange.getRequestHeaders().getFirst("Twitch-Eventsub-Message-Id"));
+                if (queue.offer(event)) {
+                    server.sendStatus(exchange, 200, "success", "Event queued");
+                } else {
+                    server.sendStatus(exchange, 503, "error", "Event queue full");
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        server.createContext("/twitch-events", exchange -> {
+            try {
+                JsonArray results = new JsonArray();
+                JsonReader reader = new JsonReader(new InputStreamReader(
+                        new ByteArrayInputStream(server.readBatchBody(exchange)), StandardCharsets.UTF_8));
+                reader.setLenient(true);
+                while (reader.peek() != JsonToken.END_DOCUMENT) {
+                    JsonObject result = new JsonObject();
+                    result.addProperty("status", queue.offer(decoder.decode(reader)) ? "queued" : "queue_full");
+                    results.add(result);
+                }
+                JsonObject response = new JsonObject();
+                response.add("results", results);
+                server.sendJson(exchange, 200, response.toString());
+            } finally {
+                exchange.close();
+            }
+        });
+        server.listen();
+        
+        drainer = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    queue.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "HttpIngestBenchmark-drain");
+        drainer.setDaemon(true);
+        drainer.start();
+        
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        byte[] cheer = Headless.payload("cheer");
+        single = HttpRequest.newBuilder(URI.create(base + "/twitch-event"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(cheer))
+                .build();
+                
+        StringBuilder lines = new StringBuilder();
+        String line = new String(cheer, StandardCharsets.UTF_8).replace('\n', ' ').trim();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            lines.append(line).append('\n');
+        }
+        batch = HttpRequest.newBuilder(URI.create(base + "/twitch-events"))
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofString(lines.toString()))
+                .build();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+        drainer.interrupt();
+    }
+    
+    @Benchmark
+    public int postEvent() throws IOException, InterruptedException {
+        return client.send(single, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int postBatch() throws IOException, InterruptedException {
+        return client.send(batch, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
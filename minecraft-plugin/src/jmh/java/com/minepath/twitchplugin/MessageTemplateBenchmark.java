@@ -0,0 +1,47 @@
+package com.minepath.twitchplugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Broadcast messages: compiling a template (config load) and rendering one (every event)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageTemplateBenchmark {
+    
+    // events.cheer.message from the bundled config
+    private static final String CHEER = "&6%player% &ehas been targeted by &c%amount% skeletons &ethanks to &b%user%&e's &6%bits% bits&e!";
+    
+    private final StringBuilder buffer = new StringBuilder(128);
+    private MessageTemplate template;
+    private TwitchEvent event;
+    
+    @Setup
+    public void setup() throws IOException {
+        Headless.install();
+        template = MessageTemplate.compile(CHEER);
+        event = new EventDecoder().decode(new ByteArrayInputStream(Headless.payload("cheer")));
+    }
+    
+    @Benchmark
+    public MessageTemplate compile() {
+        return MessageTemplate.compile(CHEER);
+    }
+    
+    // As EventHandler does it: into a reused buffer, then one String
+    @Benchmark
+    public String render() {
+        buffer.setLength(0);
+        template.render(buffer, event, "Streamer", 5);
+        return buffer.toString();
+    }
+}
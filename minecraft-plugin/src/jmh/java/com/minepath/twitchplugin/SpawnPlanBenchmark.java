@@ -0,0 +1,49 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// SpawnPlanner.plan for one wave around a player in a flat headless world, with the chunk scans
+// cached (the usual case during a stream) and from cold
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpawnPlanBenchmark {
+    
+    @Param({"1", "20", "50"})
+    public int amount;
+    
+    private final SpawnPlanner planner = new SpawnPlanner();
+    private PluginSettings settings;
+    private Player target;
+    
+    @Setup
+    public void setup() throws IOException {
+        settings = Headless.bundledSettings();
+        World world = Headless.flatWorld("mines/bench");
+        target = Headless.player("Streamer", new Location(world, 8.5, 65, 8.5));
+    }
+    
+    @Benchmark
+    public Location[] planCached() {
+        return planner.plan(target, amount, settings);
+    }
+    
+    @Benchmark
+    public Location[] planCold() {
+        planner.clear();
+        return planner.plan(target, amount, settings);
+    }
+}
@@ -0,0 +1,295 @@
+package com.minepath.twitchplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Standalone load generator for the plugin's ingest endpoint: posts recorded or synthetic events
+// to /twitch-event (or NDJSON batches to /twitch-events, or frames on the event stream) at a
+// fixed rate with a bounded number of requests in flight, then reports the outcome of every event and the latency percentiles.
+// Only talks to the server it is pointed at, so it runs fine offline against a local server.
+//
+//   java -jar TwitchStreamPlugin-1.0.0-loadgen.jar --rate 500 --duration 30 --mix raid=1,gift_subscription=10
+//   java -jar TwitchStreamPlugin-1.0.0-loadgen.jar --journal plugins/TwitchStreamPlugin/journal --rate 200
+public final class LoadGenerator {
+    
+    private static final String USAGE = String.join("\n",
+            "Usage: loadgen [options]",
+            "  --url <base>          Plugin server (default http://127.0.0.1:8080)",
+            "  --journal <dir>       Replay the events in a plugin journal directory",
+            "  --jsonl <file>        Replay request bodies, one JSON object per line",
+            "  --mix <type=weight,..> Synthetic events (default: every type, equal weights)",
+            "  --users <n>           Distinct viewers for synthetic events (default 100)",
+            "  --seed <n>            Seed for synthetic events (default 1)",
+            "  --rate <n>            Events per second, 0 for as fast as possible (default 100)",
+            "  --concurrency <n>     Requests in flight at most (default 16)",
+            "  --batch <n>           Events per request; above 1 posts NDJSON to /twitch-events (default 1)",
+            "  --duration <seconds>  Stop after this long (default 10 for synthetic events)",
+            "  --count <n>           Stop after this many events (default: one pass over a trace)",
+            "  --loop                Repeat a recorded trace until --duration or --count",
+            "  --keep-ids            Send recorded message IDs instead of fresh ones",
+            "  --tenant <id>         Send everything to this tenant instead of the recorded ones",
+            "  --stream <port>       Send over the plugin's event stream on this port instead of HTTP",
+            "  --timeout <seconds>   Per-request timeout (default 10)",
+            "  --report <file>       Also write the summary as JSON");
+            
+    private final URI single;
+    private final URI batch;
+    private final LoadTrace trace;
+    private final double rate;
+    private final int concurrency;
+    private final int batchSize;
+    private final long durationNanos;
+    private final long count;
+    private final boolean keepIds;
+    private final String tenant;
+    private final Duration timeout;
+    private final HttpClient client;
+    private final String streamHost;
+    private final int streamPort;
+    // Tenant ("" for the default) -> its stream connection
+    private final Map<String, StreamClient> streams = new HashMap<>();
+    private final LoadReport report = new LoadReport();
+    private final Semaphore inFlight;
+    private final AtomicLong sent = new AtomicLong();
+    
+    private LoadGenerator(Map<String, String> options) throws IOException {
+        String url = options.getOrDefault("url", "http://127.0.0.1:8080").replaceAll("/+$", "");
+        single = URI.create(url + "/twitch-event");
+        batch = URI.create(url + "/twitch-events");
+        boolean loop = options.containsKey("loop");
+        if (options.containsKey("journal")) {
+            trace = LoadTrace.fromJournal(new File(options.get("journal")), loop);
+        } else if (options.containsKey("jsonl")) {
+            trace = LoadTrace.fromJsonl(new File(options.get("jsonl")), loop);
+        } else {
+            trace = LoadTrace.synthetic(options.getOrDefault("mix", String.join(",", LoadTrace.TYPES)),
+                    intOption(options, "users", 100), longOption(options, "seed", 1));
+        }
+        rate = Math.max(0, Double.parseDouble(options.getOrDefault("rate", "100")));
+        concurrency = Math.max(1, intOption(options, "concurrency", 16));
+        batchSize = Math.max(1, intOption(options, "batch", 1));
+        // Synthetic and looped traces never run out by themselves
+        boolean endless = trace.size() < 0 || loop;
+        long seconds = longOption(options, "duration", endless && !options.containsKey("count") ? 10 : 0);
+        durationNanos = seconds > 0 ? TimeUnit.SECONDS.toNanos(seconds) : Long.MAX_VALUE;
+        count = longOption(options, "count", 0);
+        keepIds = options.containsKey("keep-ids");
+        tenant = options.get("tenant");
+        timeout = Duration.ofSeconds(Math.max(1, longOption(options, "timeout", 10)));
+        streamHost = URI.create(url).getHost();
+        streamPort = intOption(options, "stream", 0);
+        if (streamPort > 0 && batchSize > 1) {
+            throw new IllegalArgumentException("--batch does not apply to --stream, every event is its own frame");
+        }
+        inFlight = new Semaphore(concurrency);
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options;
+        LoadGenerator generator;
+        try {
+            options = parse(args);
+            if (options.containsKey("help")) {
+                System.out.println(USAGE);
+                return;
+            }
+            generator = new LoadGenerator(options);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        
+        long elapsed = generator.run();
+        generator.report.print(System.out, elapsed);
+        if (options.containsKey("report")) {
+            Files.write(new File(options.get("report")).toPath(),
+                    generator.report.toJson(elapsed).getBytes(StandardCharsets.UTF_8));
+        }
+        // The client's selector thread would otherwise keep pooled connections open for a while
+        System.exit(0);
+    }
+    
+    // --name value pairs; --loop, --keep-ids and --help take no value
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + arg);
+            }
+            String name = arg.substring(2);
+            if (name.equals("loop") || name.equals("keep-ids") || name.equals("help")) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+        }
+        return options;
+    }
+    
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        return (int) longOption(options, name, defaultValue);
+    }
+    
+    private static long longOption(Map<String, String> options, String name, long defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + name + " expects a number, got " + value);
+        }
+    }
+    
+    // Returns the elapsed time. Requests are scheduled at fixed intervals from the start rather
+    // than after the previous one finished, so a slow server does not slow the offered load down.
+    private long run() throws InterruptedException {
+        System.out.printf("Sending %s to %s at %s events/s, %d in flight, %d per request%n",
+                trace.size() < 0 ? "synthetic events" : trace.size() + " recorded events",
+                streamPort > 0 ? "stream " + streamHost + ":" + streamPort : batchSize > 1 ? batch : single, rate > 0 ? String.valueOf(rate) : "max", concurrency, batchSize);
+        long intervalNanos = rate > 0 ? Math.round(1e9 * batchSize / rate) : 0;
+        long start = System.nanoTime();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LoadGenerator-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> System.out.println(report.progress(System.nanoTime() - start,
+                sent.get(), concurrency - inFlight.availablePermits())), 1, 1, TimeUnit.SECONDS);
+                
+        List<LoadTrace.Item> items = new ArrayList<>(batchSize);
+        LoadTrace.Item carry = null;
+        for (long n = 0; ; n++) {
+            long scheduled = start + n * intervalNanos;
+            long due = intervalNanos > 0 ? scheduled : System.nanoTime();
+            if (due - start >= durationNanos || (count > 0 && sent.get() >= count)) {
+                break;
+            }
+            // One tenant per request, since it goes in a header
+            items.clear();
+            while (items.size() < batchSize && (count == 0 || sent.get() + items.size() < count)) {
+                LoadTrace.Item item = carry != null ? carry : trace.next();
+                carry = null;
+                if (item == null) {
+                    break;
+                }
+                if (!items.isEmpty() && !Objects.equals(tenantOf(item), tenantOf(items.get(0)))) {
+                    carry = item;
+                    break;
+                }
+                items.add(item);
+            }
+            if (items.isEmpty()) {
+                break;
+            }
+            
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            inFlight.acquire();
+            if (intervalNanos == 0) {
+                // Unpaced: each request is due as soon as a slot is free
+                scheduled = System.nanoTime();
+            }
+            if (streamPort > 0) {
+                stream(items.get(0), scheduled);
+            } else {
+                send(new ArrayList<>(items), scheduled);
+            }
+            sent.addAndGet(items.size());
+        }
+        
+        // Wait for the stragglers
+        inFlight.acquire(concurrency);
+        streams.values().forEach(StreamClient::close);
+        progress.shutdownNow();
+        return System.nanoTime() - start;
+    }
+    
+    // The stream answers in its own time; the in-flight slot is released by the ACK
+    private void stream(LoadTrace.Item item, long scheduled) throws InterruptedException {
+        String target = tenantOf(item);
+        String key = target != null ? target : "";
+        StreamClient stream = streams.get(key);
+        if (stream == null || stream.isClosed()) {
+            try {
+                stream = new StreamClient(streamHost, streamPort, target, report, (int) timeout.toMillis());
+            } catch (IOException | RuntimeException e) {
+                long now = System.nanoTime();
+                report.failure(1, e, now - scheduled, now - scheduled);
+                inFlight.release();
+                return;
+            }
+            streams.put(key, stream);
+        }
+        String messageId = keepIds && item.messageId != null ? item.messageId : UUID.randomUUID().toString();
+        stream.send(item.body(messageId), scheduled, inFlight::release);
+    }
+    
+    private String tenantOf(LoadTrace.Item item) {
+        return tenant != null ? tenant : item.tenant;
+    }
+    
+    private void send(List<LoadTrace.Item> items, long scheduled) {
+        StringBuilder body = new StringBuilder();
+        for (LoadTrace.Item item : items) {
+            String messageId = keepIds && item.messageId != null ? item.messageId : UUID.randomUUID().toString();
+            body.append(item.body(messageId)).append('\n');
+        }
+        boolean isBatch = batchSize > 1;
+        HttpRequest.Builder request = HttpRequest.newBuilder(isBatch ? batch : single)
+                .timeout(timeout)
+                .header("Content-Type", isBatch ? "application/x-ndjson" : "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()));
+        String target = tenantOf(items.get(0));
+        if (target != null) {
+            request.header("X-Tenant-ID", target);
+        }
+        
+        long sentAt = System.nanoTime();
+        client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            long done = System.nanoTime();
+            try {
+                if (error != null) {
+                    report.failure(items.size(), error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error, done - scheduled, done - sentAt);
+                } else {
+                    report.response(items.size(), response.statusCode(), response.body(), done - scheduled, done - sentAt);
+                }
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+}
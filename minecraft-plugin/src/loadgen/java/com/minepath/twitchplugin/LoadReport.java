@@ -0,0 +1,198 @@
+package com.minepath.twitchplugin;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// What the server answered during a LoadGenerator run: an outcome per event, taken from the
+// HTTP status, the per-item status of a batch or a stream ACK, and per-request latency. Latency is measured
+// from when the request was scheduled to go out, so a server that falls behind also shows up in
+// the waiting time of requests queued behind slow ones; service time is from the actual send.
+final class LoadReport {
+    
+    static final String QUEUED = "queued";
+    static final String DUPLICATE = "duplicate";
+    static final String FAILED = "failed";
+    
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram service = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder events = new LongAdder();
+    private volatile String lastError;
+    
+    // Any thread
+    void response(int events, int status, String body, long latencyNanos, long serviceNanos) {
+        record(latencyNanos, serviceNanos, events);
+        JsonArray results = results(body);
+        int answered = 0;
+        if (results != null) {
+            for (JsonElement result : results) {
+                if (answered == events) {
+                    break;
+                }
+                JsonElement itemStatus = result.isJsonObject() ? result.getAsJsonObject().get("status") : null;
+                outcome(itemStatus != null && itemStatus.isJsonPrimitive() ? itemStatus.getAsString() : "unknown", 1);
+                answered++;
+            }
+        }
+        if (answered < events) {
+            outcome(results != null ? "unanswered" : classify(status, body), events - answered);
+        }
+        if (status >= 500 && status != 503) {
+            lastError = "HTTP " + status + ": " + body;
+        }
+    }
+    
+    // Stream reader thread; one event and its ACK status
+    void ack(String status, long latencyNanos, long serviceNanos) {
+        record(latencyNanos, serviceNanos, 1);
+        outcome(status, 1);
+    }
+    
+    // Any thread; the request never got an answer (refused, reset, timed out)
+    void failure(int events, Throwable error, long latencyNanos, long serviceNanos) {
+        record(latencyNanos, serviceNanos, events);
+        outcome(FAILED, events);
+        lastError = error.getClass().getSimpleName() + (error.getMessage() != null ? ": " + error.getMessage() : "");
+    }
+    
+    private void record(long latencyNanos, long serviceNanos, int count) {
+        latency.record(latencyNanos);
+        service.record(serviceNanos);
+        requests.increment();
+        events.add(count);
+    }
+    
+    private void outcome(String outcome, int count) {
+        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).add(count);
+    }
+    
+    // Single-event answers, as TwitchStreamPlugin sends them
+    private static String classify(int status, String body) {
+        switch (status) {
+            case 200:
+                return body.contains("\"duplicate\"") ? DUPLICATE : QUEUED;
+            case 429:
+                return "rate_limited";
+            case 503:
+                return "queue_full";
+            case 400:
+                return "invalid";
+            default:
+                return "http_" + status;
+        }
+    }
+    
+    // The "results" array of a /twitch-events answer, or null for anything else
+    private static JsonArray results(String body) {
+        if (body.indexOf("\"results\"") < 0) {
+            return null;
+        }
+        try {
+            JsonElement root = JsonParser.parseString(body);
+            JsonElement results = root.isJsonObject() ? root.getAsJsonObject().get("results") : null;
+            return results != null && results.isJsonArray() ? results.getAsJsonArray() : null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+    
+    long getEvents() {
+        return events.sum();
+    }
+    
+    // Everything the plugin did not take: rate limited, queue full, invalid, HTTP errors and failures
+    long getErrors() {
+        long errors = 0;
+        for (Map.Entry<String, LongAdder> e : outcomes.entrySet()) {
+            if (!e.getKey().equals(QUEUED) && !e.getKey().equals(DUPLICATE)) {
+                errors += e.getValue().sum();
+            }
+        }
+        return errors;
+    }
+    
+    // One line per second while running
+    String progress(long elapsedNanos, long sent, int inFlight) {
+        LatencyHistogram.Snapshot snapshot = latency.snapshot();
+        return String.format("%6.1fs  sent %d  answered %d  errors %d  in flight %d  p99 %s ms",
+                elapsedNanos / 1e9, sent, events.sum(), getErrors(), inFlight, millis(snapshot.percentileNanos(0.99)));
+    }
+    
+    void print(PrintStream out, long elapsedNanos) {
+        long total = events.sum();
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%d events in %d requests over %.1f s (%.1f events/s)%n",
+                total, requests.sum(), seconds, seconds > 0 ? total / seconds : 0);
+        out.println("Outcomes:");
+        for (Map.Entry<String, Long> e : sortedOutcomes().entrySet()) {
+            out.printf("  %-14s %8d  %5.1f%%%n", e.getKey(), e.getValue(), percent(e.getValue(), total));
+        }
+        out.printf("Error rate: %.2f%%%n", percent(getErrors(), total));
+        out.println("Latency from scheduled send: " + percentiles(latency.snapshot()));
+        out.println("Service time:                " + percentiles(service.snapshot()));
+        if (lastError != null) {
+            out.println("Last error: " + lastError);
+        }
+    }
+    
+    String toJson(long elapsedNanos) {
+        JsonObject root = new JsonObject();
+        root.addProperty("elapsedSeconds", elapsedNanos / 1e9);
+        root.addProperty("requests", requests.sum());
+        root.addProperty("events", events.sum());
+        root.addProperty("errors", getErrors());
+        JsonObject counts = new JsonObject();
+        for (Map.Entry<String, Long> e : sortedOutcomes().entrySet()) {
+            counts.addProperty(e.getKey(), e.getValue());
+        }
+        root.add("outcomes", counts);
+        root.add("latencyMs", toJson(latency.snapshot()));
+        root.add("serviceMs", toJson(service.snapshot()));
+        root.addProperty("lastError", lastError);
+        return new GsonBuilder().setPrettyPrinting().serializeNulls().create().toJson(root);
+    }
+    
+    private Map<String, Long> sortedOutcomes() {
+        Map<String, Long> sorted = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : outcomes.entrySet()) {
+            sorted.put(e.getKey(), e.getValue().sum());
+        }
+        return sorted;
+    }
+    
+    private static JsonObject toJson(LatencyHistogram.Snapshot snapshot) {
+        JsonObject json = new JsonObject();
+        json.addProperty("p50", snapshot.percentileNanos(0.5) / 1e6);
+        json.addProperty("p90", snapshot.percentileNanos(0.9) / 1e6);
+        json.addProperty("p99", snapshot.percentileNanos(0.99) / 1e6);
+        json.addProperty("p999", snapshot.percentileNanos(0.999) / 1e6);
+        json.addProperty("max", snapshot.getMaxNanos() / 1e6);
+        json.addProperty("mean", snapshot.getCount() == 0 ? 0 : snapshot.getSumNanos() / 1e6 / snapshot.getCount());
+        return json;
+    }
+    
+    private static String percentiles(LatencyHistogram.Snapshot snapshot) {
+        return "p50 " + millis(snapshot.percentileNanos(0.5)) + "  p90 " + millis(snapshot.percentileNanos(0.9))
+                + "  p99 " + millis(snapshot.percentileNanos(0.99)) + "  p99.9 " + millis(snapshot.percentileNanos(0.999))
+                + "  max " + millis(snapshot.getMaxNanos()) + " ms";
+    }
+    
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+    
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+}
@@ -0,0 +1,229 @@
+package com.minepath.twitchplugin;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Events for LoadGenerator to send: a recorded trace (the plugin's journal or a JSONL file of
+// request bodies) or a synthetic mix of event types over a pool of viewers. Bodies are kept
+// without their messageId so each send can be given a fresh one and a trace can be replayed
+// any number of times without the server answering "duplicate".
+abstract class LoadTrace {
+    
+    static final String[] TYPES = {"subscribe", "gift_subscription", "cheer", "raid", "follow"};
+    
+    // Next event, or null when a recorded trace has been sent once and is not looped
+    abstract Item next();
+    
+    // Events in one pass, -1 for synthetic traces
+    abstract int size();
+    
+    // Journal records are written as {"tenant": ..., "eventType": ..., "messageId": ..., "data": {...}}
+    static LoadTrace fromJournal(File directory, boolean loop) throws IOException {
+        if (!directory.isDirectory()) {
+            throw new IOException("No journal at " + directory);
+        }
+        List<Item> items = new ArrayList<>();
+        for (EventJournal.Entry entry : EventJournal.read(directory)) {
+            items.add(parse(new String(entry.getPayload(), StandardCharsets.UTF_8), "journal seq " + entry.getSeq()));
+        }
+        return new Recorded(items, loop);
+    }
+    
+    // One request body per line, as the backend posts them to /twitch-event; blank lines and
+    // lines starting with # are skipped
+    static LoadTrace fromJsonl(File file, boolean loop) throws IOException {
+        List<Item> items = new ArrayList<>();
+        int number = 0;
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            number++;
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                items.add(parse(trimmed, file.getName() + ":" + number));
+            }
+        }
+        return new Recorded(items, loop);
+    }
+    
+    // mix is type=weight pairs, e.g. "raid=1,gift_subscription=10"
+    static LoadTrace synthetic(String mix, int users, long seed) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=", 2);
+            String type = pair[0].trim();
+            if (!isSyntheticType(type)) {
+                throw new IllegalArgumentException("Unknown event type '" + type + "' in mix, expected one of "
+                        + String.join(", ", TYPES));
+            }
+            int weight = 1;
+            if (pair.length == 2) {
+                try {
+                    weight = Integer.parseInt(pair[1].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad weight in mix: " + part);
+                }
+            }
+            if (weight < 0) {
+                throw new IllegalArgumentException("Bad weight in mix: " + part);
+            }
+            weights.merge(type, weight, Integer::sum);
+        }
+        return new Synthetic(weights, users, seed);
+    }
+    
+    private static boolean isSyntheticType(String type) {
+        for (String known : TYPES) {
+            if (known.equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Checks the body decodes the way the plugin would decode it, then splits off tenant and messageId
+    private static Item parse(String json, String where) throws IOException {
+        try {
+            TwitchEvent event = new EventDecoder(type -> true).decode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+            JsonObject body = JsonParser.parseString(json).getAsJsonObject();
+            String tenant = string(body.remove("tenant"));
+            String messageId = string(body.remove("messageId"));
+            return new Item(event.getType(), tenant, messageId, body.toString());
+        } catch (JsonParseException | IllegalStateException | IOException e) {
+            throw new IOException(where + ": " + e.getMessage(), e);
+        }
+    }
+    
+    private static String string(JsonElement element) {
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+    
+    static final class Item {
+        final String type;
+        // null for the default tenant
+        final String tenant;
+        // As recorded; null for synthetic events
+        final String messageId;
+        // The event as a JSON object without messageId
+        private final String body;
+        
+        Item(String type, String tenant, String messageId, String body) {
+            this.type = type;
+            this.tenant = tenant;
+            this.messageId = messageId;
+            this.body = body;
+        }
+        
+        String body(String messageId) {
+            if (messageId == null) {
+                return body;
+            }
+            StringBuilder out = new StringBuilder(body.length() + messageId.length() + 16);
+            out.append("{\"messageId\":").append(new JsonPrimitive(messageId));
+            out.append(body.length() > 2 ? "," : "").append(body, 1, body.length());
+            return out.toString();
+        }
+    }
+    
+    private static final class Recorded extends LoadTrace {
+        private final List<Item> items;
+        private final boolean loop;
+        private int position;
+        
+        Recorded(List<Item> items, boolean loop) {
+            this.items = items;
+            this.loop = loop;
+        }
+        
+        @Override
+        Item next() {
+            if (position == items.size()) {
+                if (!loop || items.isEmpty()) {
+                    return null;
+                }
+                position = 0;
+            }
+            return items.get(position++);
+        }
+        
+        @Override
+        int size() {
+            return items.size();
+        }
+    }
+    
+    private static final class Synthetic extends LoadTrace {
+        private static final String[] TIERS = {"1000", "1000", "1000", "1000", "2000", "3000"};
+        private static final int[] GIFTS = {1, 1, 5, 5, 10, 20, 50, 100};
+        
+        private final EventEncoder encoder = new EventEncoder();
+        private final String[] types;
+        private final int[] cumulative;
+        private final int users;
+        private final Random random;
+        
+        Synthetic(Map<String, Integer> weights, int users, long seed) {
+            this.types = weights.keySet().toArray(new String[0]);
+            this.cumulative = new int[types.length];
+            int total = 0;
+            for (int i = 0; i < types.length; i++) {
+                total += weights.get(types[i]);
+                cumulative[i] = total;
+            }
+            if (total == 0) {
+                throw new IllegalArgumentException("Mix has no weight");
+            }
+            this.users = Math.max(1, users);
+            this.random = new Random(seed);
+        }
+        
+        @Override
+        Item next() {
+            int pick = random.nextInt(cumulative[cumulative.length - 1]);
+            int i = 0;
+            while (cumulative[i] <= pick) {
+                i++;
+            }
+            String type = types[i];
+            int user = random.nextInt(users);
+            String name = String.format("viewer%05d", user);
+            String id = String.valueOf(90000000 + user);
+            TwitchEvent event;
+            switch (type) {
+                case "subscribe":
+                    event = new SubscribeEvent(name, id, TIERS[random.nextInt(TIERS.length)], false, 0);
+                    break;
+                case "gift_subscription":
+                    event = new GiftSubscriptionEvent(name, id, GIFTS[random.nextInt(GIFTS.length)], "1000", 0);
+                    break;
+                case "cheer":
+                    event = new CheerEvent(name, id, 100 * (1 + random.nextInt(50)), "Cheer100 load test", 0);
+                    break;
+                case "raid":
+                    event = new RaidEvent(name, id, 10 + random.nextInt(2000), 0);
+                    break;
+                default:
+                    event = new FollowEvent(name, id, Instant.now().toString(), 0);
+            }
+            return new Item(type, null, null, encoder.encode(event));
+        }
+        
+        @Override
+        int size() {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.minepath.twitchplugin;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+// LoadGenerator's side of the plugin's event stream (see StreamServer): one connection per tenant,
+// events written as EVENT frames and completed when their ACK comes back. At most window events
+// are unacknowledged, as the server requires, so send blocks while the window is full.
+final class StreamClient {
+    
+    // By ACK status byte, the same names as the HTTP batch endpoint's item statuses
+    private static final String[] STATUSES = {"queued", "duplicate", "rate_limited", "queue_full", "invalid", "unknown_tenant", "failed"};
+    
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final LoadReport report;
+    private final int timeoutMillis;
+    // seq -> pending event
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final Semaphore window;
+    private long nextSeq = 1;
+    private volatile boolean closed;
+    
+    StreamClient(String host, int port, String tenant, LoadReport report, int timeoutMillis) throws IOException {
+        this.report = report;
+        this.timeoutMillis = timeoutMillis;
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+        socket.setSoTimeout(timeoutMillis);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        
+        JsonObject hello = new JsonObject();
+        hello.addProperty("tenant", tenant);
+        byte[] body = hello.toString().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(1 + body.length);
+        out.writeByte(StreamServer.HELLO);
+        out.write(body);
+        out.flush();
+        
+        int length = in.readInt();
+        byte type = in.readByte();
+        byte[] answer = new byte[length - 1];
+        in.readFully(answer);
+        String text = new String(answer, StandardCharsets.UTF_8);
+        if (type != StreamServer.WELCOME) {
+            socket.close();
+            throw new IOException("Stream refused: " + text);
+        }
+        window = new Semaphore(Math.max(1, JsonParser.parseString(text).getAsJsonObject().get("window").getAsInt()));
+        
+        Thread reader = new Thread(this::read, "LoadGenerator-stream-" + (tenant != null ? tenant : "default"));
+        reader.setDaemon(true);
+        reader.start();
+    }
+    
+    boolean isClosed() {
+        return closed;
+    }
+    
+    // Generator thread; done runs on the reader thread once the event is answered or lost
+    void send(String body, long scheduled, Runnable done) throws InterruptedException {
+        window.acquire();
+        long seq = nextSeq++;
+        Pending entry = new Pending(scheduled, done);
+        pending.put(seq, entry);
+        byte[] json = body.getBytes(StandardCharsets.UTF_8);
+        try {
+            synchronized (out) {
+                entry.sentAt = System.nanoTime();
+                out.writeInt(1 + 8 + json.length);
+                out.writeByte(StreamServer.EVENT);
+                out.writeLong(seq);
+                out.write(json);
+                out.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+        if (closed) {
+            // The reader may have failed everything before this event was registered
+            fail(new IOException("Stream closed"));
+        }
+    }
+    
+    private void read() {
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (SocketTimeoutException e) {
+                    if (pending.isEmpty()) {
+                        continue;
+                    }
+                    throw new IOException("No ACK within " + timeoutMillis + " ms");
+                }
+                byte type = in.readByte();
+                byte[] body = new byte[length - 1];
+                in.readFully(body);
+                if (type == StreamServer.ERROR) {
+                    throw new IOException("Stream closed by server: " + new String(body, StandardCharsets.UTF_8));
+                }
+                if (type != StreamServer.ACK) {
+                    continue;
+                }
+                long done = System.nanoTime();
+                DataInputStream ack = new DataInputStream(new ByteArrayInputStream(body));
+                Pending entry = pending.remove(ack.readLong());
+                if (entry == null) {
+                    continue;
+                }
+                byte status = ack.readByte();
+                try {
+                    report.ack(status >= 0 && status < STATUSES.length ? STATUSES[status] : "unknown",
+                            done - entry.scheduled, done - entry.sentAt);
+                } finally {
+                    window.release();
+                    entry.done.run();
+                }
+            }
+        } catch (EOFException e) {
+            fail(new IOException("Stream closed by server"));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+    
+    // Everything still unacknowledged counts as failed
+    private void fail(IOException error) {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        long now = System.nanoTime();
+        for (Long seq : pending.keySet()) {
+            Pending entry = pending.remove(seq);
+            if (entry != null) {
+                try {
+                    report.failure(1, error, now - entry.scheduled, now - (entry.sentAt != 0 ? entry.sentAt : entry.scheduled));
+                } finally {
+                    window.release();
+                    entry.done.run();
+                }
+            }
+        }
+    }
+    
+    void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+    
+    private static final class Pending {
+        final long scheduled;
+        final Runnable done;
+        volatile long sentAt;
+        
+        Pending(long scheduled, Runnable done) {
+            this.scheduled = scheduled;
+            this.done = done;
+        }
+    }
+}
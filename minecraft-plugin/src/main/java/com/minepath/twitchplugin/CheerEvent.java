@@ -0,0 +1,42 @@
+package com.minepath.twitchplugin;
+
+public final class CheerEvent extends TwitchEvent implements Coalescible {
+    
+    private final int bits;
+    private final String message;
+    
+    public CheerEvent(String userName, String userId, int bits, String message, long receivedAt) {
+        this(userName, userId, null, bits, message, receivedAt);
+    }
+    
+    public CheerEvent(String userName, String userId, String messageId, int bits, String message, long receivedAt) {
+        super(userName, userId, messageId, receivedAt);
+        this.bits = bits;
+        this.message = message;
+    }
+    
+    @Override
+    public String getType() {
+        return CHEER;
+    }
+    
+    public int getBits() {
+        return bits;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+    
+    @Override
+    public int getAmount() {
+        return bits;
+    }
+    
+    // Merged cheers keep the first message
+    @Override
+    public TwitchEvent mergeWith(TwitchEvent other) {
+        CheerEvent cheer = (CheerEvent) other;
+        return new CheerEvent(getUserName(), getUserId(), getMessageId(), bits + cheer.bits, message, getReceivedAt());
+    }
+}
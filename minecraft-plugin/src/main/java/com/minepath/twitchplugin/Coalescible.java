@@ -0,0 +1,20 @@
+package com.minepath.twitchplugin;
+
+import java.util.Locale;
+
+// An event type whose events from the same sender may be merged into one while they wait in
+// IngestQueue, e.g. a burst of gift callbacks becoming one spawn of the summed size.
+public interface Coalescible {
+    
+    String getType();
+    
+    String getUserName();
+    
+    // Events with equal keys are merged
+    default String getCoalesceKey() {
+        return getType() + ':' + getUserName().toLowerCase(Locale.ROOT);
+    }
+    
+    // Returns a new event combining this one with a later one that has the same coalesce key
+    TwitchEvent mergeWith(TwitchEvent other);
+}
@@ -0,0 +1,159 @@
+package com.minepath.twitchplugin;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Remembers recently seen message IDs so redelivered events are acknowledged but not run again.
+// IDs are stored as 64-bit hashes in two open-addressing generations: new IDs go into the current
+// one, lookups check both, and the older generation is dropped when the current one is ttl old or
+// full. An ID is therefore remembered for at least ttl (unless the cache fills up first) and at
+// most twice that, in 8 bytes per slot. Thread-safe.
+public final class DedupCache {
+    
+    private static final long EMPTY = 0;
+    
+    private final int generationLimit;
+    private long[] current;
+    private long[] previous;
+    private int currentSize;
+    private int previousSize;
+    private long generationStart;
+    private long earlyRotations;
+    
+    // maxEntries is the total across both generations
+    public DedupCache(int maxEntries) {
+        generationLimit = Math.max(16, maxEntries / 2);
+        // Keep the load factor at or below 3/4
+        int slots = Integer.highestOneBit(generationLimit * 4 / 3) << 1;
+        current = new long[slots];
+        previous = new long[slots];
+        generationStart = System.nanoTime();
+    }
+    
+    // Records the ID and returns true if it was not seen within the ttl; false means duplicate
+    public synchronized boolean claim(String messageId, long ttlNanos) {
+        long hash = hash(messageId);
+        rotateIfNeeded(ttlNanos);
+        if (contains(current, hash) || contains(previous, hash)) {
+            return false;
+        }
+        insert(current, hash);
+        currentSize++;
+        return true;
+    }
+    
+    // True if the ID was claimed within the ttl; unlike claim() it records nothing
+    public synchronized boolean contains(String messageId, long ttlNanos) {
+        long hash = hash(messageId);
+        rotateIfNeeded(ttlNanos);
+        return contains(current, hash) || contains(previous, hash);
+    }
+    
+    // Forgets a claimed ID, so the next claim of it succeeds
+    public synchronized void release(String messageId) {
+        long hash = hash(messageId);
+        if (remove(current, hash)) {
+            currentSize--;
+        } else if (remove(previous, hash)) {
+            previousSize--;
+        }
+    }
+    
+    public synchronized int size() {
+        return currentSize + previousSize;
+    }
+    
+    // Rotations forced by a full generation, i.e. IDs kept for less than the ttl
+    public synchronized long getEarlyRotations() {
+        return earlyRotations;
+    }
+    
+    private void rotateIfNeeded(long ttlNanos) {
+        long age = System.nanoTime() - generationStart;
+        boolean full = currentSize >= generationLimit;
+        if (age < ttlNanos && !full) {
+            return;
+        }
+        if (full && age < ttlNanos) {
+            earlyRotations++;
+        }
+        
+        // Reuse the old generation's array for the new current one
+        long[] recycled = previous;
+        Arrays.fill(recycled, EMPTY);
+        previous = current;
+        previousSize = currentSize;
+        current = recycled;
+        currentSize = 0;
+        generationStart = System.nanoTime();
+        
+        // After a long quiet period the previous generation is older than 2 * ttl as well
+        if (age >= 2 * ttlNanos) {
+            Arrays.fill(previous, EMPTY);
+            previousSize = 0;
+        }
+    }
+    
+    private static boolean contains(long[] table, long hash) {
+        int mask = table.length - 1;
+        for (int i = slot(hash, mask); table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static void insert(long[] table, long hash) {
+        int mask = table.length - 1;
+        int i = slot(hash, mask);
+        while (table[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        table[i] = hash;
+    }
+    
+    // Linear-probing delete with backward shift, as in IntObjectMap
+    private static boolean remove(long[] table, long hash) {
+        int mask = table.length - 1;
+        int free = slot(hash, mask);
+        while (table[free] != hash) {
+            if (table[free] == EMPTY) {
+                return false;
+            }
+            free = (free + 1) & mask;
+        }
+        int i = free;
+        while (true) {
+            i = (i + 1) & mask;
+            if (table[i] == EMPTY) {
+                break;
+            }
+            int home = slot(table[i], mask);
+            boolean movable = free <= i ? (home <= free || home > i) : (home <= free && home > i);
+            if (movable) {
+                table[free] = table[i];
+                free = i;
+            }
+        }
+        table[free] = EMPTY;
+        return true;
+    }
+    
+    private static int slot(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+    
+    // 64-bit FNV-1a over the UTF-8 bytes, finished with a murmur-style mix; 0 is reserved for empty slots
+    static long hash(String messageId) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : messageId.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1 : h;
+    }
+}
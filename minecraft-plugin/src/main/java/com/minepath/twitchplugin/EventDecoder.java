@@ -0,0 +1,272 @@
+package com.minepath.twitchplugin;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+// Decodes {"eventType": ..., "data": {...}} straight from a JsonReader into typed events,
+// skipping unknown fields and never building a JsonObject tree. Safe to share between threads.
+public final class EventDecoder {
+    
+    // Per-thread scratch space; "data" may arrive before "eventType" so fields are buffered here
+    private static final ThreadLocal<Fields> SCRATCH = ThreadLocal.withInitial(Fields::new);
+    // Count fields that are absent, null or not a number; zero is a valid count
+    private static final int MISSING = -1;
+    
+    private final Predicate<String> genericTypes;
+    
+    public EventDecoder() {
+        this(type -> false);
+    }
+    
+    // Types without a class of their own that genericTypes accepts (e.g. those with rules in the
+    // current config) are decoded as GenericEvent instead of being rejected
+    public EventDecoder(Predicate<String> genericTypes) {
+        this.genericTypes = genericTypes;
+    }
+    
+    public TwitchEvent decode(InputStream in) throws IOException {
+        return decode(in, null);
+    }
+    
+    // messageId (e.g. from the Twitch-Eventsub-Message-Id header) is used when the body has none
+    public TwitchEvent decode(InputStream in, String messageId) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        TwitchEvent event = decode(reader, messageId);
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JsonParseException("Unexpected content after event");
+        }
+        return event;
+    }
+    
+    // The top-level "tenant" field written by EventEncoder, or null
+    public static String readTenant(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("tenant")) {
+                return nextString(reader);
+            }
+            reader.skipValue();
+        }
+        return null;
+    }
+    
+    // Reads exactly one event object. Semantic problems (unknown type, missing fields) are
+    // reported after the whole object is consumed, so a batch can carry on with the next item.
+    public TwitchEvent decode(JsonReader reader) throws IOException {
+        return decode(reader, null);
+    }
+    
+    private TwitchEvent decode(JsonReader reader, String defaultMessageId) throws IOException {
+        Fields fields = SCRATCH.get();
+        fields.clear();
+        fields.messageId = defaultMessageId;
+        String eventType = null;
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "eventType":
+                    eventType = nextString(reader);
+                    break;
+                case "messageId":
+                    String messageId = nextString(reader);
+                    if (messageId != null && !messageId.isEmpty()) {
+                        fields.messageId = messageId;
+                    }
+                    break;
+                case "data":
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        readData(reader, fields);
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        
+        return build(eventType, fields, System.nanoTime());
+    }
+    
+    private static void readData(JsonReader reader, Fields fields) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "userName":
+                    fields.userName = nextString(reader);
+                    break;
+                case "userId":
+                    fields.userId = nextString(reader);
+                    break;
+                case "tier":
+                    fields.tier = nextString(reader);
+                    break;
+                case "isGift":
+                    fields.isGift = nextBoolean(reader);
+                    break;
+                case "total":
+                    fields.total = nextInt(reader);
+                    break;
+                case "bits":
+                    fields.bits = nextInt(reader);
+                    break;
+                case "message":
+                    fields.message = nextString(reader);
+                    break;
+                case "fromBroadcasterName":
+                    fields.fromBroadcasterName = nextString(reader);
+                    break;
+                case "fromBroadcasterId":
+                    fields.fromBroadcasterId = nextString(reader);
+                    break;
+                case "viewers":
+                    fields.viewers = nextInt(reader);
+                    break;
+                case "followedAt":
+                    fields.followedAt = nextString(reader);
+                    break;
+                case "amount":
+                    fields.amount = nextInt(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+    
+    private TwitchEvent build(String eventType, Fields f, long receivedAt) {
+        if (eventType == null) {
+            throw new InvalidEventException("Missing eventType");
+        }
+        
+        switch (eventType) {
+            case TwitchEvent.SUBSCRIBE:
+                return new SubscribeEvent(require(f.userName, "userName"), f.userId, f.messageId, f.tier, f.isGift, receivedAt);
+            case TwitchEvent.GIFT_SUBSCRIPTION:
+                return new GiftSubscriptionEvent(require(f.userName, "userName"), f.userId, f.messageId,
+                        requireNonNegative(f.total, "total"), f.tier, receivedAt);
+            case TwitchEvent.CHEER:
+                return new CheerEvent(require(f.userName, "userName"), f.userId, f.messageId,
+                        requireNonNegative(f.bits, "bits"), f.message, receivedAt);
+            case TwitchEvent.RAID:
+                // Older forwarders only set userName for raids
+                String raider = f.fromBroadcasterName != null ? f.fromBroadcasterName : f.userName;
+                return new RaidEvent(require(raider, "fromBroadcasterName"), f.fromBroadcasterId, f.messageId,
+                        requireNonNegative(f.viewers, "viewers"), receivedAt);
+            case TwitchEvent.FOLLOW:
+                return new FollowEvent(require(f.userName, "userName"), f.userId, f.messageId, f.followedAt, receivedAt);
+            default:
+                if (!genericTypes.test(eventType)) {
+                    throw new InvalidEventException("Unknown event type: " + eventType);
+                }
+                return new GenericEvent(eventType, require(f.userName, "userName"), f.userId, f.messageId,
+                        f.amount > 0 ? f.amount : 1, f.tier, f.message, receivedAt);
+        }
+    }
+    
+    private static String require(String value, String field) {
+        if (value == null) {
+            throw new InvalidEventException("Missing data." + field);
+        }
+        return value;
+    }
+    
+    private static int requireNonNegative(int value, String field) {
+        if (value < 0) {
+            throw new InvalidEventException("Missing or invalid data." + field);
+        }
+        return value;
+    }
+    
+    private static String nextString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        // Numbers and booleans are read as their literal text
+        return token == JsonToken.BOOLEAN ? String.valueOf(reader.nextBoolean()) : reader.nextString();
+    }
+    
+    // MISSING for anything that is not an integer, so it is rejected rather than read as 0
+    private static int nextInt(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            reader.skipValue();
+            return MISSING;
+        }
+        // Numbers are read as their literal text too, so 1.5 is consumed and rejected like "abc"
+        try {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(Integer.MIN_VALUE, Long.parseLong(reader.nextString().trim())));
+        } catch (NumberFormatException e) {
+            return MISSING;
+        }
+    }
+    
+    private static boolean nextBoolean(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BOOLEAN) {
+            return reader.nextBoolean();
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(reader.nextString());
+        }
+        reader.skipValue();
+        return false;
+    }
+    
+    // Thrown when a well-formed object does not describe a usable event
+    public static class InvalidEventException extends JsonParseException {
+        public InvalidEventException(String message) {
+            super(message);
+        }
+    }
+    
+    private static final class Fields {
+        String messageId;
+        String userName;
+        String userId;
+        String tier;
+        boolean isGift;
+        int total;
+        int bits;
+        String message;
+        String fromBroadcasterName;
+        String fromBroadcasterId;
+        int viewers;
+        String followedAt;
+        int amount;
+        
+        void clear() {
+            messageId = null;
+            userName = null;
+            userId = null;
+            tier = null;
+            isGift = false;
+            // A zero-bit cheer, a zero-count gift or a raid with no viewers is valid, a missing count is not
+            total = MISSING;
+            bits = MISSING;
+            message = null;
+            fromBroadcasterName = null;
+            fromBroadcasterId = null;
+            viewers = MISSING;
+            followedAt = null;
+            amount = MISSING;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.minepath.twitchplugin;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+// Writes an event back into the {"eventType": ..., "messageId": ..., "data": {...}} form that
+// EventDecoder reads, e.g. for the journal. Null fields are left out. Safe to share between threads.
+public final class EventEncoder {
+    
+    public String encode(TwitchEvent event) {
+        return encode(event, null);
+    }
+    
+    // tenant is written as a top-level field, which EventDecoder skips and readTenant picks out
+    public String encode(TwitchEvent event, String tenant) {
+        StringWriter out = new StringWriter(160);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.setSerializeNulls(false);
+            writer.beginObject();
+            writer.name("tenant").value(tenant);
+            writer.name("eventType").value(event.getType());
+            writer.name("messageId").value(event.getMessageId());
+            writer.name("data").beginObject();
+            writeData(writer, event);
+            writer.endObject();
+            writer.endObject();
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+    
+    private static void writeData(JsonWriter writer, TwitchEvent event) throws IOException {
+        if (event instanceof RaidEvent) {
+            writer.name("fromBroadcasterName").value(event.getUserName());
+            writer.name("fromBroadcasterId").value(event.getUserId());
+            writer.name("viewers").value(((RaidEvent) event).getViewers());
+            return;
+        }
+        
+        writer.name("userName").value(event.getUserName());
+        writer.name("userId").value(event.getUserId());
+        if (event instanceof SubscribeEvent) {
+            SubscribeEvent sub = (SubscribeEvent) event;
+            writer.name("tier").value(sub.getTier());
+            writer.name("isGift").value(sub.isGift());
+        } else if (event instanceof GiftSubscriptionEvent) {
+            GiftSubscriptionEvent gift = (GiftSubscriptionEvent) event;
+            writer.name("total").value(gift.getTotal());
+            writer.name("tier").value(gift.getTier());
+        } else if (event instanceof CheerEvent) {
+            CheerEvent cheer = (CheerEvent) event;
+            writer.name("bits").value(cheer.getBits());
+            writer.name("message").value(cheer.getMessage());
+        } else if (event instanceof FollowEvent) {
+            writer.name("followedAt").value(((FollowEvent) event).getFollowedAt());
+        } else if (event instanceof GenericEvent) {
+            GenericEvent generic = (GenericEvent) event;
+            writer.name("amount").value(generic.getAmount());
+            writer.name("tier").value(generic.getTier());
+            writer.name("message").value(generic.getMessage());
+        }
+    }
+}
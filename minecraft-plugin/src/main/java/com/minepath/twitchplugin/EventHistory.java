@@ -0,0 +1,624 @@
+package com.minepath.twitchplugin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+// What happened, kept past the log ring: every event that ran and every spawned wave is appended
+// to one file per day (UTC) under history/, and the last window of hours is kept summed in memory
+// per tenant, hour and viewer. The main thread only hands records to a bounded queue; a writer
+// thread appends them in batches and folds them into the sums. Readers (/twitchtop, GET /stats)
+// only look at the sums, so they never wait for disk or the main thread.
+//
+// Record: int length of the rest, byte kind, long epoch millis, tenant, event type, user name,
+// user ID (each a short length + UTF-8 bytes, -1 for null), long amount, int count, int CRC32 of
+// everything after the length. For EVENT records amount is the event's amount (bits, gifted subs,
+// raid viewers, 1 otherwise) and count what its rule produced; WAVE records count spawned mobs.
+public final class EventHistory {
+    
+    private static final byte EVENT = 1;
+    private static final byte WAVE = 2;
+    private static final String PREFIX = "history-";
+    private static final String SUFFIX = ".log";
+    private static final long HOUR_MILLIS = 3_600_000L;
+    // Metrics that /twitchtop and /stats rank by, besides the amount of each event type
+    public static final String EVENTS = "events";
+    public static final String MOBS = "mobs";
+    
+    private final Logger logger;
+    private final File directory;
+    private final int windowHours;
+    private final int retentionDays;
+    private final long flushIntervalMillis;
+    private final BlockingQueue<Record> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running;
+    private Thread writer;
+    
+    // Epoch hour -> tenant -> sums; guarded by this
+    private final TreeMap<Long, Map<String, Hour>> hours = new TreeMap<>();
+    
+    // Writer thread only
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private FileChannel channel;
+    private LocalDate channelDay;
+    
+    public EventHistory(Logger logger, File directory, int windowHours, int retentionDays, long flushIntervalMillis, int maxPending) {
+        this.logger = logger;
+        this.directory = directory;
+        this.windowHours = windowHours;
+        this.retentionDays = retentionDays;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.queue = new ArrayBlockingQueue<>(maxPending);
+    }
+    
+    public void start() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "TwitchHistory");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    // Writes what is still queued before returning. The writer is not interrupted, since that would
+    // close the file channel under a write in progress; it notices within one flush interval.
+    public void stop() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+    }
+    
+    // Main thread: an event whose rule ran; count is what the rule returned (mobs queued, items given)
+    public void recordEvent(String tenant, TwitchEvent event, int count, long timeMillis) {
+        offer(new Record(EVENT, timeMillis, tenant, event.getType(), event.getUserName(), event.getUserId(), event.getAmount(), count));
+    }
+    
+    // Main thread: a finished wave and how many of its mobs actually spawned
+    public void recordWave(String tenant, String eventType, String userName, int spawned, long timeMillis) {
+        offer(new Record(WAVE, timeMillis, tenant, eventType, userName, null, 0, spawned));
+    }
+    
+    // Never blocks; a full queue means the disk cannot keep up, and losing history beats stalling a tick
+    private void offer(Record record) {
+        if (!running || !queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+    
+    public int getPendingCount() {
+        return queue.size();
+    }
+    
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+    
+    public int getWindowHours() {
+        return windowHours;
+    }
+    
+    private void writeLoop() {
+        // Sums for the hours before this start come from the files, before anything new goes in
+        try {
+            load();
+        } catch (IOException e) {
+            logger.warning("Could not read the event history, /twitchtop starts empty: " + e.getMessage());
+        }
+        deleteExpired();
+        
+        List<Record> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Record first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    evict(System.currentTimeMillis());
+                    continue;
+                }
+                batch.add(first);
+                // Let the rest of the interval's records gather so they go out in one write
+                if (running) {
+                    Thread.sleep(flushIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            queue.drainTo(batch);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            apply(batch);
+            try {
+                write(batch);
+            } catch (IOException e) {
+                logger.warning("Could not write " + batch.size() + " event history record(s): " + e.getMessage());
+                closeChannel();
+            }
+            batch.clear();
+        }
+        closeChannel();
+    }
+    
+    private synchronized void apply(List<Record> batch) {
+        long cutoff = hourOf(System.currentTimeMillis()) - windowHours + 1;
+        for (Record record : batch) {
+            add(record, cutoff);
+        }
+        hours.headMap(cutoff).clear();
+    }
+    
+    private synchronized void evict(long now) {
+        hours.headMap(hourOf(now) - windowHours + 1).clear();
+    }
+    
+    // Caller holds the lock
+    private void add(Record record, long cutoff) {
+        long hour = hourOf(record.time);
+        if (hour < cutoff) {
+            return;
+        }
+        Hour sums = hours.computeIfAbsent(hour, h -> new HashMap<>()).computeIfAbsent(record.tenant, t -> new Hour());
+        Viewer viewer = null;
+        if (record.userName != null) {
+            viewer = sums.viewers.computeIfAbsent(record.userName.toLowerCase(Locale.ROOT), k -> new Viewer());
+            viewer.name = record.userName;
+            if (record.userId != null) {
+                viewer.userId = record.userId;
+            }
+        }
+        if (record.kind == EVENT) {
+            sums.events++;
+            long[] type = sums.types.computeIfAbsent(record.type, t -> new long[2]);
+            type[0]++;
+            type[1] += record.amount;
+            if (viewer != null) {
+                viewer.events++;
+                viewer.amounts.merge(record.type, record.amount, Long::sum);
+            }
+        } else {
+            sums.mobs += record.count;
+            if (viewer != null) {
+                viewer.mobs += record.count;
+            }
+        }
+    }
+    
+    // Appends the batch to the day files in one write per day
+    private void write(List<Record> batch) throws IOException {
+        buffer.clear();
+        LocalDate day = null;
+        for (Record record : batch) {
+            LocalDate recordDay = dayOf(record.time);
+            if (day != null && !recordDay.equals(day)) {
+                flush(day);
+            }
+            day = recordDay;
+            encode(record);
+        }
+        flush(day);
+    }
+    
+    private void flush(LocalDate day) throws IOException {
+        buffer.flip();
+        if (!day.equals(channelDay)) {
+            closeChannel();
+            channel = openForAppend(file(day));
+            channelDay = day;
+            deleteExpired();
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    private void encode(Record record) {
+        byte[] tenant = bytes(record.tenant);
+        byte[] type = bytes(record.type);
+        byte[] user = bytes(record.userName);
+        byte[] userId = bytes(record.userId);
+        int length = 1 + 8 + string(tenant) + string(type) + string(user) + string(userId) + 8 + 4 + 4;
+        if (buffer.remaining() < 4 + length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + 4 + length));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        buffer.putInt(length);
+        int start = buffer.position();
+        buffer.put(record.kind);
+        buffer.putLong(record.time);
+        putString(tenant);
+        putString(type);
+        putString(user);
+        putString(userId);
+        buffer.putLong(record.amount);
+        buffer.putInt(record.count);
+        crc.reset();
+        crc.update(buffer.array(), start, buffer.position() - start);
+        buffer.putInt((int) crc.getValue());
+    }
+    
+    private void putString(byte[] value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+        } else {
+            buffer.putShort((short) value.length);
+            buffer.put(value);
+        }
+    }
+    
+    private static int string(byte[] value) {
+        return 2 + (value != null ? value.length : 0);
+    }
+    
+    // Names longer than a short can hold are cut; Twitch names are at most 25 characters
+    private static byte[] bytes(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= Short.MAX_VALUE ? bytes : Arrays.copyOf(bytes, Short.MAX_VALUE);
+    }
+    
+    // A crash can leave half a record at the end of today's file; cut it off so new records are
+    // not hidden behind it
+    private FileChannel openForAppend(File file) throws IOException {
+        long valid = file.exists() ? read(file, null) : 0;
+        FileChannel opened = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        opened.truncate(valid);
+        opened.position(valid);
+        return opened;
+    }
+    
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                logger.warning("Could not close the event history file: " + e.getMessage());
+            }
+            channel = null;
+            channelDay = null;
+        }
+    }
+    
+    // The day files that can hold records from the window
+    private void load() throws IOException {
+        long now = System.currentTimeMillis();
+        long cutoff = hourOf(now) - windowHours + 1;
+        LocalDate first = dayOf(cutoff * HOUR_MILLIS);
+        LocalDate last = dayOf(now);
+        List<Record> loaded = new ArrayList<>();
+        for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+            File file = file(day);
+            if (file.exists()) {
+                read(file, loaded);
+            }
+        }
+        synchronized (this) {
+            for (Record record : loaded) {
+                add(record, cutoff);
+            }
+        }
+    }
+    
+    // Reads records into out (if given) and returns the length of the intact part of the file
+    private long read(File file, List<Record> out) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        CRC32 check = new CRC32();
+        while (in.remaining() >= 4) {
+            int start = in.position();
+            int length = in.getInt();
+            if (length < 1 + 8 + 4 * 2 + 8 + 4 + 4 || length > in.remaining()) {
+                in.position(start);
+                break;
+            }
+            int body = in.position();
+            check.reset();
+            check.update(in.array(), body, length - 4);
+            in.position(body + length - 4);
+            if (in.getInt() != (int) check.getValue()) {
+                in.position(start);
+                break;
+            }
+            if (out != null) {
+                in.position(body);
+                byte kind = in.get();
+                long time = in.getLong();
+                String tenant = getString(in);
+                String type = getString(in);
+                String user = getString(in);
+                String userId = getString(in);
+                long amount = in.getLong();
+                int count = in.getInt();
+                out.add(new Record(kind, time, tenant, type, user, userId, amount, count));
+                in.position(body + length);
+            }
+        }
+        return in.position();
+    }
+    
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+    
+    private void deleteExpired() {
+        if (retentionDays <= 0) {
+            return;
+        }
+        String oldest = PREFIX + LocalDate.now(ZoneOffset.UTC).minusDays(retentionDays) + SUFFIX;
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            // history-YYYY-MM-DD.log sorts by date
+            if (file.getName().compareTo(oldest) < 0 && !file.delete()) {
+                logger.warning("Could not delete old event history file " + file.getName());
+            }
+        }
+    }
+    
+    private File file(LocalDate day) {
+        return new File(directory, PREFIX + day + SUFFIX);
+    }
+    
+    private static long hourOf(long timeMillis) {
+        return Math.floorDiv(timeMillis, HOUR_MILLIS);
+    }
+    
+    private static LocalDate dayOf(long timeMillis) {
+        return Instant.ofEpochMilli(timeMillis).atOffset(ZoneOffset.UTC).toLocalDate();
+    }
+    
+    // Viewers of a tenant by metric (events, mobs or an event type's amount) over the window, highest first
+    public synchronized List<ViewerTotal> top(String tenant, String metric, int limit) {
+        Map<String, ViewerTotal> totals = new HashMap<>();
+        for (Map<String, Hour> tenants : window().values()) {
+            Hour sums = tenants.get(tenant);
+            if (sums == null) {
+                continue;
+            }
+            for (Map.Entry<String, Viewer> e : sums.viewers.entrySet()) {
+                Viewer viewer = e.getValue();
+                long value = EVENTS.equals(metric) ? viewer.events
+                        : MOBS.equals(metric) ? viewer.mobs : viewer.amounts.getOrDefault(metric, 0L);
+                if (value == 0) {
+                    continue;
+                }
+                ViewerTotal total = totals.computeIfAbsent(e.getKey(), k -> new ViewerTotal());
+                // Hours are visited oldest first, so the newest spelling of the name wins
+                total.name = viewer.name;
+                total.userId = viewer.userId != null ? viewer.userId : total.userId;
+                total.value += value;
+            }
+        }
+        // Keep only the limit largest instead of sorting every viewer
+        PriorityQueue<ViewerTotal> best = new PriorityQueue<>((a, b) -> Long.compare(a.value, b.value));
+        for (ViewerTotal total : totals.values()) {
+            best.add(total);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<ViewerTotal> result = new ArrayList<>(best);
+        result.sort((a, b) -> Long.compare(b.value, a.value));
+        return result;
+    }
+    
+    // One entry per hour of the window that had any activity for the tenant, oldest first
+    public synchronized List<HourTotal> hourly(String tenant) {
+        List<HourTotal> result = new ArrayList<>();
+        for (Map.Entry<Long, Map<String, Hour>> e : window().entrySet()) {
+            Hour sums = e.getValue().get(tenant);
+            if (sums != null) {
+                result.add(new HourTotal(e.getKey() * HOUR_MILLIS, sums.events, sums.mobs));
+            }
+        }
+        return result;
+    }
+    
+    // Event types seen for the tenant in the window, to rank viewers by
+    public synchronized List<String> types(String tenant) {
+        TreeSet<String> types = new TreeSet<>();
+        for (Map<String, Hour> tenants : window().values()) {
+            Hour sums = tenants.get(tenant);
+            if (sums != null) {
+                types.addAll(sums.types.keySet());
+            }
+        }
+        return new ArrayList<>(types);
+    }
+    
+    // The GET /stats document for one tenant
+    public synchronized JsonObject toJson(String tenant, int limit) {
+        JsonObject root = new JsonObject();
+        root.addProperty("tenant", tenant);
+        root.addProperty("windowHours", windowHours);
+        
+        long events = 0;
+        long mobs = 0;
+        Map<String, long[]> types = new TreeMap<>();
+        JsonArray hourly = new JsonArray();
+        for (Map.Entry<Long, Map<String, Hour>> e : window().entrySet()) {
+            Hour sums = e.getValue().get(tenant);
+            if (sums == null) {
+                continue;
+            }
+            events += sums.events;
+            mobs += sums.mobs;
+            for (Map.Entry<String, long[]> type : sums.types.entrySet()) {
+                long[] total = types.computeIfAbsent(type.getKey(), k -> new long[2]);
+                total[0] += type.getValue()[0];
+                total[1] += type.getValue()[1];
+            }
+            JsonObject hour = new JsonObject();
+            hour.addProperty("hour", Instant.ofEpochMilli(e.getKey() * HOUR_MILLIS).toString());
+            hour.addProperty("events", sums.events);
+            hour.addProperty("mobs", sums.mobs);
+            hourly.add(hour);
+        }
+        JsonObject totals = new JsonObject();
+        totals.addProperty("events", events);
+        totals.addProperty("mobs", mobs);
+        JsonObject byType = new JsonObject();
+        for (Map.Entry<String, long[]> e : types.entrySet()) {
+            JsonObject type = new JsonObject();
+            type.addProperty("events", e.getValue()[0]);
+            type.addProperty("amount", e.getValue()[1]);
+            byType.add(e.getKey(), type);
+        }
+        totals.add("types", byType);
+        root.add("totals", totals);
+        root.add("hours", hourly);
+        
+        JsonObject top = new JsonObject();
+        List<String> metrics = new ArrayList<>(Arrays.asList(EVENTS, MOBS));
+        metrics.addAll(types.keySet());
+        for (String metric : metrics) {
+            JsonArray viewers = new JsonArray();
+            for (ViewerTotal total : top(tenant, metric, limit)) {
+                JsonObject viewer = new JsonObject();
+                viewer.addProperty("user", total.name);
+                viewer.addProperty("userId", total.userId);
+                viewer.addProperty("value", total.value);
+                viewers.add(viewer);
+            }
+            top.add(metric, viewers);
+        }
+        root.add("top", top);
+        root.addProperty("pending", queue.size());
+        root.addProperty("dropped", dropped.get());
+        return root;
+    }
+    
+    // Caller holds the lock; hours older than the window may linger until the writer's next pass
+    private Map<Long, Map<String, Hour>> window() {
+        return hours.tailMap(hourOf(System.currentTimeMillis()) - windowHours + 1);
+    }
+    
+    public static final class ViewerTotal {
+        private String name;
+        private String userId;
+        private long value;
+        
+        public String getName() {
+            return name;
+        }
+        
+        // null if no record for the viewer carried one
+        public String getUserId() {
+            return userId;
+        }
+        
+        public long getValue() {
+            return value;
+        }
+    }
+    
+    public static final class HourTotal {
+        private final long startMillis;
+        private final long events;
+        private final long mobs;
+        
+        HourTotal(long startMillis, long events, long mobs) {
+            this.startMillis = startMillis;
+            this.events = events;
+            this.mobs = mobs;
+        }
+        
+        public long getStartMillis() {
+            return startMillis;
+        }
+        
+        public long getEvents() {
+            return events;
+        }
+        
+        public long getMobs() {
+            return mobs;
+        }
+    }
+    
+    // One tenant's activity in one hour
+    private static final class Hour {
+        long events;
+        long mobs;
+        // Event type -> {events, summed amount}
+        final Map<String, long[]> types = new HashMap<>();
+        // Lowercased user name -> sums
+        final Map<String, Viewer> viewers = new HashMap<>();
+    }
+    
+    private static final class Viewer {
+        String name;
+        String userId;
+        long events;
+        long mobs;
+        // Event type -> summed amount (bits for cheers, gifted subs, raid viewers, ...)
+        final Map<String, Long> amounts = new HashMap<>(4);
+    }
+    
+    private static final class Record {
+        final byte kind;
+        final long time;
+        final String tenant;
+        final String type;
+        final String userName;
+        final String userId;
+        final long amount;
+        final int count;
+        
+        Record(byte kind, long time, String tenant, String type, String userName, String userId, long amount, int count) {
+            this.kind = kind;
+            this.time = time;
+            this.tenant = tenant;
+            this.type = type;
+            this.userName = userName;
+            this.userId = userId;
+            this.amount = amount;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package com.minepath.twitchplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Write-ahead log of accepted events so a crash or restart does not lose what was acknowledged.
+// Records are copied into a memory-mapped segment file (no syscall on the ingest path) and a
+// flusher thread forces the segment to disk every flush interval, covering every append since
+// the last flush in one fsync. Mapped writes survive a JVM crash as soon as they are made; the
+// flush interval only bounds what an OS crash or power loss can take. When a segment fills up a
+// new one is started, the events still pending in older segments are copied into it and the old
+// files are unmapped and deleted, so the journal holds at most a couple of segments. Where a file
+// cannot be deleted (Windows refuses while a mapping is open) it is emptied instead and the delete
+// is retried on later rotations.
+//
+// Record: int record length, byte type, long seq, payload, int CRC32 of type + seq + payload.
+// A zero length (unwritten, zero-filled space) or a bad checksum marks the end of a segment.
+public final class EventJournal {
+    
+    private static final byte EVENT = 1;
+    private static final byte COMPLETE = 2;
+    private static final int HEADER = 4 + 1 + 8;
+    private static final int TRAILER = 4;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private static final byte[] EMPTY = new byte[0];
+    // Unsafe.invokeCleaner, the only way to unmap a buffer before it is garbage collected; null where unavailable
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = unsafe != null ? invokeCleaner : null;
+    }
+    
+    private final File directory;
+    private final int segmentBytes;
+    private final long flushIntervalNanos;
+    private final CRC32 crc = new CRC32();
+    
+    // Segments in seq order; the last one is being written
+    private final List<Segment> segments = new ArrayList<>();
+    // Pending (not yet completed) event seq -> segment holding its newest copy, in seq order so a
+    // rotation copies them forward in the order they are replayed
+    private final TreeMap<Long, Segment> pending = new TreeMap<>();
+    // Emptied segment files that could not be deleted yet
+    private final List<File> stale = new ArrayList<>();
+    private Segment active;
+    // Segment the flusher is forcing outside the lock; it is released by the flusher if sealed meanwhile
+    private Segment forcing;
+    private long nextSegment = 1;
+    private long nextSeq = 1;
+    private long appendedSeq;
+    private long durableSeq;
+    private boolean dirty;
+    private Thread flusher;
+    private volatile boolean running;
+    
+    public EventJournal(File directory, int segmentBytes, long flushIntervalNanos) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.flushIntervalNanos = flushIntervalNanos;
+    }
+    
+    // Reads the existing segments and returns the events that were never completed, in seq order
+    public synchronized List<Entry> open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        TreeMap<Long, byte[]> incomplete = new TreeMap<>();
+        for (File file : listSegments(directory)) {
+            nextSegment = Math.max(nextSegment, segmentIndex(file) + 1);
+            Segment segment = map(file, Math.max(segmentBytes, (int) Math.min(Integer.MAX_VALUE, file.length())));
+            segments.add(segment);
+            scan(segment, incomplete);
+        }
+        // Completed events no longer need their payloads; the rest become pending again
+        for (Segment segment : segments) {
+            segment.payloads.keySet().retainAll(incomplete.keySet());
+            for (Long seq : segment.payloads.keySet()) {
+                pending.put(seq, segment);
+            }
+        }
+        
+        // Start a fresh segment; the old ones are compacted into it
+        rotate(0);
+        List<Entry> entries = new ArrayList<>(incomplete.size());
+        for (Map.Entry<Long, byte[]> e : incomplete.entrySet()) {
+            entries.add(new Entry(e.getKey(), e.getValue()));
+        }
+        return entries;
+    }
+    
+    // Every event record still in the segments, completed or not, in seq order. Only reads the
+    // files, so it can be pointed at the journal of a running server, e.g. to replay its traffic.
+    public static List<Entry> read(File directory) throws IOException {
+        TreeMap<Long, byte[]> events = new TreeMap<>();
+        CRC32 crc = new CRC32();
+        for (File file : listSegments(directory)) {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            readRecords(ByteBuffer.wrap(bytes), bytes.length, crc, (type, seq, payload) -> {
+                if (type == EVENT) {
+                    events.put(seq, payload);
+                }
+            });
+        }
+        List<Entry> entries = new ArrayList<>(events.size());
+        for (Map.Entry<Long, byte[]> e : events.entrySet()) {
+            entries.add(new Entry(e.getKey(), e.getValue()));
+        }
+        return entries;
+    }
+    
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "TwitchJournal");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = flusher;
+            flusher = null;
+            notifyAll();
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (active != null) {
+                active.buffer.force();
+                durableSeq = appendedSeq;
+            }
+        }
+    }
+    
+    // Returns the seq to pass to complete() once the event has run
+    public long append(String payload) throws IOException {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            long seq = nextSeq++;
+            write(EVENT, seq, bytes);
+            appendedSeq = seq;
+            pending.put(seq, active);
+            active.payloads.put(seq, bytes);
+            return seq;
+        }
+    }
+    
+    // Marks an event from append() or open() as done so it is not replayed
+    public synchronized void complete(long seq) throws IOException {
+        Segment segment = pending.remove(seq);
+        if (segment == null) {
+            return;
+        }
+        segment.payloads.remove(seq);
+        write(COMPLETE, seq, EMPTY);
+    }
+    
+    // Blocks until everything appended up to seq has been forced to disk, or the timeout passes
+    public synchronized boolean awaitDurable(long seq, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (durableSeq < seq && running) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return durableSeq >= seq;
+    }
+    
+    // Seq of the newest event appended, for awaitDurable after a run of appends
+    public synchronized long getAppendedSeq() {
+        return appendedSeq;
+    }
+    
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+    
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+    
+    private void flushLoop() {
+        while (running) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(flushIntervalNanos);
+            } catch (InterruptedException e) {
+                return;
+            }
+            Segment segment;
+            long upTo;
+            synchronized (this) {
+                if (!dirty || active == null) {
+                    continue;
+                }
+                dirty = false;
+                segment = active;
+                forcing = segment;
+                upTo = appendedSeq;
+            }
+            // Outside the lock so appends carry on while the disk catches up; a rotation in the
+            // meantime forces the old segment itself and leaves releasing it to us
+            segment.buffer.force();
+            synchronized (this) {
+                forcing = null;
+                if (segment.sealed) {
+                    release(segment);
+                }
+                durableSeq = Math.max(durableSeq, upTo);
+                notifyAll();
+            }
+        }
+    }
+    
+    private void write(byte type, long seq, byte[] payload) throws IOException {
+        int length = HEADER + payload.length + TRAILER;
+        if (length > segmentBytes) {
+            throw new IOException("Journal record of " + length + " bytes does not fit in a segment (journal.segment_kb)");
+        }
+        if (active.position + length > active.capacity) {
+            rotate(length);
+            if (active.position + length > active.capacity) {
+                throw new IOException("Journal record of " + length + " bytes does not fit in a new segment");
+            }
+        }
+        writeRecord(active, type, seq, payload);
+        dirty = true;
+    }
+    
+    private void writeRecord(Segment segment, byte type, long seq, byte[] payload) {
+        int checksum = checksum(crc, type, seq, payload);
+        // Write the length last so a torn record reads as the end of the segment
+        ByteBuffer out = segment.buffer.duplicate();
+        int start = segment.position;
+        out.position(start + 4);
+        out.put(type);
+        out.putLong(seq);
+        out.put(payload);
+        out.putInt(checksum);
+        out.putInt(start, out.position() - start);
+        segment.position = out.position();
+    }
+    
+    // Seals the active segment, starts a new one, moves every pending event out of the sealed
+    // segments and deletes them oldest first (so a crash part way never revives completed events).
+    // reserve bytes are kept free after the moved events for the record that caused the rotation.
+    private void rotate(int reserve) throws IOException {
+        if (active != null) {
+            active.buffer.force();
+        }
+        Segment next = map(new File(directory, String.format("%s%020d%s", PREFIX, nextSegment++, SUFFIX)), segmentBytes);
+        List<Segment> sealed = new ArrayList<>(segments);
+        segments.add(next);
+        active = next;
+        
+        int needed = 0;
+        for (Map.Entry<Long, Segment> e : pending.entrySet()) {
+            if (e.getValue() != next) {
+                needed += HEADER + e.getValue().payloads.get(e.getKey()).length + TRAILER;
+            }
+        }
+        if (needed > segmentBytes / 2 || needed + reserve > segmentBytes) {
+            // Too much is still pending to move it all; try again at the next rotation
+            return;
+        }
+        
+        Iterator<Map.Entry<Long, Segment>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Segment> e = it.next();
+            Segment from = e.getValue();
+            if (from == next) {
+                continue;
+            }
+            byte[] payload = from.payloads.get(e.getKey());
+            writeRecord(next, EVENT, e.getKey(), payload);
+            next.payloads.put(e.getKey(), payload);
+            e.setValue(next);
+        }
+        next.buffer.force();
+        
+        stale.removeIf(file -> file.delete() || !file.exists());
+        for (Segment segment : sealed) {
+            segments.remove(segment);
+            segment.sealed = true;
+            if (segment != forcing) {
+                release(segment);
+            }
+        }
+    }
+    
+    // Unmaps a sealed segment and deletes its file. The buffer must not be touched afterwards.
+    private void release(Segment segment) {
+        unmap(segment.buffer);
+        if (segment.file.delete() || !segment.file.exists()) {
+            return;
+        }
+        // Still mapped (no way to unmap here) or otherwise locked: zero the first record length so
+        // the file reads as empty, and try the delete again later
+        try (RandomAccessFile raf = new RandomAccessFile(segment.file, "rw")) {
+            raf.writeInt(0);
+            raf.getFD().sync();
+        } catch (IOException e) {
+            // Nothing more to do here; the delete is retried on the next rotation
+        }
+        stale.add(segment.file);
+    }
+    
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
+    
+    private void scan(Segment segment, Map<Long, byte[]> incomplete) {
+        segment.position = readRecords(segment.buffer.duplicate(), segment.capacity, crc, (type, seq, payload) -> {
+            if (type == EVENT) {
+                incomplete.put(seq, payload);
+                segment.payloads.put(seq, payload);
+            } else if (type == COMPLETE) {
+                incomplete.remove(seq);
+            }
+            nextSeq = Math.max(nextSeq, seq + 1);
+        });
+    }
+    
+    // Hands every valid record to consumer and returns the position where the segment ends
+    private static int readRecords(ByteBuffer in, int capacity, CRC32 crc, RecordConsumer consumer) {
+        int position = 0;
+        while (position + HEADER + TRAILER <= capacity) {
+            int length = in.getInt(position);
+            if (length < HEADER + TRAILER || position + length > capacity) {
+                break;
+            }
+            in.position(position + 4);
+            byte type = in.get();
+            long seq = in.getLong();
+            byte[] payload = new byte[length - HEADER - TRAILER];
+            in.get(payload);
+            if (in.getInt() != checksum(crc, type, seq, payload)) {
+                break;
+            }
+            consumer.accept(type, seq, payload);
+            position = in.position();
+        }
+        return position;
+    }
+    
+    // Segment files in order; names that do not parse are left alone
+    private static List<File> listSegments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        List<File> segments = new ArrayList<>();
+        if (files == null) {
+            return segments;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (segmentIndex(file) >= 0) {
+                segments.add(file);
+            }
+        }
+        return segments;
+    }
+    
+    private static long segmentIndex(File file) {
+        String index = file.getName().substring(PREFIX.length(), file.getName().length() - SUFFIX.length());
+        try {
+            return Long.parseLong(index);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static int checksum(CRC32 crc, byte type, long seq, byte[] payload) {
+        crc.reset();
+        crc.update(type);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (seq >>> shift));
+        }
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+    
+    private static Segment map(File file, int capacity) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity), capacity);
+        }
+    }
+    
+    private interface RecordConsumer {
+        void accept(byte type, long seq, byte[] payload);
+    }
+    
+    private static final class Segment {
+        final File file;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        // Payloads of pending events written here, copied forward on rotation
+        final Map<Long, byte[]> payloads = new HashMap<>();
+        int position;
+        // Replaced by a newer segment; released once nothing is forcing it
+        boolean sealed;
+        
+        Segment(File file, MappedByteBuffer buffer, int capacity) {
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+    }
+    
+    public static final class Entry {
+        private final long seq;
+        private final byte[] payload;
+        
+        Entry(long seq, byte[] payload) {
+            this.seq = seq;
+            this.payload = payload;
+        }
+        
+        public long getSeq() {
+            return seq;
+        }
+        
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.minepath.twitchplugin;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Structured plugin log. Callers record small immutable entries (the event is kept by reference
+// and only formatted when read) into a ring buffer; entries meant for the console are handed to a
+// writer thread that applies sampling and a per-second budget. Safe to call from any thread.
+public class EventLog {
+    
+    public enum Level {
+        DEBUG, INFO, WARN
+    }
+    
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    
+    private final Logger logger;
+    private final TwitchStreamPlugin plugin;
+    private final Entry[] ring;
+    private long written;
+    private final BlockingQueue<Entry> console = new ArrayBlockingQueue<>(1024);
+    private final AtomicLong dropped = new AtomicLong();
+    private Thread writer;
+    private volatile boolean running;
+    
+    public EventLog(TwitchStreamPlugin plugin, int ringSize) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.ring = new Entry[Math.max(16, ringSize)];
+    }
+    
+    public void start() {
+        if (writer == null) {
+            running = true;
+            writer = new Thread(this::writeLoop, "TwitchLog");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+    
+    // Flushes what is already queued for the console, then stops the writer
+    public void stop() {
+        if (writer != null) {
+            running = false;
+            writer.interrupt();
+            try {
+                writer.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+    }
+    
+    public void debug(String category, String text) {
+        log(Level.DEBUG, category, text, null, null);
+    }
+    
+    public void debug(String category, String text, TwitchEvent event) {
+        log(Level.DEBUG, category, text, event, null);
+    }
+    
+    public void info(String category, String text) {
+        log(Level.INFO, category, text, null, null);
+    }
+    
+    public void info(String category, String text, TwitchEvent event) {
+        log(Level.INFO, category, text, event, null);
+    }
+    
+    public void warn(String category, String text) {
+        log(Level.WARN, category, text, null, null);
+    }
+    
+    public void warn(String category, String text, Throwable thrown) {
+        log(Level.WARN, category, text, null, thrown);
+    }
+    
+    public void log(Level level, String category, String text, TwitchEvent event, Throwable thrown) {
+        Entry entry = new Entry(System.currentTimeMillis(), level, category, text, event, thrown);
+        synchronized (ring) {
+            ring[(int) (written++ % ring.length)] = entry;
+        }
+        
+        if (level == Level.DEBUG) {
+            PluginSettings settings = plugin.getSettings();
+            // Debug detail stays in the ring unless debug output is on, and even then is sampled
+            if (!settings.isDebug() || ThreadLocalRandom.current().nextDouble() >= settings.getDebugSampleRate()) {
+                return;
+            }
+        }
+        if (!console.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+    
+    // The newest entries, oldest first
+    public List<String> tail(int count) {
+        Entry[] entries = snapshot(count);
+        List<String> lines = new ArrayList<>(entries.length);
+        for (Entry entry : entries) {
+            lines.add(entry.format(true));
+        }
+        return lines;
+    }
+    
+    // Writes the whole ring to a file; run off the main thread
+    public int dump(Path file) throws IOException {
+        Entry[] entries = snapshot(ring.length);
+        Files.createDirectories(file.getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries) {
+                out.write(entry.format(true));
+                out.write('\n');
+                if (entry.thrown != null) {
+                    out.write("    " + entry.thrown + '\n');
+                }
+            }
+        }
+        return entries.length;
+    }
+    
+    private Entry[] snapshot(int count) {
+        synchronized (ring) {
+            int available = (int) Math.min(written, ring.length);
+            int n = Math.max(0, Math.min(count, available));
+            Entry[] entries = new Entry[n];
+            for (int i = 0; i < n; i++) {
+                entries[i] = ring[(int) ((written - n + i) % ring.length)];
+            }
+            return entries;
+        }
+    }
+    
+    private void writeLoop() {
+        long windowStart = System.nanoTime();
+        int infoInWindow = 0;
+        int suppressed = 0;
+        
+        while (running || !console.isEmpty()) {
+            Entry entry;
+            try {
+                entry = console.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // stop() wakes us up; keep draining until the queue is empty
+                entry = console.poll();
+                if (entry == null) {
+                    break;
+                }
+            }
+            
+            long now = System.nanoTime();
+            if (now - windowStart >= 1_000_000_000L) {
+                long lost = dropped.getAndSet(0);
+                if (suppressed > 0 || lost > 0) {
+                    logger.info("Suppressed " + (suppressed + lost) + " log line(s) in the last second (see /twitchlog)");
+                }
+                windowStart = now;
+                infoInWindow = 0;
+                suppressed = 0;
+            }
+            if (entry == null) {
+                continue;
+            }
+            
+            // Warnings always get through; everything else shares the per-second budget
+            if (entry.level != Level.WARN && infoInWindow++ >= plugin.getSettings().getMaxInfoLogsPerSecond()) {
+                suppressed++;
+                continue;
+            }
+            try {
+                if (entry.level == Level.WARN) {
+                    logger.log(java.util.logging.Level.WARNING, entry.format(false), entry.thrown);
+                } else {
+                    logger.info(entry.format(false));
+                }
+            } catch (RuntimeException e) {
+                // A broken handler must not kill the writer
+            }
+        }
+    }
+    
+    private static final class Entry {
+        final long time;
+        final Level level;
+        final String category;
+        final String text;
+        final TwitchEvent event;
+        final Throwable thrown;
+        
+        Entry(long time, Level level, String category, String text, TwitchEvent event, Throwable thrown) {
+            this.time = time;
+            this.level = level;
+            this.category = category;
+            this.text = text;
+            this.event = event;
+            this.thrown = thrown;
+        }
+        
+        String format(boolean withTime) {
+            StringBuilder sb = new StringBuilder(96);
+            if (withTime) {
+                sb.append(TIME.format(Instant.ofEpochMilli(time))).append(' ').append(level).append(' ');
+            } else if (level == Level.DEBUG) {
+                sb.append("[debug] ");
+            }
+            sb.append('[').append(category).append("] ").append(text);
+            if (event != null) {
+                sb.append(' ').append(event);
+            }
+            if (thrown != null && withTime) {
+                sb.append(" (").append(thrown).append(')');
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// One entry of events.<type>.rules: conditions ("when:") checked against the event and the
+// actions ("do:") run when they hold. Conditions are compiled to plain fields, so matching is a
+// few comparisons. When the rule last fired is kept by the tenant's RuleCooldowns, so rules stay
+// as immutable as the rest of the settings snapshot.
+public final class EventRule {
+    
+    private final long minAmount;
+    private final long maxAmount;
+    // Bit per TwitchEvent tier level; 0 matches any tier
+    private final int tierMask;
+    // null matches gifted and non-gifted events
+    private final Boolean gift;
+    private final long cooldownMillis;
+    private final long userCooldownMillis;
+    private final RuleAction[] actions;
+    // null uses the event's message
+    private final MessageTemplate message;
+    
+    EventRule(long minAmount, long maxAmount, int tierMask, Boolean gift, long cooldownMillis, long userCooldownMillis,
+            RuleAction[] actions, MessageTemplate message) {
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+        this.tierMask = tierMask;
+        this.gift = gift;
+        this.cooldownMillis = cooldownMillis;
+        this.userCooldownMillis = userCooldownMillis;
+        this.actions = actions;
+        this.message = message;
+    }
+    
+    // A rule with no conditions, as built for the legacy per-event keys
+    static EventRule always(RuleAction action, Boolean gift) {
+        return new EventRule(0, Long.MAX_VALUE, 0, gift, 0, 0, new RuleAction[] {action}, null);
+    }
+    
+    @SuppressWarnings("unchecked")
+    static EventRule compile(Map<?, ?> raw, String path, List<String> errors) {
+        ConfigurationSection spec = new MemoryConfiguration().createSection("rule", raw);
+        ConfigurationSection when = spec.getConfigurationSection("when");
+        long minAmount = 0;
+        long maxAmount = Long.MAX_VALUE;
+        int tierMask = 0;
+        Boolean gift = null;
+        long cooldown = 0;
+        long userCooldown = 0;
+        if (when != null) {
+            minAmount = when.getLong("min_amount", 0);
+            maxAmount = when.getLong("max_amount", Long.MAX_VALUE);
+            if (minAmount > maxAmount) {
+                errors.add(path + ".when: min_amount is greater than max_amount");
+            }
+            if (when.isSet("tier")) {
+                List<String> raws = when.isList("tier") ? when.getStringList("tier") : List.of(when.getString("tier"));
+                for (String raw : raws) {
+                    int level = TwitchEvent.tierLevel(raw);
+                    if (level == TwitchEvent.TIER_NONE) {
+                        errors.add(path + ".when.tier: unknown tier '" + raw + "' (1, 2, 3 or prime)");
+                    } else {
+                        tierMask |= 1 << level;
+                    }
+                }
+            }
+            if (when.isSet("gift")) {
+                gift = when.getBoolean("gift");
+            }
+            cooldown = Math.max(0, when.getLong("cooldown_seconds", 0)) * 1000L;
+            userCooldown = Math.max(0, when.getLong("user_cooldown_seconds", 0)) * 1000L;
+        }
+        
+        List<RuleAction> actions = new ArrayList<>();
+        List<Map<?, ?>> steps = spec.isList("do") ? (List<Map<?, ?>>) spec.get("do") : List.of();
+        for (int i = 0; i < steps.size(); i++) {
+            Object step = steps.get(i);
+            if (!(step instanceof Map)) {
+                errors.add(path + ".do[" + i + "]: expected a map with an action");
+                continue;
+            }
+            ConfigurationSection stepSpec = new MemoryConfiguration().createSection("step", (Map<?, ?>) step);
+            RuleAction action = RuleActions.compile(stepSpec, path + ".do[" + i + "]", errors);
+            if (action != null) {
+                actions.add(action);
+            }
+        }
+        if (steps.isEmpty()) {
+            errors.add(path + ".do: a rule needs at least one action");
+        }
+        
+        String text = spec.getString("message");
+        return new EventRule(minAmount, maxAmount, tierMask, gift, cooldown, userCooldown,
+                actions.toArray(new RuleAction[0]), text != null ? MessageTemplate.compile(text) : null);
+    }
+    
+    boolean matches(TwitchEvent event, long now, RuleCooldowns cooldowns) {
+        int amount = event.getAmount();
+        if (amount < minAmount || amount > maxAmount) {
+            return false;
+        }
+        if (gift != null && event.isGift() != gift) {
+            return false;
+        }
+        // Events without a recognised tier are TIER_NONE, whose bit is never set
+        if (tierMask != 0 && (tierMask & 1 << event.getTierLevel()) == 0) {
+            return false;
+        }
+        return cooldowns.ready(this, event, now);
+    }
+    
+    // Runs every action and returns the first amount one reported (0 if none did)
+    int fire(Tenant tenant, TwitchEvent event, Player target, long now) {
+        tenant.getRuleCooldowns().fired(this, event, now);
+        
+        int amount = -1;
+        for (RuleAction action : actions) {
+            int produced = action.run(tenant, event, target);
+            if (amount < 0) {
+                amount = produced;
+            }
+        }
+        return Math.max(0, amount);
+    }
+    
+    long getCooldownMillis() {
+        return cooldownMillis;
+    }
+    
+    long getUserCooldownMillis() {
+        return userCooldownMillis;
+    }
+    
+    MessageTemplate getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,24 @@
+package com.minepath.twitchplugin;
+
+public final class FollowEvent extends TwitchEvent {
+    
+    private final String followedAt;
+    
+    public FollowEvent(String userName, String userId, String followedAt, long receivedAt) {
+        this(userName, userId, null, followedAt, receivedAt);
+    }
+    
+    public FollowEvent(String userName, String userId, String messageId, String followedAt, long receivedAt) {
+        super(userName, userId, messageId, receivedAt);
+        this.followedAt = followedAt;
+    }
+    
+    @Override
+    public String getType() {
+        return FOLLOW;
+    }
+    
+    public String getFollowedAt() {
+        return followedAt;
+    }
+}
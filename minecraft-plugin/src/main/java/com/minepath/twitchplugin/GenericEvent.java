@@ -0,0 +1,47 @@
+package com.minepath.twitchplugin;
+
+// An event type the plugin has no class for (e.g. channel points or hype trains) that has rules
+// under events.<type> in config.yml. Carries the common fields rules and messages can use.
+public final class GenericEvent extends TwitchEvent {
+    
+    private final String type;
+    private final int amount;
+    private final String tier;
+    private final int tierLevel;
+    private final String message;
+    
+    public GenericEvent(String type, String userName, String userId, String messageId, int amount, String tier,
+            String message, long receivedAt) {
+        super(userName, userId, messageId, receivedAt);
+        this.type = type;
+        this.amount = amount;
+        this.tier = tier;
+        this.tierLevel = tierLevel(tier);
+        this.message = message;
+    }
+    
+    @Override
+    public String getType() {
+        return type;
+    }
+    
+    // data.amount, 1 when not given
+    @Override
+    public int getAmount() {
+        return amount;
+    }
+    
+    @Override
+    public String getTier() {
+        return tier;
+    }
+    
+    @Override
+    public int getTierLevel() {
+        return tierLevel;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,57 @@
+package com.minepath.twitchplugin;
+
+import java.util.Locale;
+
+public final class GiftSubscriptionEvent extends TwitchEvent implements Coalescible {
+    
+    private final int total;
+    private final String tier;
+    private final int tierLevel;
+    
+    public GiftSubscriptionEvent(String userName, String userId, int total, String tier, long receivedAt) {
+        this(userName, userId, null, total, tier, receivedAt);
+    }
+    
+    public GiftSubscriptionEvent(String userName, String userId, String messageId, int total, String tier, long receivedAt) {
+        super(userName, userId, messageId, receivedAt);
+        this.total = total;
+        this.tier = tier;
+        this.tierLevel = tierLevel(tier);
+    }
+    
+    @Override
+    public String getType() {
+        return GIFT_SUBSCRIPTION;
+    }
+    
+    public int getTotal() {
+        return total;
+    }
+    
+    @Override
+    public String getTier() {
+        return tier;
+    }
+    
+    @Override
+    public int getTierLevel() {
+        return tierLevel;
+    }
+    
+    @Override
+    public int getAmount() {
+        return total;
+    }
+    
+    // Gifts of different tiers stay separate waves
+    @Override
+    public String getCoalesceKey() {
+        return GIFT_SUBSCRIPTION + ':' + tierLevel + ':' + getUserName().toLowerCase(Locale.ROOT);
+    }
+    
+    @Override
+    public TwitchEvent mergeWith(TwitchEvent other) {
+        GiftSubscriptionEvent gift = (GiftSubscriptionEvent) other;
+        return new GiftSubscriptionEvent(getUserName(), getUserId(), getMessageId(), total + gift.total, tier, getReceivedAt());
+    }
+}
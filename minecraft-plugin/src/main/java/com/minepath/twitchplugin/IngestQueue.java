@@ -0,0 +1,385 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded hand-off between the HTTP threads (producers) and the main thread (single consumer).
+// Events of the same type from the same user that arrive within the coalesce window are merged, so
+// a burst of gift callbacks becomes one spawn of the summed size. With the journal enabled each
+// accepted event is journaled before it is queued and marked complete once it has run, including
+// the mob waves it queued, so spawns still waiting at shutdown are replayed. It is also marked
+// complete as soon as one of its mobs has spawned, so a partly spawned wave is never replayed in
+// full. Events held for coalescing keep their slot until they are dispatched, so a burst of
+// distinct keys still fills the queue and gets backpressure. Each tenant has its own queue, limits
+// and per-tick budget.
+public class IngestQueue implements Runnable {
+    
+    public enum Admission {
+        QUEUED, FULL, DUPLICATE, RATE_LIMITED
+    }
+    
+    // Ticks between sweeps of refilled rate limit buckets
+    private static final int EVICT_INTERVAL_TICKS = 600;
+    // Ticks between attempts to run replayed events that found no target player
+    private static final int REPLAY_INTERVAL_TICKS = 20;
+    
+    private final TwitchStreamPlugin plugin;
+    private final Tenant tenant;
+    private final ConcurrentLinkedQueue<QueuedEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final DedupCache dedup;
+    private final RateLimiter userLimits = new RateLimiter();
+    private final RateLimiter typeLimits = new RateLimiter();
+    private int ticksSinceEvict;
+    private final EventEncoder encoder = new EventEncoder();
+    private BukkitTask task;
+    
+    // Consumer-only state, insertion order == arrival order
+    private final LinkedHashMap<String, QueuedEvent> coalescing = new LinkedHashMap<>();
+    private long coalesced;
+    private final ReplayBacklog backlog = new ReplayBacklog();
+    private int ticksSinceReplay = REPLAY_INTERVAL_TICKS;
+    
+    public IngestQueue(TwitchStreamPlugin plugin, Tenant tenant) {
+        this.plugin = plugin;
+        this.tenant = tenant;
+        this.dedup = new DedupCache(tenant.getSettings().getDedupMaxEntries());
+    }
+    
+    public void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1L, 1L);
+        }
+    }
+    
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        int pending = size.get();
+        String of = tenant.isDefault() ? "" : " of tenant " + tenant.getId();
+        if (pending > 0 && plugin.getJournal() != null) {
+            plugin.getLogger().info("Leaving " + pending + " queued event(s)" + of + " in the journal to run on the next start");
+        } else if (pending > 0) {
+            plugin.getLogger().warning("Discarding " + pending + " queued event(s)" + of + " on shutdown");
+        }
+        if (!backlog.isEmpty()) {
+            plugin.getLogger().info("Leaving " + backlog.size() + " replayed event(s)" + of
+                    + " that found no player in the journal to run on the next start");
+        }
+        queue.clear();
+        size.set(0);
+        coalescing.clear();
+        backlog.clear();
+    }
+    
+    // Called from any thread. Events whose message ID was already admitted within the dedup ttl are
+    // reported as duplicates and dropped. Then, for rate limited types, the viewer's and the event
+    // type's token buckets must each have a token, and the queue must have room. The ID is claimed
+    // last, once nothing can refuse the event: a redelivery that races a delivery which is then
+    // refused must not be acknowledged as a duplicate of an event that was never queued.
+    public Admission admit(TwitchEvent event) {
+        return admit(event, true);
+    }
+    
+    // With awaitDurable false, journal.sync_ack is left to the caller, which can cover a run of
+    // events with a single EventJournal.awaitDurable(getAppendedSeq()) (see StreamServer)
+    public Admission admit(TwitchEvent event, boolean awaitDurable) {
+        PluginSettings settings = tenant.getSettings();
+        String messageId = event.getMessageId();
+        long ttl = settings.getDedupTtlNanos();
+        boolean tracked = messageId != null && ttl > 0;
+        PluginMetrics.TypeMetrics metrics = tenant.getMetrics().type(event.getType());
+        // Redeliveries of an event already queued are answered before they take a token
+        if (tracked && dedup.contains(messageId, ttl)) {
+            metrics.duplicate();
+            return Admission.DUPLICATE;
+        }
+        
+        if (settings.isRateLimited(event.getType())
+                && (userLimits.tryAcquire(userKey(event), settings.getUserRate(), settings.getUserBurst()) != 0
+                || typeLimits.tryAcquire(event.getType(), settings.getTypeRate(), settings.getTypeBurst()) != 0)) {
+            metrics.rateLimited();
+            return Admission.RATE_LIMITED;
+        }
+        if (!reserve(metrics)) {
+            return Admission.FULL;
+        }
+        // A concurrent delivery of the same ID got here first
+        if (tracked && !dedup.claim(messageId, ttl)) {
+            size.decrementAndGet();
+            metrics.duplicate();
+            return Admission.DUPLICATE;
+        }
+        enqueue(event, awaitDurable);
+        return Admission.QUEUED;
+    }
+    
+    // Whole seconds until a RATE_LIMITED event would be let through, for Retry-After
+    public int getRetryAfterSeconds(TwitchEvent event) {
+        PluginSettings settings = tenant.getSettings();
+        long wait = Math.max(userLimits.waitNanos(userKey(event), settings.getUserRate(), settings.getUserBurst()),
+                typeLimits.waitNanos(event.getType(), settings.getTypeRate(), settings.getTypeBurst()));
+        return (int) Math.max(1, (wait + 999_999_999L) / 1_000_000_000L);
+    }
+    
+    private static String userKey(TwitchEvent event) {
+        return event.getUserId() != null ? "id:" + event.getUserId() : "name:" + event.getUserName().toLowerCase(Locale.ROOT);
+    }
+    
+    // Called from any thread; returns false when the queue is full and the caller should back off
+    public boolean offer(TwitchEvent event) {
+        if (!reserve(tenant.getMetrics().type(event.getType()))) {
+            return false;
+        }
+        enqueue(event, true);
+        return true;
+    }
+    
+    // Takes a queue slot, or returns false when the queue is full
+    private boolean reserve(PluginMetrics.TypeMetrics metrics) {
+        int capacity = tenant.getSettings().getIngestCapacity();
+        metrics.received();
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) {
+                rejected.incrementAndGet();
+                metrics.rejected();
+                return false;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        return true;
+    }
+    
+    // Journals and queues an event that holds a reserved slot
+    private void enqueue(TwitchEvent event, boolean awaitDurable) {
+        long seq = journal(event);
+        queue.add(new QueuedEvent(event, seq));
+        if (seq != 0 && awaitDurable && plugin.getSettings().isJournalSyncAck()) {
+            awaitDurable(seq);
+        }
+    }
+    
+    // Main thread, before the first tick: holds the events the journal still had open until they can
+    // run, outside the queue and its capacity. Returns how many were held.
+    public int replay(List<EventJournal.Entry> entries, EventDecoder decoder) {
+        long ttl = tenant.getSettings().getDedupTtlNanos();
+        int replayed = 0;
+        for (EventJournal.Entry entry : entries) {
+            TwitchEvent event;
+            try {
+                event = decoder.decode(new ByteArrayInputStream(entry.getPayload()));
+            } catch (IOException | RuntimeException e) {
+                plugin.getEventLog().warn("journal", "Dropping unreadable journal entry " + entry.getSeq() + ": " + e.getMessage());
+                complete(entry.getSeq());
+                continue;
+            }
+            // Redeliveries of replayed events are duplicates
+            if (event.getMessageId() != null && ttl > 0) {
+                dedup.claim(event.getMessageId(), ttl);
+            }
+            long[] seqs = {entry.getSeq()};
+            backlog.add(event, new JournalCompletion(seqs, 1, this::complete));
+            replayed++;
+        }
+        return replayed;
+    }
+    
+    // Returns the journal seq, or 0 when the event is not journaled
+    private long journal(TwitchEvent event) {
+        EventJournal journal = plugin.getJournal();
+        if (journal == null) {
+            return 0;
+        }
+        try {
+            return journal.append(encoder.encode(event, tenant.isDefault() ? null : tenant.getId()));
+        } catch (IOException | RuntimeException e) {
+            plugin.getEventLog().log(EventLog.Level.WARN, "journal",
+                    "Could not journal event, it will not survive a restart: " + e.getMessage(), event, null);
+            return 0;
+        }
+    }
+    
+    private void awaitDurable(long seq) {
+        try {
+            if (!plugin.getJournal().awaitDurable(seq, 1_000_000_000L)) {
+                plugin.getEventLog().warn("journal", "Journal flush is taking over a second");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void complete(long seq) {
+        EventJournal journal = plugin.getJournal();
+        if (seq == 0 || journal == null) {
+            return;
+        }
+        try {
+            journal.complete(seq);
+        } catch (IOException e) {
+            plugin.getEventLog().warn("journal", "Could not mark journal entry " + seq + " complete: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public void run() {
+        PluginSettings settings = tenant.getSettings();
+        long coalesceWindowNanos = settings.getCoalesceWindowNanos();
+        long now = System.nanoTime();
+        int budget = settings.getMaxEventsPerTick();
+        
+        if (++ticksSinceEvict >= EVICT_INTERVAL_TICKS) {
+            ticksSinceEvict = 0;
+            userLimits.evictIdle(settings.getUserRate(), settings.getUserBurst());
+            typeLimits.evictIdle(settings.getTypeRate(), settings.getTypeBurst());
+        }
+        
+        // Replayed events go first, but while nobody is online only retry now and then
+        if (!backlog.isEmpty() && ++ticksSinceReplay >= REPLAY_INTERVAL_TICKS) {
+            ticksSinceReplay = 0;
+            budget -= backlog.drain(this::runReplayed, budget);
+        }
+        
+        // Flush merged events whose window has closed, oldest first
+        Iterator<QueuedEvent> it = coalescing.values().iterator();
+        while (budget > 0 && it.hasNext()) {
+            QueuedEvent pending = it.next();
+            if (now - pending.event.getReceivedAt() < coalesceWindowNanos) {
+                break;
+            }
+            it.remove();
+            dispatch(pending);
+            budget--;
+        }
+        
+        // Drain new arrivals; merges are cheap but still bounded so producers can't pin the tick
+        int polls = settings.getIngestCapacity();
+        QueuedEvent event;
+        while (budget > 0 && polls-- > 0 && (event = queue.poll()) != null) {
+            String key = coalesceWindowNanos > 0 && event.event instanceof Coalescible
+                    ? ((Coalescible) event.event).getCoalesceKey() : null;
+            if (key == null) {
+                dispatch(event);
+                budget--;
+                continue;
+            }
+            
+            QueuedEvent existing = coalescing.get(key);
+            if (existing == null) {
+                coalescing.put(key, event);
+            } else {
+                // The merged event's slot is freed now, the one it was merged into on dispatch
+                merge(existing, event);
+                coalesced++;
+                size.decrementAndGet();
+            }
+        }
+    }
+    
+    private void merge(QueuedEvent into, QueuedEvent from) {
+        tenant.getMetrics().type(from.event.getType()).coalesced();
+        into.event = ((Coalescible) into.event).mergeWith(from.event);
+        into.merged++;
+        into.addSeqs(from);
+    }
+    
+    private void dispatch(QueuedEvent queued) {
+        size.decrementAndGet();
+        TwitchEvent event = queued.event;
+        if (queued.merged > 0) {
+            plugin.getEventLog().debug("ingest", "Coalesced " + (queued.merged + 1) + " events into", event);
+        }
+        // Latency runs from decode on the HTTP thread to here, including any coalescing wait
+        tenant.getMetrics().type(event.getType()).executed(event.getReceivedAt());
+        JournalCompletion completion = queued.seqCount > 0
+                ? new JournalCompletion(queued.seqs, queued.seqCount, this::complete) : null;
+        handle(event, completion);
+        // Also after a failure, so a poison event is not replayed on every start. Waves the event
+        // queued hold their own reference and complete it when they finish.
+        if (completion != null) {
+            completion.release();
+        }
+    }
+    
+    // A replayed event that finds no target stays in the backlog, open in the journal; the backlog
+    // releases the completion of the ones that ran
+    private boolean runReplayed(TwitchEvent event, JournalCompletion completion) {
+        if (!handle(event, completion)) {
+            return false;
+        }
+        tenant.getMetrics().type(event.getType()).executed(event.getReceivedAt());
+        return true;
+    }
+    
+    // Returns false when the event did not run because no target player was online
+    private boolean handle(TwitchEvent event, JournalCompletion completion) {
+        SpawnScheduler scheduler = tenant.getSpawnScheduler();
+        scheduler.setCompletion(completion);
+        try {
+            return plugin.getEventHandler().handleEvent(tenant, event);
+        } catch (Exception e) {
+            plugin.getEventLog().warn("ingest", "Error handling " + event.getType() + " event: " + e.getMessage(), e);
+            return true;
+        } finally {
+            scheduler.setCompletion(null);
+        }
+    }
+    
+    public int getDepth() {
+        return size.get();
+    }
+    
+    public int getCapacity() {
+        return tenant.getSettings().getIngestCapacity();
+    }
+    
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+    
+    public long getCoalescedCount() {
+        return coalesced;
+    }
+    
+    public int getDedupSize() {
+        return dedup.size();
+    }
+    
+    private static final class QueuedEvent {
+        TwitchEvent event;
+        int merged;
+        // Journal seqs of this event and everything merged into it
+        long[] seqs = new long[1];
+        int seqCount;
+        
+        QueuedEvent(TwitchEvent event, long seq) {
+            this.event = event;
+            if (seq != 0) {
+                seqs[seqCount++] = seq;
+            }
+        }
+        
+        void addSeqs(QueuedEvent other) {
+            if (seqCount + other.seqCount > seqs.length) {
+                seqs = Arrays.copyOf(seqs, Math.max(seqs.length * 2, seqCount + other.seqCount));
+            }
+            System.arraycopy(other.seqs, 0, seqs, seqCount, other.seqCount);
+            seqCount += other.seqCount;
+        }
+    }
+}
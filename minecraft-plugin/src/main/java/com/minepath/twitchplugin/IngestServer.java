@@ -0,0 +1,300 @@
+package com.minepath.twitchplugin;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+// Owns the embedded HTTP server and its request executor. Everything is read from the
+// server.* config section so it can run without a Bukkit server (benchmarks, tools).
+public class IngestServer {
+    
+    private final Logger logger;
+    private final ConfigurationSection config;
+    private HttpServer server;
+    private ExecutorService executor;
+    private int maxBodyBytes;
+    private int maxBatchBodyBytes;
+    private boolean keepAlive;
+    // Requests answered 503 because the pool and its queue were full (or shutting down)
+    private final LongAdder rejected = new LongAdder();
+    // Set on the dispatcher thread while it runs a rejected exchange, so the context handler only
+    // writes the 503 instead of reading the body
+    private final ThreadLocal<Boolean> rejecting = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    
+    public IngestServer(Logger logger, ConfigurationSection config) {
+        this.logger = logger;
+        this.config = config;
+    }
+    
+    public void start() throws IOException {
+        String host = config.getString("host", "0.0.0.0");
+        int port = config.getInt("port", 8080);
+        int backlog = Math.max(0, config.getInt("backlog", 128));
+        maxBodyBytes = Math.max(1024, config.getInt("max_body_bytes", 65536));
+        maxBatchBodyBytes = Math.max(maxBodyBytes, config.getInt("max_batch_body_bytes", 1048576));
+        keepAlive = config.getBoolean("keep_alive", true);
+        
+        applyConnectionSettings();
+        
+        server = HttpServer.create(new InetSocketAddress(host, port), backlog);
+        executor = createExecutor();
+        server.setExecutor(executor);
+    }
+    
+    public void createContext(String path, HttpHandler handler) {
+        server.createContext(path, exchange -> {
+            if (rejecting.get()) {
+                reject(exchange);
+            } else {
+                handler.handle(exchange);
+            }
+        });
+    }
+    
+    public void listen() {
+        server.start();
+        logger.info("HTTP server started on " + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+                + " (" + describeExecutor() + ")");
+    }
+    
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+    }
+    
+    // The JDK server has no per-server settings for these, only JVM-wide system properties, so
+    // they also apply to any other HttpServer in this JVM (other plugins included). It reads them
+    // once, when its config class is first loaded, so they only take effect if this is the first
+    // HttpServer started. Explicit -D flags always win, and 0 / false leaves the property unset.
+    private void applyConnectionSettings() {
+        setIfAbsent("sun.net.httpserver.maxReqTime", config.getInt("read_timeout_seconds", 10));
+        setIfAbsent("sun.net.httpserver.maxRspTime", config.getInt("write_timeout_seconds", 10));
+        setIfAbsent("sun.net.httpserver.idleInterval", config.getInt("idle_timeout_seconds", 30));
+        setIfAbsent("sun.net.httpserver.maxIdleConnections", config.getInt("max_idle_connections", 200));
+        // Off by default in the JDK; small responses then wait for the client's delayed ACK
+        if (config.getBoolean("tcp_nodelay", true)) {
+            setIfAbsent("sun.net.httpserver.nodelay", "true");
+        }
+    }
+    
+    private static void setIfAbsent(String property, int value) {
+        if (value > 0) {
+            setIfAbsent(property, String.valueOf(value));
+        }
+    }
+    
+    private static void setIfAbsent(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+    
+    private ExecutorService createExecutor() {
+        String mode = config.getString("executor", "pool");
+        
+        if ("virtual".equalsIgnoreCase(mode)) {
+            try {
+                // Resolved reflectively so the plugin still targets Java 11
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.warning("Virtual threads are not available on this Java runtime, using a thread pool instead");
+            }
+        }
+        
+        int threads = Math.max(1, config.getInt("threads", 4));
+        int queueSize = Math.max(1, config.getInt("queue_size", 256));
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), new NamedThreadFactory("TwitchHttp"),
+                // When saturated the dispatcher only parses the request head and answers 503, so a
+                // slow body or journal sync never holds up accepts; the exchange is always closed
+                (task, executor) -> {
+                    rejected.increment();
+                    rejecting.set(Boolean.TRUE);
+                    try {
+                        task.run();
+                    } finally {
+                        rejecting.set(Boolean.FALSE);
+                    }
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+    
+    private String describeExecutor() {
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            return pool.getMaximumPoolSize() + " worker threads, queue " + pool.getQueue().remainingCapacity();
+        }
+        return "virtual threads";
+    }
+    
+    // The bound address, e.g. to find the port when server.port is 0
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+    
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+    
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+    
+    // The body is left unread, so the connection is not reused
+    private void reject(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.getResponseHeaders().set("Connection", "close");
+        try {
+            sendStatus(exchange, 503, "error", "Server busy");
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    // Streams a single-event request body, failing once server.max_body_bytes is passed
+    public InputStream openBody(HttpExchange exchange) throws IOException {
+        return openLimited(exchange, maxBodyBytes);
+    }
+    
+    // Reads a whole batch request body, failing once server.max_batch_body_bytes is passed. Read up
+    // front so an oversized batch is refused before any of its items are admitted.
+    public byte[] readBatchBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = openLimited(exchange, maxBatchBodyBytes)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            in.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+    
+    private InputStream openLimited(HttpExchange exchange, int limit) throws IOException {
+        String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (declared != null) {
+            try {
+                if (Long.parseLong(declared.trim()) > limit) {
+                    throw new BodyTooLargeException(limit);
+                }
+            } catch (NumberFormatException ignored) {
+                // Fall through and let the bounded stream decide
+            }
+        }
+        return new LimitedInputStream(exchange.getRequestBody(), limit);
+    }
+    
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+    
+    public void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        sendText(exchange, status, "application/json", json);
+    }
+    
+    public void sendText(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (!keepAlive) {
+            exchange.getResponseHeaders().set("Connection", "close");
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+    
+    public void sendStatus(HttpExchange exchange, int status, String statusName, String message) throws IOException {
+        JsonObject response = new JsonObject();
+        response.addProperty("status", statusName);
+        response.addProperty("message", message);
+        sendJson(exchange, status, response.toString());
+    }
+    
+    public static class BodyTooLargeException extends IOException {
+        public BodyTooLargeException(int limit) {
+            super("Request body exceeds " + limit + " bytes");
+        }
+    }
+    
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final int limit;
+        private int count;
+        
+        LimitedInputStream(InputStream in, int limit) {
+            super(in);
+            this.limit = limit;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+        
+        private void count(int read) throws BodyTooLargeException {
+            count += read;
+            if (count > limit) {
+                throw new BodyTooLargeException(limit);
+            }
+        }
+    }
+    
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+        
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
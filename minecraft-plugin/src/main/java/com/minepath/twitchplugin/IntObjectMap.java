@@ -0,0 +1,145 @@
+package com.minepath.twitchplugin;
+
+import java.util.Arrays;
+
+// Open-addressing hash map from int keys to objects, without boxing the keys.
+// Linear probing with backward-shift deletion; null values are not allowed. Not thread-safe.
+final class IntObjectMap<V> {
+    
+    interface Visitor<V> {
+        void visit(int key, V value);
+    }
+    
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeAt;
+    
+    IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        allocate(capacity);
+    }
+    
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity * 3 / 4;
+    }
+    
+    private int slot(int key) {
+        // Fibonacci hashing spreads sequential entity IDs across the table
+        return (key * 0x9E3779B9) >>> 7 & mask;
+    }
+    
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+    
+    boolean containsKey(int key) {
+        return get(key) != null;
+    }
+    
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+    
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                shiftBack(i);
+                size--;
+                return previous;
+            }
+        }
+        return null;
+    }
+    
+    // Moves later entries of the probe chain into the freed slot so lookups never need tombstones
+    private void shiftBack(int free) {
+        int i = free;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == null) {
+                break;
+            }
+            int home = slot(keys[i]);
+            // Entry at i may move to free only if its home slot is not between free and i (cyclically)
+            boolean movable = free <= i ? (home <= free || home > i) : (home <= free && home > i);
+            if (movable) {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                free = i;
+            }
+        }
+        values[free] = null;
+        keys[free] = 0;
+    }
+    
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    boolean isEmpty() {
+        return size == 0;
+    }
+    
+    // The visitor must not modify the map
+    @SuppressWarnings("unchecked")
+    void forEach(Visitor<V> visitor) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                visitor.visit(keys[i], (V) values[i]);
+            }
+        }
+    }
+    
+    void clear() {
+        Arrays.fill(values, null);
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+}
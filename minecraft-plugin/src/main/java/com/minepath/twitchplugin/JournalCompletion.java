@@ -0,0 +1,47 @@
+package com.minepath.twitchplugin;
+
+import java.util.function.LongConsumer;
+
+// Journal seqs of one dispatched event, completed once the dispatch and every wave holding it are
+// done, or earlier by commit(). Main thread only.
+final class JournalCompletion {
+    
+    private final long[] seqs;
+    private final int count;
+    // Marks one seq complete in the journal
+    private final LongConsumer complete;
+    private int holds = 1;
+    private boolean completed;
+    
+    JournalCompletion(long[] seqs, int count, LongConsumer complete) {
+        this.seqs = seqs;
+        this.count = count;
+        this.complete = complete;
+    }
+    
+    void retain() {
+        holds++;
+    }
+    
+    void release() {
+        if (--holds == 0) {
+            commit();
+        }
+    }
+    
+    // Completes the entries now, e.g. once the first mob of a wave has spawned: replaying the
+    // event after that would spawn those mobs and repeat the announcement again
+    void commit() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        for (int i = 0; i < count; i++) {
+            complete.accept(seqs[i]);
+        }
+    }
+    
+    boolean isCompleted() {
+        return completed;
+    }
+}
@@ -0,0 +1,67 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// /twitchlog [lines] shows recent log entries, /twitchlog dump writes the whole buffer to a file
+public class LogCommand implements CommandExecutor {
+    
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    
+    private final TwitchStreamPlugin plugin;
+    
+    public LogCommand(TwitchStreamPlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        EventLog log = plugin.getEventLog();
+        
+        if (args.length > 0 && args[0].equalsIgnoreCase("dump")) {
+            Path file = plugin.getDataFolder().toPath().resolve("logs")
+                    .resolve("twitchlog-" + LocalDateTime.now().format(FILE_TIME) + ".log");
+            // File IO stays off the main thread; the reply is sent back on it
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                String reply;
+                try {
+                    int lines = log.dump(file);
+                    reply = ChatColor.GREEN + "Wrote " + lines + " log entries to " + file;
+                } catch (IOException e) {
+                    reply = ChatColor.RED + "Could not write log dump: " + e.getMessage();
+                }
+                String message = reply;
+                Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage(message));
+            });
+            return true;
+        }
+        
+        int lines = 20;
+        if (args.length > 0) {
+            try {
+                lines = Math.max(1, Math.min(200, Integer.parseInt(args[0])));
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + "Usage: /twitchlog [lines|dump]");
+                return true;
+            }
+        }
+        
+        var entries = log.tail(lines);
+        if (entries.isEmpty()) {
+            sender.sendMessage(ChatColor.YELLOW + "No log entries yet");
+            return true;
+        }
+        for (String line : entries) {
+            sender.sendMessage(ChatColor.GRAY + line);
+        }
+        return true;
+    }
+}
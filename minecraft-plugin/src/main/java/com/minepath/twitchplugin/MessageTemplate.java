@@ -0,0 +1,227 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// A broadcast message parsed once into literal segments and %placeholder% slots.
+// Color codes are translated at compile time, so values inserted at render time are never
+// re-scanned (a viewer named "&kBob" stays readable).
+public final class MessageTemplate {
+    
+    public static final MessageTemplate EMPTY = new MessageTemplate(new String[0], new Placeholder[0], 0);
+    
+    // One slot per segment: either a literal or a placeholder, never both
+    private final String[] literals;
+    private final Placeholder[] placeholders;
+    private final int literalLength;
+    
+    private MessageTemplate(String[] literals, Placeholder[] placeholders, int literalLength) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.literalLength = literalLength;
+    }
+    
+    public static MessageTemplate compile(String raw) {
+        if (raw == null || raw.isEmpty()) {
+            return EMPTY;
+        }
+        
+        String text = ChatColor.translateAlternateColorCodes('&', raw);
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int literalLength = 0;
+        
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            int end = c == '%' ? text.indexOf('%', i + 1) : -1;
+            Placeholder placeholder = end > i + 1 ? Placeholder.byName(text.substring(i + 1, end)) : null;
+            
+            if (placeholder == null) {
+                // Not a known %name%, so the percent sign is plain text
+                literal.append(c);
+                i++;
+                continue;
+            }
+            
+            if (literal.length() > 0) {
+                literals.add(literal.toString());
+                placeholders.add(null);
+                literalLength += literal.length();
+                literal.setLength(0);
+            }
+            literals.add(null);
+            placeholders.add(placeholder);
+            i = end + 1;
+        }
+        if (literal.length() > 0) {
+            literals.add(literal.toString());
+            placeholders.add(null);
+            literalLength += literal.length();
+        }
+        
+        return new MessageTemplate(literals.toArray(new String[0]), placeholders.toArray(new Placeholder[0]), literalLength);
+    }
+    
+    public boolean isEmpty() {
+        return literals.length == 0;
+    }
+    
+    // Whether %name% appears in the template
+    public boolean uses(String name) {
+        Placeholder placeholder = Placeholder.byName(name);
+        for (Placeholder p : placeholders) {
+            if (p != null && p == placeholder) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Appends the message to out in a single pass; numbers are appended without boxing or formatting
+    public void render(StringBuilder out, TwitchEvent event, String player, int amount) {
+        out.ensureCapacity(out.length() + literalLength + 32);
+        for (int i = 0; i < literals.length; i++) {
+            String literal = literals[i];
+            if (literal != null) {
+                out.append(literal);
+            } else {
+                placeholders[i].append(out, event, player, amount);
+            }
+        }
+    }
+    
+    // For console commands: every inserted value is cut down to letters, digits and _ . : - so a
+    // viewer-supplied name cannot add arguments or another command
+    public void renderCommand(StringBuilder out, TwitchEvent event, String player, int amount) {
+        out.ensureCapacity(out.length() + literalLength + 32);
+        for (int i = 0; i < literals.length; i++) {
+            String literal = literals[i];
+            if (literal != null) {
+                out.append(literal);
+                continue;
+            }
+            int start = out.length();
+            placeholders[i].append(out, event, player, amount);
+            int kept = start;
+            for (int j = start; j < out.length(); j++) {
+                char c = out.charAt(j);
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                        || c == '_' || c == '.' || c == ':' || c == '-') {
+                    out.setCharAt(kept++, c);
+                }
+            }
+            out.setLength(kept);
+        }
+    }
+    
+    // Every event field that may appear in a message. Fields an event does not have render empty.
+    enum Placeholder {
+        PLAYER("player") {
+            void append(StringBuilder out, TwitchEvent event, String player, int amount) {
+                out.append(player);
+            }
+        },
+        USER("user") {
+            void append(StringBuilder out, TwitchEvent event, String player, int amount) {
+                out.append(event.getUserName());
+            }
+        },
+        USER_ID("user_id") {
+            void append(StringBuilder out, TwitchEvent event, String player, int amount) {
+                appendNullable(out, event.getUserId());
+            }
+        },
+        // Mobs spawned or items given by the event
+        AMOUNT("amount") {
+            void append(StringBuilder out, TwitchEvent event, String player, int amount) {
+                out.append(amount);
+            }
+        },
+        TYPE("type") {
+            void append(StringBuilder out, TwitchEvent event, String player, int amount) {
+                out.append(event.getType());
+            }
+        },
+        BITS("bits") {
+            void append(StringBuilder out, TwitchEvent event, String player, int amount) {
+                if (event instanceof CheerEvent) {
+                    out.append(((CheerEvent) event).getBits());
+                }
+            }
+        },
+        VIEWERS("viewers") {
+            void append(StringBuilder out, TwitchEvent event, String player, int amount) {
+                if (event instanceof RaidEvent) {
+                    out.append(((RaidEvent) event).getViewers());
+                }
+            }
+        },
+        TOTAL("total") {
+            void append(StringBuilder out, TwitchEvent event, String player, int amount) {
+                if (event instanceof GiftSubscriptionEvent) {
+                    out.append(((GiftSubscriptionEvent) event).getTotal());
+                }
+            }
+        },
+        // "1000" -> 1 etc., the way Twitch shows tiers
+        TIER("tier") {
+            void append(StringBuilder out, TwitchEvent event, String player, int amount) {
+                String tier = event.getTier();
+                if (tier != null && tier.length() == 4 && tier.endsWith("000")) {
+                    out.append(tier.charAt(0));
+                } else {
+                    appendNullable(out, tier);
+                }
+            }
+        },
+        MESSAGE("message") {
+            void append(StringBuilder out, TwitchEvent event, String player, int amount) {
+                if (event instanceof CheerEvent) {
+                    appendNullable(out, ((CheerEvent) event).getMessage());
+                } else if (event instanceof GenericEvent) {
+                    appendNullable(out, ((GenericEvent) event).getMessage());
+                }
+            }
+        },
+        FOLLOWED_AT("followed_at") {
+            void append(StringBuilder out, TwitchEvent event, String player, int amount) {
+                if (event instanceof FollowEvent) {
+                    appendNullable(out, ((FollowEvent) event).getFollowedAt());
+                }
+            }
+        };
+        
+        private static final Map<String, Placeholder> BY_NAME = new HashMap<>();
+        
+        static {
+            for (Placeholder placeholder : values()) {
+                BY_NAME.put(placeholder.name, placeholder);
+            }
+        }
+        
+        private final String name;
+        
+        Placeholder(String name) {
+            this.name = name;
+        }
+        
+        abstract void append(StringBuilder out, TwitchEvent event, String player, int amount);
+        
+        static Placeholder byName(String name) {
+            return BY_NAME.get(name.toLowerCase(Locale.ROOT));
+        }
+        
+        private static void appendNullable(StringBuilder out, String value) {
+            if (value != null) {
+                out.append(value);
+            }
+        }
+    }
+}
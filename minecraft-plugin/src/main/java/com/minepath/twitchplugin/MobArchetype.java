@@ -0,0 +1,59 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.Location;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Mob;
+import org.bukkit.entity.Player;
+
+// How a Twitch mob of one type is set up, worked out once per config load (spawn.mob.*).
+// Everything is applied in World.spawn's callback, before the entity is added to the world,
+// so clients get the finished mob in its spawn packets instead of a metadata update per change.
+public final class MobArchetype {
+    
+    private final EntityType type;
+    private final Class<? extends LivingEntity> entityClass;
+    // Only Mob subclasses can be given a target
+    private final boolean targets;
+    private final String namePrefix;
+    private final boolean nameVisible;
+    
+    private MobArchetype(EntityType type, Class<? extends LivingEntity> entityClass, String namePrefix, boolean nameVisible) {
+        this.type = type;
+        this.entityClass = entityClass;
+        this.targets = Mob.class.isAssignableFrom(entityClass);
+        this.namePrefix = namePrefix;
+        this.nameVisible = nameVisible;
+    }
+    
+    // null for types that cannot be spawned as a living entity
+    static MobArchetype of(EntityType type, String namePrefix, boolean nameVisible) {
+        Class<?> entityClass = type.getEntityClass();
+        if (!type.isSpawnable() || !type.isAlive() || entityClass == null || !LivingEntity.class.isAssignableFrom(entityClass)) {
+            return null;
+        }
+        return new MobArchetype(type, entityClass.asSubclass(LivingEntity.class), namePrefix, nameVisible);
+    }
+    
+    public EntityType getType() {
+        return type;
+    }
+    
+    // Custom name for the mobs of one viewer's wave
+    public String name(String userName) {
+        return namePrefix + userName;
+    }
+    
+    // Main thread. The callback runs before the entity joins the world, so none of this is sent separately.
+    public LivingEntity spawn(Location location, Player target, String name, TwitchMobTags tags, String eventType, String userName) {
+        return location.getWorld().spawn(location, entityClass, entity -> {
+            entity.setCustomName(name);
+            entity.setCustomNameVisible(nameVisible);
+            if (targets) {
+                ((Mob) entity).setTarget(target);
+            }
+            // Tag so listeners can recognise Twitch mobs without comparing names
+            tags.tag(entity, eventType, userName);
+        });
+    }
+}
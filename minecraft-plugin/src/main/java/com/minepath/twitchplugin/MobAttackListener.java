@@ -2,51 +2,79 @@ package com.minepath.twitchplugin;
 
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
+import org.bukkit.entity.Projectile;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.potion.PotionEffect;
-import org.bukkit.potion.PotionEffectType;
+import org.bukkit.projectiles.ProjectileSource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
 
 public class MobAttackListener implements Listener {
     
     private final TwitchStreamPlugin plugin;
+    // Player -> time the fatigue was last applied (main thread only)
+    private final Map<UUID, Long> lastFatigue = new HashMap<>();
     
     public MobAttackListener(TwitchStreamPlugin plugin) {
         this.plugin = plugin;
     }
     
-    @EventHandler
+    // Runs for every entity hit on the server, so bail out as early and cheaply as possible.
+    // MONITOR with ignoreCancelled: we only react to damage that actually happened.
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onEntityDamageByEntity(EntityDamageByEntityEvent event) {
         // Check if the victim is a player
-        if (!(event.getEntity() instanceof Player)) {
+        if (event.getEntity().getType() != EntityType.PLAYER) {
             return;
         }
         
-        Player player = (Player) event.getEntity();
+        // Arrows and other projectiles count for whoever shot them
         Entity damager = event.getDamager();
+        if (damager instanceof Projectile) {
+            ProjectileSource shooter = ((Projectile) damager).getShooter();
+            if (!(shooter instanceof Entity)) {
+                return;
+            }
+            damager = (Entity) shooter;
+        }
+        
+        // Check if the damager is a Twitch mob (tagged at spawn)
+        String mobName = plugin.getMobTags().getUser(damager);
+        if (mobName == null) {
+            return;
+        }
+        
+        Player player = (Player) event.getEntity();
+        PluginSettings settings = plugin.getSettings();
+        
+        // Don't re-apply the effect on every hit of a swarm
+        long now = System.currentTimeMillis();
+        Long last = lastFatigue.get(player.getUniqueId());
+        if (last != null && now - last < settings.getFatigueCooldownMillis()) {
+            return;
+        }
+        lastFatigue.put(player.getUniqueId(), now);
         
-        // Check if the damager is a Twitch mob (has a custom name with red color)
-        if (damager.getCustomName() != null && damager.getCustomName().startsWith(ChatColor.RED.toString())) {
-            // Apply Mining Fatigue effect (slowdown mining speed)
-            int duration = plugin.getConfig().getInt("effects.mining_fatigue.duration", 200); // 10 seconds (200 ticks)
-            int amplifier = plugin.getConfig().getInt("effects.mining_fatigue.amplifier", 1); // Level 2
-            
-            PotionEffect miningFatigue = new PotionEffect(
-                PotionEffectType.SLOW_DIGGING,
-                duration,
-                amplifier,
-                false,
-                true,
-                true
-            );
-            
-            player.addPotionEffect(miningFatigue);
-            
-            String mobName = ChatColor.stripColor(damager.getCustomName());
-            plugin.getLogger().info("Twitch mob (" + mobName + ") hit " + player.getName() + " - Applied Mining Fatigue " + (amplifier + 1));
-            player.sendMessage(ChatColor.DARK_RED + "⛏ Mining speed reduced by " + mobName + "!");
+        // Apply Mining Fatigue effect (slowdown mining speed), prebuilt from the config snapshot
+        PotionEffect miningFatigue = settings.getMiningFatigue();
+        player.addPotionEffect(miningFatigue);
+        
+        if (settings.isDebug()) {
+            plugin.getEventLog().debug("effect", "Twitch mob (" + mobName + ") hit " + player.getName() + " - Applied Mining Fatigue " + (miningFatigue.getAmplifier() + 1));
         }
+        player.sendMessage(ChatColor.DARK_RED + "⛏ Mining speed reduced by " + mobName + "!");
+    }
+    
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        lastFatigue.remove(event.getPlayer().getUniqueId());
     }
 }
@@ -0,0 +1,326 @@
+package com.minepath.twitchplugin;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+// Counters, latency histograms and gauges for /metrics and /twitchstats. Updates are lock-free
+// (LongAdder and LatencyHistogram) and safe from any thread; no Bukkit types are used. The default
+// tenant records into this instance, every other tenant into its own child, exported with a
+// tenant label.
+public class PluginMetrics {
+    
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    
+    // null for the plugin-wide instance
+    private final String tenant;
+    private final Map<String, PluginMetrics> tenants = new ConcurrentHashMap<>();
+    private final Map<String, TypeMetrics> byType = new ConcurrentHashMap<>();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder mobsSpawned = new LongAdder();
+    private final LongAdder mobsCapped = new LongAdder();
+    private final LongAdder mobsFailed = new LongAdder();
+    private final LatencyHistogram spawnTick = new LatencyHistogram();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+    
+    public PluginMetrics() {
+        this(null);
+    }
+    
+    private PluginMetrics(String tenant) {
+        this.tenant = tenant;
+    }
+    
+    public PluginMetrics forTenant(String id) {
+        return tenants.computeIfAbsent(id, PluginMetrics::new);
+    }
+    
+    // When a tenant is removed from the config
+    public void removeTenant(String id) {
+        tenants.remove(id);
+    }
+    
+    // Sorted by tenant ID
+    public List<PluginMetrics> getTenants() {
+        return new ArrayList<>(new TreeMap<>(tenants).values());
+    }
+    
+    // null for the plugin-wide instance
+    public String getTenant() {
+        return tenant;
+    }
+    
+    public TypeMetrics type(String type) {
+        TypeMetrics metrics = byType.get(type);
+        return metrics != null ? metrics : byType.computeIfAbsent(type, TypeMetrics::new);
+    }
+    
+    // Requests that could not be decoded into an event
+    public void invalid() {
+        invalid.increment();
+    }
+    
+    public void spawnTick(long nanos) {
+        spawnTick.record(nanos);
+    }
+    
+    public void mobSpawned() {
+        mobsSpawned.increment();
+    }
+    
+    public void mobCapped() {
+        mobsCapped.increment();
+    }
+    
+    public void mobFailed() {
+        mobsFailed.increment();
+    }
+    
+    public long getInvalid() {
+        return invalid.sum();
+    }
+    
+    public long getMobsSpawned() {
+        return mobsSpawned.sum();
+    }
+    
+    public long getMobsCapped() {
+        return mobsCapped.sum();
+    }
+    
+    public LatencyHistogram getSpawnTick() {
+        return spawnTick;
+    }
+    
+    // Sorted by type name
+    public List<TypeMetrics> getTypes() {
+        return new ArrayList<>(new TreeMap<>(byType).values());
+    }
+    
+    // Sampled on every scrape; suppliers may read main-thread state without locking
+    public void addGauge(String name, String help, DoubleSupplier value) {
+        gauges.add(new Gauge(name, help, value));
+    }
+    
+    public List<Gauge> getGauges() {
+        return gauges;
+    }
+    
+    // Prometheus text exposition format 0.0.4. Each metric is written once, with a sample per
+    // tenant and type.
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        List<PluginMetrics> scopes = new ArrayList<>();
+        scopes.add(this);
+        scopes.addAll(getTenants());
+        
+        counter(out, scopes, "twitch_events_received_total", "Events accepted by the HTTP endpoints", t -> t.received);
+        counter(out, scopes, "twitch_events_rejected_total", "Events refused because the ingest queue was full", t -> t.rejected);
+        counter(out, scopes, "twitch_events_coalesced_total", "Events merged into an earlier event from the same user",
+                t -> t.coalesced);
+        counter(out, scopes, "twitch_events_duplicate_total", "Redelivered events acknowledged without running them",
+                t -> t.duplicates);
+        counter(out, scopes, "twitch_events_rate_limited_total", "Events refused by the per-viewer or per-type rate limit",
+                t -> t.rateLimited);
+        counter(out, scopes, "twitch_events_executed_total", "Events run on the main thread", t -> t.executed);
+        header(out, "twitch_events_invalid_total", "counter", "Requests or batch items that were not a valid event");
+        sample(out, "twitch_events_invalid_total", null, null, null, invalid.sum());
+        
+        header(out, "twitch_event_latency_seconds", "summary", "Time from HTTP receive to main-thread execution");
+        for (PluginMetrics scope : scopes) {
+            for (TypeMetrics t : scope.getTypes()) {
+                summary(out, "twitch_event_latency_seconds", scope.tenant, t.type, t.latency.snapshot());
+            }
+        }
+        header(out, "twitch_spawn_tick_seconds", "summary", "Main-thread time spent spawning mobs per tick");
+        for (PluginMetrics scope : scopes) {
+            summary(out, "twitch_spawn_tick_seconds", scope.tenant, null, scope.spawnTick.snapshot());
+        }
+        
+        header(out, "twitch_mobs_spawned_total", "counter", "Twitch mobs spawned");
+        for (PluginMetrics scope : scopes) {
+            sample(out, "twitch_mobs_spawned_total", scope.tenant, null, null, scope.mobsSpawned.sum());
+        }
+        header(out, "twitch_mobs_capped_total", "counter", "Spawns skipped by the live mob caps");
+        for (PluginMetrics scope : scopes) {
+            sample(out, "twitch_mobs_capped_total", scope.tenant, null, null, scope.mobsCapped.sum());
+        }
+        header(out, "twitch_mobs_failed_total", "counter", "Spawns that failed");
+        for (PluginMetrics scope : scopes) {
+            sample(out, "twitch_mobs_failed_total", scope.tenant, null, null, scope.mobsFailed.sum());
+        }
+        
+        // Tenants register the same gauge names; group them under one header
+        Map<String, List<Gauge>> gaugesByName = new LinkedHashMap<>();
+        Map<Gauge, String> gaugeTenants = new IdentityHashMap<>();
+        for (PluginMetrics scope : scopes) {
+            for (Gauge gauge : scope.gauges) {
+                gaugesByName.computeIfAbsent(gauge.name, name -> new ArrayList<>()).add(gauge);
+                gaugeTenants.put(gauge, scope.tenant);
+            }
+        }
+        for (List<Gauge> named : gaugesByName.values()) {
+            header(out, named.get(0).name, "gauge", named.get(0).help);
+            for (Gauge gauge : named) {
+                sample(out, gauge.name, gaugeTenants.get(gauge), null, null, gauge.value.getAsDouble());
+            }
+        }
+        return out.toString();
+    }
+    
+    private static void counter(StringBuilder out, List<PluginMetrics> scopes, String name, String help,
+            Function<TypeMetrics, LongAdder> counter) {
+        header(out, name, "counter", help);
+        for (PluginMetrics scope : scopes) {
+            for (TypeMetrics t : scope.getTypes()) {
+                sample(out, name, scope.tenant, t.type, null, counter.apply(t).sum());
+            }
+        }
+    }
+    
+    private static void header(StringBuilder out, String name, String kind, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(kind).append('\n');
+    }
+    
+    private static void summary(StringBuilder out, String name, String tenant, String type, LatencyHistogram.Snapshot snapshot) {
+        for (double q : QUANTILES) {
+            sample(out, name, tenant, type, String.valueOf(q), snapshot.percentileNanos(q) / 1e9);
+        }
+        sample(out, name + "_sum", tenant, type, null, snapshot.getSumNanos() / 1e9);
+        sample(out, name + "_count", tenant, type, null, snapshot.getCount());
+    }
+    
+    private static void sample(StringBuilder out, String name, String tenant, String type, String quantile, double value) {
+        out.append(name);
+        if (tenant != null || type != null || quantile != null) {
+            char sep = '{';
+            if (tenant != null) {
+                out.append(sep).append("tenant=\"").append(escape(tenant)).append('"');
+                sep = ',';
+            }
+            if (type != null) {
+                out.append(sep).append("type=\"").append(escape(type)).append('"');
+                sep = ',';
+            }
+            if (quantile != null) {
+                out.append(sep).append("quantile=\"").append(quantile).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.9g", value));
+        }
+        out.append('\n');
+    }
+    
+    // Label values in the exposition format escape backslash, double quote and line feed
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+    
+    public static final class TypeMetrics {
+        private final String type;
+        private final LongAdder received = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+        private final LongAdder duplicates = new LongAdder();
+        private final LongAdder rateLimited = new LongAdder();
+        private final LongAdder executed = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        
+        TypeMetrics(String type) {
+            this.type = type;
+        }
+        
+        public void received() {
+            received.increment();
+        }
+        
+        public void rejected() {
+            rejected.increment();
+        }
+        
+        public void coalesced() {
+            coalesced.increment();
+        }
+        
+        public void duplicate() {
+            duplicates.increment();
+        }
+        
+        public void rateLimited() {
+            rateLimited.increment();
+        }
+        
+        // receivedAt is the event's System.nanoTime() at decode
+        public void executed(long receivedAt) {
+            executed.increment();
+            latency.record(System.nanoTime() - receivedAt);
+        }
+        
+        public String getType() {
+            return type;
+        }
+        
+        public long getReceived() {
+            return received.sum();
+        }
+        
+        public long getRejected() {
+            return rejected.sum();
+        }
+        
+        public long getCoalesced() {
+            return coalesced.sum();
+        }
+        
+        public long getDuplicates() {
+            return duplicates.sum();
+        }
+        
+        public long getRateLimited() {
+            return rateLimited.sum();
+        }
+        
+        public long getExecuted() {
+            return executed.sum();
+        }
+        
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+    
+    public static final class Gauge {
+        private final String name;
+        private final String help;
+        private final DoubleSupplier value;
+        
+        Gauge(String name, String help, DoubleSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.value = value;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public double getValue() {
+            return value.getAsDouble();
+        }
+    }
+}
@@ -0,0 +1,597 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.bukkit.entity.EntityType;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// Immutable, typed view of config.yml. Compiled once at load and on /twitchreload, then swapped
+// in as a whole, so event handling never does path lookups or enum parsing.
+public final class PluginSettings {
+    
+    public enum TargetMode {
+        STREAMER, RANDOM, MOST_KILLS, LEAST_HEALTH
+    }
+    
+    // Tenant IDs appear in URLs and metric labels
+    private static final Pattern TENANT_ID = Pattern.compile("[a-z0-9_-]{1,32}");
+    // Keys of a tenants.<id> section that route requests rather than override settings
+    private static final Set<String> ROUTING_KEYS = Set.of("accounts", "user_ids");
+    // Sections read once for the whole server (mob caps and the hit effect apply to every Twitch mob
+    // whichever tenant spawned it); a tenant overriding them is a config error, not silently ignored
+    private static final List<String> SERVER_KEYS = List.of("server", "stream", "ingest.journal", "history", "mobs",
+            "effects", "debug");
+    
+    private final Map<String, EventSettings> events;
+    private final TargetMode targetMode;
+    private final String streamerUsername;
+    private final String streamerKey;
+    private final int maxMobsPerEvent;
+    private final int spawnRadius;
+    private final int spawnHeightOffset;
+    private final int spawnVerticalRange;
+    private final long spawnCacheMillis;
+    private final int maxSpawnsPerTick;
+    private final long maxSpawnNanosPerTick;
+    private final int ingestCapacity;
+    private final int retryAfterSeconds;
+    private final long coalesceWindowNanos;
+    private final int maxEventsPerTick;
+    private final long dedupTtlNanos;
+    private final int dedupMaxEntries;
+    private final double userRate;
+    private final int userBurst;
+    private final double typeRate;
+    private final int typeBurst;
+    // Event types the ingest rate limits apply to
+    private final Set<String> rateLimitedTypes;
+    private final double targetSpawnRate;
+    private final int targetSpawnBurst;
+    private final int maxQueuedSpawns;
+    private final Map<EntityType, MobArchetype> archetypes;
+    private final boolean waveLightning;
+    private final boolean journalEnabled;
+    private final int journalSegmentBytes;
+    private final long journalFlushNanos;
+    private final boolean journalSyncAck;
+    private final boolean historyEnabled;
+    private final int historyWindowHours;
+    private final int historyRetentionDays;
+    private final long historyFlushMillis;
+    private final int historyMaxPending;
+    private final int maxAliveMobs;
+    private final int maxMobsPerPlayer;
+    private final int maxMobsPerChunk;
+    private final long mobTtlMillis;
+    private final long mobSweepIntervalMillis;
+    private final PotionEffect miningFatigue;
+    private final long fatigueCooldownMillis;
+    private final boolean debug;
+    private final boolean logEvents;
+    private final double debugSampleRate;
+    private final int maxInfoLogsPerSecond;
+    private final int logRingSize;
+    private final Map<String, PluginSettings> tenants;
+    // "account:<backend username>" and "user:<backend user id>" to tenant ID
+    private final Map<String, String> tenantRoutes;
+    
+    private PluginSettings(ConfigurationSection config, List<String> errors) {
+        // Dispatch table: one lookup per event. The built-in types are always present; any other
+        // key under events: adds a type that arrives as a GenericEvent.
+        Set<String> types = new LinkedHashSet<>(Arrays.asList(TwitchEvent.SUBSCRIBE, TwitchEvent.GIFT_SUBSCRIPTION,
+                TwitchEvent.CHEER, TwitchEvent.RAID, TwitchEvent.FOLLOW));
+        ConfigurationSection eventsSection = config.getConfigurationSection("events");
+        if (eventsSection != null) {
+            types.addAll(eventsSection.getKeys(false));
+        }
+        Map<String, EventSettings> compiled = new HashMap<>();
+        for (String type : types) {
+            compiled.put(type, new EventSettings(config, type, errors));
+        }
+        events = Collections.unmodifiableMap(compiled);
+        
+        String mode = config.getString("target.mode", "streamer");
+        TargetMode parsedMode = TargetMode.STREAMER;
+        try {
+            parsedMode = TargetMode.valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            errors.add("target.mode: unknown mode '" + mode + "'");
+        }
+        targetMode = parsedMode;
+        streamerUsername = config.getString("target.streamer_username", "");
+        streamerKey = streamerUsername.toLowerCase(Locale.ROOT);
+        if (targetMode == TargetMode.STREAMER && streamerUsername.isEmpty()) {
+            errors.add("target.streamer_username: required when target.mode is streamer");
+        }
+        
+        maxMobsPerEvent = positive(config, "spawn.max_mobs_per_event", 50, errors);
+        spawnRadius = Math.max(0, Math.min(64, config.getInt("spawn.radius", 10)));
+        spawnHeightOffset = config.getInt("spawn.height_offset", 0);
+        spawnVerticalRange = Math.max(0, Math.min(32, config.getInt("spawn.planner.vertical_range", 4)));
+        spawnCacheMillis = Math.max(0, config.getLong("spawn.planner.cache_seconds", 30)) * 1000L;
+        maxSpawnsPerTick = positive(config, "spawn.scheduler.max_spawns_per_tick", 5, errors);
+        double maxMillis = config.getDouble("spawn.scheduler.max_millis_per_tick", 2.0);
+        if (maxMillis <= 0) {
+            errors.add("spawn.scheduler.max_millis_per_tick: must be greater than 0");
+        }
+        maxSpawnNanosPerTick = (long) (maxMillis * 1_000_000L);
+        maxQueuedSpawns = positive(config, "spawn.scheduler.max_queued", 500, errors);
+        targetSpawnRate = Math.max(0, config.getDouble("spawn.rate_limit.per_target.rate", 10));
+        targetSpawnBurst = burst(config, "spawn.rate_limit.per_target.burst", 40, errors);
+        String nameColor = config.getString("spawn.mob.name_color", "red");
+        ChatColor color = ChatColor.RED;
+        try {
+            color = ChatColor.valueOf(nameColor.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            errors.add("spawn.mob.name_color: unknown color '" + nameColor + "'");
+        }
+        boolean nameVisible = config.getBoolean("spawn.mob.name_visible", true);
+        Map<EntityType, MobArchetype> compiledArchetypes = new EnumMap<>(EntityType.class);
+        for (EntityType type : EntityType.values()) {
+            MobArchetype archetype = MobArchetype.of(type, color.toString(), nameVisible);
+            if (archetype != null) {
+                compiledArchetypes.put(type, archetype);
+            }
+        }
+        archetypes = compiledArchetypes;
+        waveLightning = config.getBoolean("spawn.effects.lightning", true);
+        
+        ingestCapacity = positive(config, "ingest.queue_capacity", 1024, errors);
+        retryAfterSeconds = positive(config, "ingest.retry_after_seconds", 1, errors);
+        coalesceWindowNanos = Math.max(0, config.getLong("ingest.coalesce_window_ms", 250)) * 1_000_000L;
+        maxEventsPerTick = positive(config, "ingest.max_events_per_tick", 20, errors);
+        dedupTtlNanos = Math.max(0, config.getLong("ingest.dedup.ttl_seconds", 600)) * 1_000_000_000L;
+        dedupMaxEntries = positive(config, "ingest.dedup.max_entries", 100000, errors);
+        userRate = Math.max(0, config.getDouble("ingest.rate_limit.per_user.rate", 1));
+        userBurst = burst(config, "ingest.rate_limit.per_user.burst", 10, errors);
+        typeRate = Math.max(0, config.getDouble("ingest.rate_limit.per_type.rate", 20));
+        typeBurst = burst(config, "ingest.rate_limit.per_type.burst", 100, errors);
+        Set<String> limited = new HashSet<>();
+        List<String> limitedList = config.isSet("ingest.rate_limit.types")
+                ? config.getStringList("ingest.rate_limit.types") : Collections.singletonList(TwitchEvent.FOLLOW);
+        for (String type : limitedList) {
+            limited.add(type.toLowerCase(Locale.ROOT));
+        }
+        rateLimitedTypes = Collections.unmodifiableSet(limited);
+        journalEnabled = config.getBoolean("ingest.journal.enabled", true);
+        journalSegmentBytes = positive(config, "ingest.journal.segment_kb", 4096, errors) * 1024;
+        journalFlushNanos = positive(config, "ingest.journal.flush_interval_ms", 10, errors) * 1_000_000L;
+        journalSyncAck = config.getBoolean("ingest.journal.sync_ack", false);
+        historyEnabled = config.getBoolean("history.enabled", true);
+        historyWindowHours = positive(config, "history.window_hours", 24, errors);
+        historyRetentionDays = Math.max(0, config.getInt("history.retention_days", 30));
+        historyFlushMillis = positive(config, "history.flush_interval_ms", 1000, errors);
+        historyMaxPending = positive(config, "history.max_pending", 10000, errors);
+        
+        maxAliveMobs = Math.max(0, config.getInt("mobs.max_alive", 150));
+        maxMobsPerPlayer = Math.max(0, config.getInt("mobs.max_per_player", 60));
+        maxMobsPerChunk = Math.max(0, config.getInt("mobs.max_per_chunk", 20));
+        mobTtlMillis = Math.max(0, config.getLong("mobs.ttl_seconds", 300)) * 1000L;
+        mobSweepIntervalMillis = positive(config, "mobs.sweep_interval_seconds", 5, errors) * 1000L;
+        
+        int fatigueDuration = positive(config, "effects.mining_fatigue.duration", 200, errors);
+        int fatigueAmplifier = Math.max(0, config.getInt("effects.mining_fatigue.amplifier", 1));
+        miningFatigue = new PotionEffect(PotionEffectType.SLOW_DIGGING, fatigueDuration, fatigueAmplifier, false, true, true);
+        fatigueCooldownMillis = Math.max(0, config.getInt("effects.mining_fatigue.cooldown_ticks", 40)) * 50L;
+        
+        debug = config.getBoolean("debug.enabled", true);
+        logEvents = config.getBoolean("debug.log_events", true);
+        debugSampleRate = Math.max(0.0, Math.min(1.0, config.getDouble("debug.sample_rate", 1.0)));
+        maxInfoLogsPerSecond = positive(config, "debug.max_lines_per_second", 20, errors);
+        logRingSize = positive(config, "debug.ring_size", 2048, errors);
+        
+        // Each tenant is compiled from the root config with its own keys laid over it
+        Map<String, PluginSettings> compiledTenants = new LinkedHashMap<>();
+        Map<String, String> routes = new HashMap<>();
+        ConfigurationSection tenantsSection = config.getConfigurationSection("tenants");
+        if (tenantsSection != null) {
+            for (String id : tenantsSection.getKeys(false)) {
+                String path = "tenants." + id;
+                ConfigurationSection spec = tenantsSection.getConfigurationSection(id);
+                if (spec == null) {
+                    errors.add(path + ": expected a section");
+                    continue;
+                }
+                if (!TENANT_ID.matcher(id).matches() || id.equals(Tenant.DEFAULT)) {
+                    errors.add(path + ": tenant IDs are lowercase letters, digits, - and _ (and not 'default')");
+                    continue;
+                }
+                List<String> tenantErrors = new ArrayList<>();
+                for (String key : SERVER_KEYS) {
+                    if (spec.contains(key)) {
+                        tenantErrors.add(key + ": server-wide, set it at the root instead");
+                    }
+                }
+                compiledTenants.put(id, new PluginSettings(overlay(config, spec), tenantErrors));
+                for (String error : tenantErrors) {
+                    errors.add(path + "." + error);
+                }
+                addRoutes(routes, "account:", spec.getStringList("accounts"), id, path + ".accounts", errors);
+                addRoutes(routes, "user:", spec.getStringList("user_ids"), id, path + ".user_ids", errors);
+            }
+        }
+        tenants = Collections.unmodifiableMap(compiledTenants);
+        tenantRoutes = Collections.unmodifiableMap(routes);
+    }
+    
+    // The root config with a tenant's keys laid over it, leaf by leaf, so a tenant only lists what it
+    // changes. The tenants section itself and the routing keys are not copied.
+    private static ConfigurationSection overlay(ConfigurationSection root, ConfigurationSection spec) {
+        MemoryConfiguration merged = new MemoryConfiguration();
+        for (Map.Entry<String, Object> entry : root.getValues(true).entrySet()) {
+            if (!(entry.getValue() instanceof ConfigurationSection) && !entry.getKey().startsWith("tenants.")) {
+                merged.set(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Object> entry : spec.getValues(true).entrySet()) {
+            String key = entry.getKey();
+            int dot = key.indexOf('.');
+            if (!(entry.getValue() instanceof ConfigurationSection)
+                    && !ROUTING_KEYS.contains(dot < 0 ? key : key.substring(0, dot))) {
+                merged.set(key, entry.getValue());
+            }
+        }
+        return merged;
+    }
+    
+    private static void addRoutes(Map<String, String> routes, String prefix, List<String> keys, String id, String path,
+            List<String> errors) {
+        for (String key : keys) {
+            String previous = routes.put(prefix + key.trim().toLowerCase(Locale.ROOT), id);
+            if (previous != null && !previous.equals(id)) {
+                errors.add(path + ": '" + key + "' already routes to tenant " + previous);
+            }
+        }
+    }
+    
+    // Compiles a snapshot, or throws listing every invalid value so the previous one stays active
+    public static PluginSettings compile(ConfigurationSection config) {
+        List<String> errors = new ArrayList<>();
+        PluginSettings settings = new PluginSettings(config, errors);
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException(String.join("; ", errors));
+        }
+        return settings;
+    }
+    
+    private static int burst(ConfigurationSection config, String path, int def, List<String> errors) {
+        int value = positive(config, path, def, errors);
+        if (value > RateLimiter.MAX_BURST) {
+            errors.add(path + ": must be at most " + RateLimiter.MAX_BURST);
+            return def;
+        }
+        return value;
+    }
+    
+    private static int positive(ConfigurationSection config, String path, int def, List<String> errors) {
+        int value = config.getInt(path, def);
+        if (value <= 0) {
+            errors.add(path + ": must be greater than 0");
+            return def;
+        }
+        return value;
+    }
+    
+    // Settings for an event type, or null if the type is not configured
+    public EventSettings getEvent(String type) {
+        return events.get(type);
+    }
+    
+    public TargetMode getTargetMode() {
+        return targetMode;
+    }
+    
+    public String getStreamerUsername() {
+        return streamerUsername;
+    }
+    
+    // Lowercased, for the resolver's name index
+    public String getStreamerKey() {
+        return streamerKey;
+    }
+    
+    public int getMaxMobsPerEvent() {
+        return maxMobsPerEvent;
+    }
+    
+    public int getSpawnRadius() {
+        return spawnRadius;
+    }
+    
+    public int getSpawnHeightOffset() {
+        return spawnHeightOffset;
+    }
+    
+    public int getSpawnVerticalRange() {
+        return spawnVerticalRange;
+    }
+    
+    public long getSpawnCacheMillis() {
+        return spawnCacheMillis;
+    }
+    
+    public int getMaxSpawnsPerTick() {
+        return maxSpawnsPerTick;
+    }
+    
+    public long getMaxSpawnNanosPerTick() {
+        return maxSpawnNanosPerTick;
+    }
+    
+    public int getIngestCapacity() {
+        return ingestCapacity;
+    }
+    
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+    
+    public long getCoalesceWindowNanos() {
+        return coalesceWindowNanos;
+    }
+    
+    public int getMaxEventsPerTick() {
+        return maxEventsPerTick;
+    }
+    
+    // 0 disables de-duplication
+    public long getDedupTtlNanos() {
+        return dedupTtlNanos;
+    }
+    
+    // Read once at startup
+    public int getDedupMaxEntries() {
+        return dedupMaxEntries;
+    }
+    
+    // Token bucket per viewer at ingest: events per second and burst size (rate 0 = no limit)
+    public double getUserRate() {
+        return userRate;
+    }
+    
+    public int getUserBurst() {
+        return userBurst;
+    }
+    
+    // Only these types are refused when over a limit; paid events are left out by default so a
+    // viewer's cheers and gifts are never dropped, SpawnScheduler spreads their mobs instead
+    public boolean isRateLimited(String eventType) {
+        return rateLimitedTypes.contains(eventType);
+    }
+    
+    // Token bucket per event type at ingest
+    public double getTypeRate() {
+        return typeRate;
+    }
+    
+    public int getTypeBurst() {
+        return typeBurst;
+    }
+    
+    // Token bucket per target player: mobs spawned per second and burst size (rate 0 = no limit)
+    public double getTargetSpawnRate() {
+        return targetSpawnRate;
+    }
+    
+    public int getTargetSpawnBurst() {
+        return targetSpawnBurst;
+    }
+    
+    // Mobs waiting in the spawn scheduler; larger waves are cut short
+    public int getMaxQueuedSpawns() {
+        return maxQueuedSpawns;
+    }
+    
+    // null for types that are not living entities; rules only accept living mob types
+    public MobArchetype getArchetype(EntityType type) {
+        return archetypes.get(type);
+    }
+    
+    // One lightning effect where a wave starts
+    public boolean isWaveLightning() {
+        return waveLightning;
+    }
+    
+    // The journal settings are read once at startup, except sync_ack
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+    
+    public int getJournalSegmentBytes() {
+        return journalSegmentBytes;
+    }
+    
+    public long getJournalFlushNanos() {
+        return journalFlushNanos;
+    }
+    
+    // Hold the HTTP response until the event's journal record has been forced to disk
+    public boolean isJournalSyncAck() {
+        return journalSyncAck;
+    }
+    
+    // The history settings are read once at startup
+    public boolean isHistoryEnabled() {
+        return historyEnabled;
+    }
+    
+    // Hours summed in memory for /twitchtop and /stats
+    public int getHistoryWindowHours() {
+        return historyWindowHours;
+    }
+    
+    // 0 keeps history files forever
+    public int getHistoryRetentionDays() {
+        return historyRetentionDays;
+    }
+    
+    public long getHistoryFlushMillis() {
+        return historyFlushMillis;
+    }
+    
+    public int getHistoryMaxPending() {
+        return historyMaxPending;
+    }
+    
+    // 0 means no limit for the three caps below
+    public int getMaxAliveMobs() {
+        return maxAliveMobs;
+    }
+    
+    public int getMaxMobsPerPlayer() {
+        return maxMobsPerPlayer;
+    }
+    
+    public int getMaxMobsPerChunk() {
+        return maxMobsPerChunk;
+    }
+    
+    // 0 means Twitch mobs are never despawned by age
+    public long getMobTtlMillis() {
+        return mobTtlMillis;
+    }
+    
+    public long getMobSweepIntervalMillis() {
+        return mobSweepIntervalMillis;
+    }
+    
+    public PotionEffect getMiningFatigue() {
+        return miningFatigue;
+    }
+    
+    public long getFatigueCooldownMillis() {
+        return fatigueCooldownMillis;
+    }
+    
+    public boolean isDebug() {
+        return debug;
+    }
+    
+    public boolean isLogEvents() {
+        return logEvents;
+    }
+    
+    // Fraction of debug entries printed when debug.enabled is on
+    public double getDebugSampleRate() {
+        return debugSampleRate;
+    }
+    
+    // Console budget for everything below WARN
+    public int getMaxInfoLogsPerSecond() {
+        return maxInfoLogsPerSecond;
+    }
+    
+    // Read once at startup
+    public int getLogRingSize() {
+        return logRingSize;
+    }
+    
+    // Compiled settings of every tenants.<id> section, in config order
+    public Map<String, PluginSettings> getTenants() {
+        return tenants;
+    }
+    
+    // Tenant listing this backend account name or user ID (either may be null), or null
+    public String routeTenant(String account, String userId) {
+        String id = account != null ? tenantRoutes.get("account:" + account.toLowerCase(Locale.ROOT)) : null;
+        if (id == null && userId != null) {
+            id = tenantRoutes.get("user:" + userId.toLowerCase(Locale.ROOT));
+        }
+        return id;
+    }
+    
+    // events.<type>: enabled flag, default message and the rules tried in order, first match wins.
+    // Without a rules list the built-in types get one rule built from the older flat keys
+    // (amount, mob_type, bits_per_mob, ...).
+    public static final class EventSettings {
+        private final boolean enabled;
+        private final EventRule[] rules;
+        private final MessageTemplate message;
+        
+        EventSettings(ConfigurationSection config, String type, List<String> errors) {
+            String path = "events." + type + ".";
+            enabled = config.getBoolean(path + "enabled", false);
+            message = MessageTemplate.compile(config.getString(path + "message", ""));
+            
+            if (config.isList(path + "rules")) {
+                List<Map<?, ?>> raw = config.getMapList(path + "rules");
+                List<EventRule> compiled = new ArrayList<>(raw.size());
+                for (int i = 0; i < raw.size(); i++) {
+                    compiled.add(EventRule.compile(raw.get(i), path + "rules[" + i + "]", errors));
+                }
+                rules = compiled.toArray(new EventRule[0]);
+            } else {
+                EventRule legacy = legacyRule(config, type, path, errors);
+                rules = legacy != null ? new EventRule[] {legacy} : new EventRule[0];
+            }
+        }
+        
+        private static EventRule legacyRule(ConfigurationSection config, String type, String path, List<String> errors) {
+            switch (type) {
+                case TwitchEvent.SUBSCRIBE:
+                    // Gifted subs are covered by the gifter's gift_subscription event
+                    return EventRule.always(legacySpawn(config, path, "zombie",
+                            new RuleCount(positive(config, path + "amount", 1, errors), 0, 0), errors), false);
+                case TwitchEvent.GIFT_SUBSCRIPTION:
+                    // amount mobs per gifted sub
+                    return EventRule.always(legacySpawn(config, path, "zombie",
+                            RuleCount.scaled(positive(config, path + "amount", 5, errors), 1, 0), errors), null);
+                case TwitchEvent.CHEER:
+                    return EventRule.always(legacySpawn(config, path, "skeleton",
+                            new RuleCount(1, positive(config, path + "bits_per_mob", 100, errors), 0), errors), null);
+                case TwitchEvent.RAID:
+                    return EventRule.always(legacySpawn(config, path, "creeper",
+                            RuleCount.scaled(1, positive(config, path + "viewers_per_mob", 10, errors),
+                                    positive(config, path + "max_mobs", 20, errors)), errors), null);
+                case TwitchEvent.FOLLOW:
+                    Material item = RuleActions.parseItem(config.getString(path + "item", "GOLDEN_APPLE"), path + "item", errors);
+                    return EventRule.always(RuleActions.give(item,
+                            new RuleCount(positive(config, path + "amount", 1, errors), 0, 0)), null);
+                default:
+                    errors.add(path + "rules: required for event types without built-in handling");
+                    return null;
+            }
+        }
+        
+        private static RuleAction legacySpawn(ConfigurationSection config, String path, String defaultMob,
+                RuleCount count, List<String> errors) {
+            EntityType mob = RuleActions.parseMob(config.getString(path + "mob_type", defaultMob), path + "mob_type", errors);
+            return RuleActions.spawn(mob, count);
+        }
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        // First rule whose conditions hold and whose cooldowns have run out, or null
+        public EventRule match(TwitchEvent event, long now, RuleCooldowns cooldowns) {
+            for (EventRule rule : rules) {
+                if (rule.matches(event, now, cooldowns)) {
+                    return rule;
+                }
+            }
+            return null;
+        }
+        
+        public MessageTemplate getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.minepath.twitchplugin;
+
+// The user of a raid is the raiding broadcaster
+public final class RaidEvent extends TwitchEvent implements Coalescible {
+    
+    private final int viewers;
+    
+    public RaidEvent(String fromBroadcasterName, String fromBroadcasterId, int viewers, long receivedAt) {
+        this(fromBroadcasterName, fromBroadcasterId, null, viewers, receivedAt);
+    }
+    
+    public RaidEvent(String fromBroadcasterName, String fromBroadcasterId, String messageId, int viewers, long receivedAt) {
+        super(fromBroadcasterName, fromBroadcasterId, messageId, receivedAt);
+        this.viewers = viewers;
+    }
+    
+    @Override
+    public String getType() {
+        return RAID;
+    }
+    
+    public int getViewers() {
+        return viewers;
+    }
+    
+    @Override
+    public int getAmount() {
+        return viewers;
+    }
+    
+    @Override
+    public TwitchEvent mergeWith(TwitchEvent other) {
+        RaidEvent raid = (RaidEvent) other;
+        return new RaidEvent(getUserName(), getUserId(), getMessageId(), viewers + raid.viewers, getReceivedAt());
+    }
+}
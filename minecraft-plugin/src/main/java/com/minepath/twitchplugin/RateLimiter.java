@@ -0,0 +1,108 @@
+package com.minepath.twitchplugin;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token buckets by key (a viewer, an event type, a player). Each bucket is a single AtomicLong
+// packing the last refill time (ms, upper 40 bits) and the tokens left (thousandths, lower 24
+// bits), updated with compare-and-set, so callers on any thread never block each other. Rate and
+// burst are passed on every call so a config reload applies at once; full buckets are dropped by
+// evictIdle() since a new bucket starts full anyway.
+public final class RateLimiter {
+    
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long ONE = 1000;
+    // Largest burst that fits in the token bits
+    public static final int MAX_BURST = (int) (TOKEN_MASK / ONE);
+    
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final long origin = System.nanoTime();
+    
+    // Takes one token. Returns 0 on success, otherwise the nanoseconds until one is available.
+    // ratePerSecond <= 0 disables the limit.
+    public long tryAcquire(String key, double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0) {
+            return 0;
+        }
+        long capacity = Math.min(burst, MAX_BURST) * ONE;
+        long now = now();
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(pack(now, capacity)));
+        }
+        while (true) {
+            long state = bucket.get();
+            long refilled = refill(state, now, ratePerSecond, capacity);
+            long tokens = refilled & TOKEN_MASK;
+            if (tokens < ONE) {
+                // ratePerSecond tokens per second is ratePerSecond thousandths per millisecond
+                return (long) Math.ceil((ONE - tokens) / ratePerSecond * 1_000_000);
+            }
+            if (bucket.compareAndSet(state, refilled - ONE)) {
+                return 0;
+            }
+        }
+    }
+    
+    // Nanoseconds until key has a token, without taking one
+    public long waitNanos(String key, double ratePerSecond, int burst) {
+        AtomicLong bucket = buckets.get(key);
+        if (ratePerSecond <= 0 || bucket == null) {
+            return 0;
+        }
+        long tokens = refill(bucket.get(), now(), ratePerSecond, Math.min(burst, MAX_BURST) * ONE) & TOKEN_MASK;
+        return tokens >= ONE ? 0 : (long) Math.ceil((ONE - tokens) / ratePerSecond * 1_000_000);
+    }
+    
+    // Removes buckets that have refilled completely; returns how many are left
+    public int evictIdle(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0) {
+            // No limit, so no bucket is worth keeping
+            buckets.clear();
+            return 0;
+        }
+        long capacity = Math.min(burst, MAX_BURST) * ONE;
+        long now = now();
+        Iterator<AtomicLong> it = buckets.values().iterator();
+        while (it.hasNext()) {
+            if ((refill(it.next().get(), now, ratePerSecond, capacity) & TOKEN_MASK) >= capacity) {
+                it.remove();
+            }
+        }
+        return buckets.size();
+    }
+    
+    public int size() {
+        return buckets.size();
+    }
+    
+    // Adds the tokens earned since the last refill. The refill time only advances by the time that
+    // was actually credited, so frequent calls do not round small refills away.
+    private static long refill(long state, long now, double ratePerSecond, long capacity) {
+        long last = state >>> TOKEN_BITS;
+        long tokens = Math.min(state & TOKEN_MASK, capacity);
+        long elapsed = now - last;
+        if (elapsed <= 0) {
+            return pack(last, tokens);
+        }
+        long earned = (long) (elapsed * ratePerSecond);
+        if (tokens + earned >= capacity) {
+            return pack(now, capacity);
+        }
+        if (earned == 0) {
+            return pack(last, tokens);
+        }
+        return pack(Math.min(now, last + (long) Math.ceil(earned / ratePerSecond)), tokens + earned);
+    }
+    
+    private long now() {
+        return (System.nanoTime() - origin) / 1_000_000;
+    }
+    
+    private static long pack(long millis, long tokens) {
+        return millis << TOKEN_BITS | tokens;
+    }
+}
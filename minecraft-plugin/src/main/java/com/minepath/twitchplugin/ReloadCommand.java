@@ -15,7 +15,15 @@ public class ReloadCommand implements CommandExecutor {
     
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
-        plugin.reloadConfig();
+        try {
+            plugin.reloadPluginConfig();
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage(ChatColor.RED + "Config not reloaded, keeping the previous settings:");
+            for (String error : e.getMessage().split("; ")) {
+                sender.sendMessage(ChatColor.RED + "  - " + error);
+            }
+            return true;
+        }
         sender.sendMessage(ChatColor.GREEN + "TwitchStreamPlugin configuration reloaded!");
         return true;
     }
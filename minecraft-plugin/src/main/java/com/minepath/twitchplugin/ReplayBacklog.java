@@ -0,0 +1,59 @@
+package com.minepath.twitchplugin;
+
+import java.util.ArrayDeque;
+
+// Journal entries replayed on startup, waiting to run. They are replayed on the first ticks, usually
+// before anyone has joined, and an event without a target player does nothing; so each entry stays
+// here, open in the journal, until the runner reports that its event ran. Main thread only.
+final class ReplayBacklog {
+    
+    interface Runner {
+        // false when the event could not run yet because no target player is online
+        boolean run(TwitchEvent event, JournalCompletion completion);
+    }
+    
+    private final ArrayDeque<Item> items = new ArrayDeque<>();
+    
+    void add(TwitchEvent event, JournalCompletion completion) {
+        items.add(new Item(event, completion));
+    }
+    
+    // Runs up to budget events in replay order and completes the dispatch of each one that ran.
+    // Stops at the first that cannot run yet, since the ones after it would find no target either.
+    int drain(Runner runner, int budget) {
+        int ran = 0;
+        while (ran < budget && !items.isEmpty()) {
+            Item item = items.peek();
+            if (!runner.run(item.event, item.completion)) {
+                break;
+            }
+            items.poll();
+            item.completion.release();
+            ran++;
+        }
+        return ran;
+    }
+    
+    int size() {
+        return items.size();
+    }
+    
+    boolean isEmpty() {
+        return items.isEmpty();
+    }
+    
+    // Leaves the entries open in the journal, e.g. on shutdown
+    void clear() {
+        items.clear();
+    }
+    
+    private static final class Item {
+        final TwitchEvent event;
+        final JournalCompletion completion;
+        
+        Item(TwitchEvent event, JournalCompletion completion) {
+            this.event = event;
+            this.completion = completion;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+
+// One step of an event rule ("do:" in config.yml), compiled once per config load. Runs on the
+// main thread against the already resolved target player, for the tenant the event came in on.
+public interface RuleAction {
+    
+    // Returns how many mobs or items it produced (used for %amount%), or -1 if it has no amount
+    int run(Tenant tenant, TwitchEvent event, Player target);
+    
+    // Builds an action from its config section; problems are added to errors (prefixed with path)
+    // and may return null in that case. Registered by name with RuleActions.register.
+    interface Factory {
+        RuleAction compile(ConfigurationSection spec, String path, List<String> errors);
+    }
+}
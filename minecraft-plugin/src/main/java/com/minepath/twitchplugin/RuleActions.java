@@ -0,0 +1,234 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Action types that rules can use, by the name given as "action:". The built-in ones are
+// spawn, give, effect, weather and command; other plugins or modules can add their own.
+public final class RuleActions {
+    
+    private static final Map<String, RuleAction.Factory> FACTORIES = new ConcurrentHashMap<>();
+    
+    static {
+        register("spawn", Spawn::compile);
+        register("give", Give::compile);
+        register("effect", Effect::compile);
+        register("weather", Weather::compile);
+        register("command", Command::compile);
+    }
+    
+    private RuleActions() {
+    }
+    
+    // Takes effect on the next config load
+    public static void register(String name, RuleAction.Factory factory) {
+        FACTORIES.put(name.toLowerCase(Locale.ROOT), factory);
+    }
+    
+    static RuleAction compile(ConfigurationSection spec, String path, List<String> errors) {
+        String name = spec.getString("action", "");
+        RuleAction.Factory factory = FACTORIES.get(name.toLowerCase(Locale.ROOT));
+        if (factory == null) {
+            errors.add(path + ".action: unknown action '" + name + "' (known: " + String.join(", ", FACTORIES.keySet()) + ")");
+            return null;
+        }
+        return factory.compile(spec, path, errors);
+    }
+    
+    static RuleAction spawn(EntityType mob, RuleCount count) {
+        return new Spawn(mob, count);
+    }
+    
+    static RuleAction give(Material item, RuleCount count) {
+        return new Give(item, count);
+    }
+    
+    static EntityType parseMob(String name, String path, List<String> errors) {
+        try {
+            EntityType type = EntityType.valueOf(name.toUpperCase(Locale.ROOT));
+            if (!type.isSpawnable() || !type.isAlive()) {
+                errors.add(path + ": " + name + " is not a spawnable mob");
+            }
+            return type;
+        } catch (IllegalArgumentException e) {
+            errors.add(path + ": unknown entity type '" + name + "'");
+            return null;
+        }
+    }
+    
+    static Material parseItem(String name, String path, List<String> errors) {
+        Material item = Material.matchMaterial(name);
+        if (item == null || !item.isItem()) {
+            errors.add(path + ": unknown item '" + name + "'");
+        }
+        return item;
+    }
+    
+    // amount, per and max of a spawn, give or command action
+    static RuleCount compileCount(ConfigurationSection spec, String path, int defaultAmount, List<String> errors) {
+        int amount = spec.getInt("amount", defaultAmount);
+        int per = spec.getInt("per", 0);
+        int max = spec.getInt("max", 0);
+        if (amount <= 0) {
+            errors.add(path + ".amount: must be greater than 0");
+        }
+        if (per < 0 || max < 0) {
+            errors.add(path + ": per and max must not be negative");
+        }
+        return new RuleCount(amount, per, max);
+    }
+    
+    private static final class Spawn implements RuleAction {
+        private final EntityType mob;
+        private final RuleCount count;
+        
+        Spawn(EntityType mob, RuleCount count) {
+            this.mob = mob;
+            this.count = count;
+        }
+        
+        static RuleAction compile(ConfigurationSection spec, String path, List<String> errors) {
+            EntityType mob = parseMob(spec.getString("mob", "zombie"), path + ".mob", errors);
+            return new Spawn(mob, compileCount(spec, path, 1, errors));
+        }
+        
+        @Override
+        public int run(Tenant tenant, TwitchEvent event, Player target) {
+            int amount = Math.min(count.of(event), tenant.getSettings().getMaxMobsPerEvent());
+            if (amount > 0) {
+                tenant.getPlugin().getEventHandler().spawnMobs(tenant, target, mob, amount, event);
+            }
+            return amount;
+        }
+    }
+    
+    private static final class Give implements RuleAction {
+        private final Material item;
+        private final RuleCount count;
+        
+        Give(Material item, RuleCount count) {
+            this.item = item;
+            this.count = count;
+        }
+        
+        static RuleAction compile(ConfigurationSection spec, String path, List<String> errors) {
+            Material item = parseItem(spec.getString("item", "GOLDEN_APPLE"), path + ".item", errors);
+            return new Give(item, compileCount(spec, path, 1, errors));
+        }
+        
+        @Override
+        public int run(Tenant tenant, TwitchEvent event, Player target) {
+            int amount = count.of(event);
+            target.getInventory().addItem(new ItemStack(item, amount));
+            tenant.getPlugin().getEventLog().info("event", "Gave " + amount + " " + item.name() + " to "
+                    + target.getName() + " for " + event.getUserName() + "'s " + event.getType());
+            return amount;
+        }
+    }
+    
+    private static final class Effect implements RuleAction {
+        private final PotionEffect effect;
+        
+        Effect(PotionEffect effect) {
+            this.effect = effect;
+        }
+        
+        static RuleAction compile(ConfigurationSection spec, String path, List<String> errors) {
+            String name = spec.getString("effect", "");
+            PotionEffectType type = PotionEffectType.getByName(name.toUpperCase(Locale.ROOT));
+            if (type == null) {
+                errors.add(path + ".effect: unknown potion effect '" + name + "'");
+                return null;
+            }
+            int duration = spec.getInt("duration_ticks", 200);
+            if (duration <= 0) {
+                errors.add(path + ".duration_ticks: must be greater than 0");
+            }
+            int amplifier = Math.max(0, spec.getInt("amplifier", 0));
+            return new Effect(new PotionEffect(type, duration, amplifier, false, true, true));
+        }
+        
+        @Override
+        public int run(Tenant tenant, TwitchEvent event, Player target) {
+            target.addPotionEffect(effect);
+            return -1;
+        }
+    }
+    
+    private static final class Weather implements RuleAction {
+        private final boolean storm;
+        private final boolean thunder;
+        private final int durationTicks;
+        
+        Weather(boolean storm, boolean thunder, int durationTicks) {
+            this.storm = storm;
+            this.thunder = thunder;
+            this.durationTicks = durationTicks;
+        }
+        
+        static RuleAction compile(ConfigurationSection spec, String path, List<String> errors) {
+            int seconds = spec.getInt("duration_seconds", 60);
+            if (seconds <= 0) {
+                errors.add(path + ".duration_seconds: must be greater than 0");
+            }
+            return new Weather(spec.getBoolean("storm", true), spec.getBoolean("thunder", false), seconds * 20);
+        }
+        
+        @Override
+        public int run(Tenant tenant, TwitchEvent event, Player target) {
+            World world = target.getWorld();
+            world.setStorm(storm);
+            world.setThundering(storm && thunder);
+            world.setWeatherDuration(durationTicks);
+            return -1;
+        }
+    }
+    
+    // Runs a console command. The command is a message template, so %player%, %user% etc. work
+    // (%amount% is the action's own count) and & color codes are translated as in messages.
+    // Inserted values are sanitized, and %message% (free cheer text) is not allowed at all.
+    private static final class Command implements RuleAction {
+        private final MessageTemplate command;
+        private final RuleCount count;
+        private final StringBuilder buffer = new StringBuilder(64);
+        
+        Command(MessageTemplate command, RuleCount count) {
+            this.command = command;
+            this.count = count;
+        }
+        
+        static RuleAction compile(ConfigurationSection spec, String path, List<String> errors) {
+            String command = spec.getString("command", "");
+            if (command.isEmpty()) {
+                errors.add(path + ".command: required");
+            }
+            String raw = command.startsWith("/") ? command.substring(1) : command;
+            MessageTemplate template = MessageTemplate.compile(raw);
+            if (template.uses("message")) {
+                errors.add(path + ".command: %message% cannot be used in commands, it is free text from the viewer");
+            }
+            return new Command(template, compileCount(spec, path, 1, errors));
+        }
+        
+        @Override
+        public int run(Tenant tenant, TwitchEvent event, Player target) {
+            int amount = count.of(event);
+            buffer.setLength(0);
+            command.renderCommand(buffer, event, target.getName(), amount);
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), buffer.toString());
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.minepath.twitchplugin;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+// When each rule last fired, overall and per viewer, for cooldown_seconds and user_cooldown_seconds.
+// Kept on the Tenant so the PluginSettings snapshot stays immutable; keyed by rule, so a reload
+// (which compiles new rules) starts from a clean slate. Main thread only.
+public final class RuleCooldowns {
+    
+    // Viewers remembered per rule before expired entries are swept
+    private static final int PRUNE_AT = 4096;
+    
+    private final Map<EventRule, Fired> fired = new HashMap<>();
+    
+    // Whether the rule's cooldowns have run out for this event
+    boolean ready(EventRule rule, TwitchEvent event, long now) {
+        if (rule.getCooldownMillis() == 0 && rule.getUserCooldownMillis() == 0) {
+            return true;
+        }
+        Fired last = fired.get(rule);
+        if (last == null) {
+            return true;
+        }
+        if (rule.getCooldownMillis() > 0 && now - last.at < rule.getCooldownMillis()) {
+            return false;
+        }
+        if (rule.getUserCooldownMillis() > 0) {
+            Long at = last.byUser.get(userKey(event));
+            return at == null || now - at >= rule.getUserCooldownMillis();
+        }
+        return true;
+    }
+    
+    void fired(EventRule rule, TwitchEvent event, long now) {
+        if (rule.getCooldownMillis() == 0 && rule.getUserCooldownMillis() == 0) {
+            return;
+        }
+        Fired last = fired.computeIfAbsent(rule, r -> new Fired());
+        last.at = now;
+        if (rule.getUserCooldownMillis() > 0) {
+            if (last.byUser.size() >= PRUNE_AT) {
+                Iterator<Long> it = last.byUser.values().iterator();
+                while (it.hasNext()) {
+                    if (now - it.next() >= rule.getUserCooldownMillis()) {
+                        it.remove();
+                    }
+                }
+            }
+            last.byUser.put(userKey(event), now);
+        }
+    }
+    
+    // On reload, the old rules are gone
+    void clear() {
+        fired.clear();
+    }
+    
+    private static String userKey(TwitchEvent event) {
+        return event.getUserId() != null ? event.getUserId() : event.getUserName().toLowerCase(Locale.ROOT);
+    }
+    
+    private static final class Fired {
+        long at;
+        final Map<String, Long> byUser = new HashMap<>();
+    }
+}
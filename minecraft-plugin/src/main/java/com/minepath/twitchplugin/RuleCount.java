@@ -0,0 +1,34 @@
+package com.minepath.twitchplugin;
+
+// "amount" per "per" units of the event's amount (bits, viewers, gifted subs), capped at "max".
+// per 0 means a fixed amount. Rules give at least one lot; the legacy gift and raid settings scale
+// from zero as they always have, so a gift of 0 subs or a raid below viewers_per_mob spawns nothing.
+final class RuleCount {
+    
+    final int amount;
+    final int per;
+    final int max;
+    private final int minLots;
+    
+    RuleCount(int amount, int per, int max) {
+        this(amount, per, max, 1);
+    }
+    
+    private RuleCount(int amount, int per, int max, int minLots) {
+        this.amount = amount;
+        this.per = per;
+        this.max = max;
+        this.minLots = minLots;
+    }
+    
+    // amount for every full "per" units, none below the first
+    static RuleCount scaled(int amount, int per, int max) {
+        return new RuleCount(amount, per, max, 0);
+    }
+    
+    int of(TwitchEvent event) {
+        long lots = per > 0 ? Math.max(minLots, event.getAmount() / per) : 1;
+        long count = lots * amount;
+        return (int) Math.min(count, max > 0 ? max : Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,268 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Picks spawn positions for a wave once, when it is queued: open two-block-high spots on solid
+// ground within spawn.radius of the target and spawn.planner.vertical_range of its height plus
+// spawn.height_offset, spread over the area. Only chunks that are already loaded are used, so
+// planning and spawning never load chunks on the main thread.
+//
+// Each chunk's standable spots are found from a ChunkSnapshot, skipping everything above its
+// heightmap, and cached per chunk until a block in it changes (broken, placed or blown up), it
+// unloads or the cache ttl passes.
+public class SpawnPlanner implements Listener {
+    
+    // World -> chunk key -> cached scan
+    private final Map<UUID, Map<Long, ChunkSpots>> cache = new HashMap<>();
+    
+    // Main thread. Returns amount locations; falls back to the target's own position when there is
+    // no open spot in range (e.g. radius 0 or a one-block tunnel). Radius and height band come from
+    // the settings of the tenant the spawn is for.
+    public Location[] plan(Player target, int amount, PluginSettings settings) {
+        Location origin = target.getLocation();
+        World world = origin.getWorld();
+        int radius = settings.getSpawnRadius();
+        int range = settings.getSpawnVerticalRange();
+        int ox = origin.getBlockX();
+        int oz = origin.getBlockZ();
+        int centerY = origin.getBlockY() + settings.getSpawnHeightOffset();
+        int minY = Math.max(world.getMinHeight() + 1, centerY - range);
+        int maxY = Math.min(world.getMaxHeight() - 2, centerY + range);
+        
+        // Packed (x, y, z) of every candidate; keep clear of the target's own block
+        int[] candidates = new int[64];
+        int count = 0;
+        long radiusSq = (long) radius * radius;
+        long now = System.currentTimeMillis();
+        for (int cx = (ox - radius) >> 4; cx <= (ox + radius) >> 4; cx++) {
+            for (int cz = (oz - radius) >> 4; cz <= (oz + radius) >> 4; cz++) {
+                if (!world.isChunkLoaded(cx, cz) || minY > maxY) {
+                    continue;
+                }
+                ChunkSpots spots = spots(world, cx, cz, minY, maxY, now, settings.getSpawnCacheMillis());
+                for (int y = minY; y <= maxY; y++) {
+                    for (int lz = 0; lz < 16; lz++) {
+                        int dz = (cz << 4) + lz - oz;
+                        for (int lx = 0; lx < 16; lx++) {
+                            int dx = (cx << 4) + lx - ox;
+                            long distSq = (long) dx * dx + (long) dz * dz;
+                            if (distSq > radiusSq || distSq < 4 || !spots.isStandable(lx, y, lz)) {
+                                continue;
+                            }
+                            if (count == candidates.length) {
+                                candidates = Arrays.copyOf(candidates, count * 2);
+                            }
+                            candidates[count++] = pack(dx, y - minY, dz);
+                        }
+                    }
+                }
+            }
+        }
+        
+        Location[] locations = new Location[amount];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int remaining = count;
+        for (int i = 0; i < amount; i++) {
+            if (count == 0) {
+                locations[i] = origin.clone();
+                continue;
+            }
+            // Partial Fisher-Yates: distinct spots until every candidate is used, then start over
+            if (remaining == 0) {
+                remaining = count;
+            }
+            int pick = random.nextInt(remaining);
+            int packed = candidates[pick];
+            candidates[pick] = candidates[--remaining];
+            candidates[remaining] = packed;
+            
+            int x = ox + unpackX(packed);
+            int y = minY + unpackY(packed);
+            int z = oz + unpackZ(packed);
+            Location location = new Location(world, x + 0.5, y, z + 0.5);
+            // Face the target
+            location.setYaw((float) Math.toDegrees(Math.atan2(-(origin.getX() - location.getX()), origin.getZ() - location.getZ())));
+            locations[i] = location;
+        }
+        return locations;
+    }
+    
+    private ChunkSpots spots(World world, int cx, int cz, int minY, int maxY, long now, long cacheMillis) {
+        Map<Long, ChunkSpots> byChunk = cache.computeIfAbsent(world.getUID(), id -> new HashMap<>());
+        long key = key(cx, cz);
+        ChunkSpots spots = byChunk.get(key);
+        if (spots == null || now - spots.scannedAt > cacheMillis || minY < spots.minY || maxY > spots.maxY) {
+            // Widen a cached band rather than narrowing it, so players at different heights share a scan
+            if (spots != null && now - spots.scannedAt <= cacheMillis) {
+                minY = Math.min(minY, spots.minY);
+                maxY = Math.max(maxY, spots.maxY);
+            }
+            spots = scan(world.getChunkAt(cx, cz), minY, maxY, now);
+            byChunk.put(key, spots);
+        }
+        return spots;
+    }
+    
+    private static ChunkSpots scan(Chunk chunk, int minY, int maxY, long now) {
+        ChunkSnapshot snapshot = chunk.getChunkSnapshot(true, false, false);
+        ChunkSpots spots = new ChunkSpots(minY, maxY, now);
+        for (int lz = 0; lz < 16; lz++) {
+            for (int lx = 0; lx < 16; lx++) {
+                // Above the heightmap there is only air, so the first spot there is the surface
+                int top = Math.min(maxY, snapshot.getHighestBlockYAt(lx, lz) + 1);
+                // Walk down keeping the two blocks above the current one
+                Material head = snapshot.getBlockType(lx, top + 1, lz);
+                Material feet = snapshot.getBlockType(lx, top, lz);
+                for (int y = top; y >= minY; y--) {
+                    Material ground = snapshot.getBlockType(lx, y - 1, lz);
+                    if (ground.isSolid() && isOpen(feet) && isOpen(head)) {
+                        spots.set(lx, y, lz);
+                    }
+                    head = feet;
+                    feet = ground;
+                }
+            }
+        }
+        return spots;
+    }
+    
+    private static boolean isOpen(Material material) {
+        return !material.isSolid() && material != Material.WATER && material != Material.LAVA;
+    }
+    
+    @org.bukkit.event.EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        invalidate(event.getBlock());
+    }
+    
+    @org.bukkit.event.EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        invalidate(event.getBlock());
+    }
+    
+    // Creeper waves are what this plugin spawns, so the ground they blow away must not stay planned
+    @org.bukkit.event.EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        invalidate(event.getLocation().getWorld(), event.blockList());
+    }
+    
+    @org.bukkit.event.EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        invalidate(event.getBlock().getWorld(), event.blockList());
+    }
+    
+    @org.bukkit.event.EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        Map<Long, ChunkSpots> byChunk = cache.get(event.getWorld().getUID());
+        if (byChunk != null) {
+            byChunk.remove(key(event.getChunk().getX(), event.getChunk().getZ()));
+        }
+    }
+    
+    private void invalidate(Block block) {
+        Map<Long, ChunkSpots> byChunk = cache.get(block.getWorld().getUID());
+        if (byChunk != null) {
+            byChunk.remove(key(block.getX() >> 4, block.getZ() >> 4));
+        }
+    }
+    
+    // Every chunk the blocks are in; an explosion's blocks mostly share a chunk or two
+    private void invalidate(World world, List<Block> blocks) {
+        Map<Long, ChunkSpots> byChunk = cache.get(world.getUID());
+        if (byChunk == null || byChunk.isEmpty()) {
+            return;
+        }
+        long last = 0;
+        boolean first = true;
+        for (Block block : blocks) {
+            long key = key(block.getX() >> 4, block.getZ() >> 4);
+            if (first || key != last) {
+                byChunk.remove(key);
+                last = key;
+                first = false;
+            }
+        }
+    }
+    
+    public int getCachedChunks() {
+        int total = 0;
+        for (Map<Long, ChunkSpots> byChunk : cache.values()) {
+            total += byChunk.size();
+        }
+        return total;
+    }
+    
+    public void clear() {
+        cache.clear();
+    }
+    
+    private static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xffffffffL);
+    }
+    
+    // Offsets from the origin in 11 bits each (radius up to 1023) and the height above minY in 10
+    private static int pack(int dx, int dy, int dz) {
+        return ((dx + 1024) & 0x7ff) << 21 | (dy & 0x3ff) << 11 | ((dz + 1024) & 0x7ff);
+    }
+    
+    private static int unpackX(int packed) {
+        return (packed >>> 21) - 1024;
+    }
+    
+    private static int unpackY(int packed) {
+        return (packed >>> 11) & 0x3ff;
+    }
+    
+    private static int unpackZ(int packed) {
+        return (packed & 0x7ff) - 1024;
+    }
+    
+    // Standable spots of one chunk between minY and maxY, one bit per block
+    private static final class ChunkSpots {
+        final int minY;
+        final int maxY;
+        final long scannedAt;
+        final long[] bits;
+        
+        ChunkSpots(int minY, int maxY, long scannedAt) {
+            this.minY = minY;
+            this.maxY = maxY;
+            this.scannedAt = scannedAt;
+            this.bits = new long[(maxY - minY + 1) * 4];
+        }
+        
+        void set(int lx, int y, int lz) {
+            int i = index(lx, y, lz);
+            bits[i >>> 6] |= 1L << i;
+        }
+        
+        boolean isStandable(int lx, int y, int lz) {
+            int i = index(lx, y, lz);
+            return (bits[i >>> 6] & (1L << i)) != 0;
+        }
+        
+        private int index(int lx, int y, int lz) {
+            return (y - minY) << 8 | lz << 4 | lx;
+        }
+    }
+}
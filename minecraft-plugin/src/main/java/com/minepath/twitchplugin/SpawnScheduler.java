@@ -0,0 +1,348 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Drains queued mob spawns on the main thread a few per tick, so a large
+// event never spends more than the configured budget in a single tick.
+// Spawns wait in one lane per viewer and lanes take turns, so one big cheer
+// cannot hold everyone else's mobs back; a per-target token bucket spreads
+// the mobs aimed at one player over time. Each tenant has its own scheduler and budget.
+// A wave queued while IngestQueue dispatches a journaled event keeps that event open in the
+// journal until the wave finishes or its first mob spawns, so waves that had not started at
+// shutdown run again on the next start. The rest of a started wave is dropped rather than
+// replaying the mobs that already spawned.
+public class SpawnScheduler implements Runnable {
+    
+    private final TwitchStreamPlugin plugin;
+    private final Tenant tenant;
+    private final ArrayDeque<Lane> lanes = new ArrayDeque<>();
+    private final Map<String, Lane> lanesByUser = new HashMap<>();
+    private final RateLimiter targetLimits = new RateLimiter();
+    private int queued;
+    private BukkitTask task;
+    // Journal entries of the event being dispatched, if any
+    private JournalCompletion completion;
+    
+    // Stats for the current drain and the last tick
+    private long lastTickNanos;
+    private int lastTickSpawns;
+    private long peakTickNanos;
+    private int drainTicks;
+    private int drainSpawns;
+    
+    public SpawnScheduler(TwitchStreamPlugin plugin, Tenant tenant) {
+        this.plugin = plugin;
+        this.tenant = tenant;
+    }
+    
+    public void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1L, 1L);
+        }
+    }
+    
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        if (queued > 0) {
+            // Waves holding a journal entry that is still open are replayed on the next start
+            int journaled = 0;
+            for (Lane lane : lanes) {
+                for (PendingSpawn spawn : lane.spawns) {
+                    if (spawn.wave.completion != null && !spawn.wave.completion.isCompleted()) {
+                        journaled++;
+                    }
+                }
+            }
+            String of = tenant.isDefault() ? "" : " of tenant " + tenant.getId();
+            if (journaled > 0) {
+                plugin.getLogger().info("Leaving " + journaled + " pending spawn(s)" + of + " in the journal to run on the next start");
+            }
+            if (queued > journaled) {
+                plugin.getLogger().warning("Discarding " + (queued - journaled) + " pending spawn(s)" + of + " on shutdown");
+            }
+            lanes.clear();
+            lanesByUser.clear();
+            queued = 0;
+        }
+    }
+    
+    // Main thread; set by IngestQueue around handling a journaled event
+    void setCompletion(JournalCompletion completion) {
+        this.completion = completion;
+    }
+    
+    // Queue a wave of mobs; must be called from the main thread. Positions are planned here, once per wave.
+    // Mobs beyond spawn.scheduler.max_queued are dropped and reported as capped in the wave summary.
+    public void enqueue(Player target, MobArchetype archetype, int amount, String userName, String eventType) {
+        int room = Math.max(0, tenant.getSettings().getMaxQueuedSpawns() - queued);
+        int accepted = Math.min(amount, room);
+        Wave wave = new Wave(target, archetype, accepted, userName, eventType);
+        if (accepted < amount) {
+            wave.dropped = amount - accepted;
+            wave.capped = wave.dropped;
+            wave.cap = "spawn.scheduler.max_queued";
+            for (int i = accepted; i < amount; i++) {
+                tenant.getMetrics().mobCapped();
+            }
+        }
+        if (accepted == 0) {
+            finishWave(wave);
+            return;
+        }
+        
+        if (completion != null) {
+            completion.retain();
+            wave.completion = completion;
+        }
+        
+        String key = userName.toLowerCase(Locale.ROOT);
+        Lane lane = lanesByUser.get(key);
+        if (lane == null) {
+            lane = new Lane(key);
+            lanesByUser.put(key, lane);
+            lanes.add(lane);
+        }
+        Location[] locations = plugin.getSpawnPlanner().plan(target, accepted, tenant.getSettings());
+        for (int i = 0; i < accepted; i++) {
+            lane.spawns.add(new PendingSpawn(wave, i + 1, locations[i]));
+        }
+        queued += accepted;
+        plugin.getEventLog().debug("spawn", "Queued " + accepted + " " + archetype.getType().name() + "(s) for " + target.getName()
+                + " (queue depth: " + queued + ", viewers waiting: " + lanes.size() + ")");
+    }
+    
+    @Override
+    public void run() {
+        if (queued == 0) {
+            lastTickNanos = 0;
+            lastTickSpawns = 0;
+            return;
+        }
+        
+        PluginSettings settings = tenant.getSettings();
+        int maxSpawnsPerTick = settings.getMaxSpawnsPerTick();
+        long maxNanosPerTick = settings.getMaxSpawnNanosPerTick();
+        double targetRate = settings.getTargetSpawnRate();
+        int targetBurst = settings.getTargetSpawnBurst();
+        long start = System.nanoTime();
+        long elapsed = 0;
+        int spawns = 0;
+        // Lanes in a row whose next target is out of tokens; once every lane has been passed over
+        // the tick is done, and they get their turn again next tick
+        int blocked = 0;
+        
+        // Always try at least one mob per tick so the queue cannot stall
+        while (!lanes.isEmpty() && blocked < lanes.size() && spawns < maxSpawnsPerTick
+                && (spawns == 0 || elapsed < maxNanosPerTick)) {
+            Lane lane = lanes.poll();
+            PendingSpawn next = lane.spawns.peek();
+            if (targetLimits.tryAcquire(next.wave.targetKey, targetRate, targetBurst) != 0) {
+                lanes.add(lane);
+                blocked++;
+                continue;
+            }
+            blocked = 0;
+            lane.spawns.poll();
+            queued--;
+            if (lane.spawns.isEmpty()) {
+                lanesByUser.remove(lane.key);
+            } else {
+                lanes.add(lane);
+            }
+            spawnOne(next);
+            spawns++;
+            elapsed = System.nanoTime() - start;
+        }
+        
+        lastTickNanos = elapsed;
+        lastTickSpawns = spawns;
+        tenant.getMetrics().spawnTick(elapsed);
+        peakTickNanos = Math.max(peakTickNanos, elapsed);
+        drainTicks++;
+        drainSpawns += spawns;
+        
+        if (queued == 0) {
+            targetLimits.evictIdle(targetRate, targetBurst);
+            if (settings.isDebug()) {
+                plugin.getEventLog().debug("spawn", String.format("Spawn queue drained: %d mob(s) over %d tick(s), peak %.2f ms/tick",
+                        drainSpawns, drainTicks, peakTickNanos / 1_000_000.0));
+            }
+            drainTicks = 0;
+            drainSpawns = 0;
+            peakTickNanos = 0;
+        }
+    }
+    
+    private void spawnOne(PendingSpawn pending) {
+        Wave wave = pending.wave;
+        Player target = wave.target;
+        
+        try {
+            // Skip mobs whose target left or moved out of the mines since the wave was queued
+            if (!target.isOnline() || !target.getWorld().getName().startsWith("mines/")) {
+                return;
+            }
+            
+            // Planned spots are only in loaded chunks; if the target changed world or the chunk
+            // has unloaded since, spawn on the target instead of loading it
+            Location spawnLoc = pending.location;
+            if (spawnLoc.getWorld() != target.getWorld()
+                    || !spawnLoc.getWorld().isChunkLoaded(spawnLoc.getBlockX() >> 4, spawnLoc.getBlockZ() >> 4)) {
+                spawnLoc = target.getLocation();
+            }
+            
+            // Respect the live mob caps before doing any chunk or entity work
+            String cap = plugin.getMobRegistry().checkCaps(target, spawnLoc);
+            if (cap != null) {
+                wave.capped++;
+                wave.cap = cap;
+                tenant.getMetrics().mobCapped();
+                return;
+            }
+            
+            // Named, targeted and tagged before it is added, so it goes out to clients in one go
+            LivingEntity entity = wave.archetype.spawn(spawnLoc, target, wave.customName,
+                    plugin.getMobTags(), wave.eventType, wave.userName);
+                    
+            if (entity != null) {
+                wave.spawned++;
+                tenant.getMetrics().mobSpawned();
+                plugin.getMobRegistry().register(entity, target, wave.eventType, wave.userName);
+                if (wave.spawned == 1 && wave.completion != null) {
+                    wave.completion.commit();
+                }
+                
+                // One lightning effect where the wave starts rather than one per mob
+                if (!wave.struck && tenant.getSettings().isWaveLightning()) {
+                    wave.struck = true;
+                    spawnLoc.getWorld().strikeLightningEffect(spawnLoc);
+                }
+            } else {
+                wave.failed++;
+                tenant.getMetrics().mobFailed();
+            }
+        } catch (Exception e) {
+            // Reported once in the wave summary rather than per mob
+            wave.failed++;
+            tenant.getMetrics().mobFailed();
+            if (wave.error == null) {
+                wave.error = e;
+            }
+        } finally {
+            if (pending.index == wave.amount) {
+                finishWave(wave);
+            }
+        }
+    }
+    
+    private void finishWave(Wave wave) {
+        // One summary line per event instead of one per mob
+        String summary = "Spawned " + wave.spawned + "/" + (wave.amount + wave.dropped) + " " + wave.archetype.getType().name()
+                + "(s) for " + wave.target.getName() + " from " + wave.userName + "'s " + wave.eventType
+                + (wave.capped > 0 ? ", " + wave.capped + " skipped by " + wave.cap : "")
+                + (wave.failed > 0 ? ", " + wave.failed + " failed" : "");
+        if (wave.failed > 0) {
+            plugin.getEventLog().warn("spawn", summary, wave.error);
+        } else {
+            plugin.getEventLog().info("spawn", summary);
+        }
+        
+        EventHistory history = plugin.getHistory();
+        if (history != null && wave.spawned > 0) {
+            history.recordWave(tenant.getId(), wave.eventType, wave.userName, wave.spawned, System.currentTimeMillis());
+        }
+        
+        if (wave.spawned > 0 && wave.target.isOnline()) {
+            wave.target.sendMessage(ChatColor.RED + "⚠ " + wave.spawned + " Twitch mob(s) spawned in the mines!");
+            wave.target.sendMessage(ChatColor.YELLOW + "⛏ Watch out - they slow down mining speed!");
+        }
+        
+        if (wave.completion != null) {
+            wave.completion.release();
+        }
+    }
+    
+    public int getQueueDepth() {
+        return queued;
+    }
+    
+    // Viewers with mobs still waiting
+    public int getWaitingViewers() {
+        return lanes.size();
+    }
+    
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+    
+    public int getLastTickSpawns() {
+        return lastTickSpawns;
+    }
+    
+    // One event's worth of mobs, shared by its queued spawns
+    private static final class Wave {
+        final Player target;
+        final MobArchetype archetype;
+        final int amount;
+        final String userName;
+        final String eventType;
+        final String targetKey;
+        // Worked out once for all of the wave's mobs
+        final String customName;
+        // Journal entries this wave keeps open, or null
+        JournalCompletion completion;
+        int spawned;
+        boolean struck;
+        // Not queued at all because the scheduler was full; also counted in capped
+        int dropped;
+        int capped;
+        String cap;
+        int failed;
+        Exception error;
+        
+        Wave(Player target, MobArchetype archetype, int amount, String userName, String eventType) {
+            this.target = target;
+            this.archetype = archetype;
+            this.amount = amount;
+            this.userName = userName;
+            this.eventType = eventType;
+            this.targetKey = target.getUniqueId().toString();
+            this.customName = archetype.name(userName);
+        }
+    }
+    
+    // One viewer's queued spawns, in order
+    private static final class Lane {
+        final String key;
+        final ArrayDeque<PendingSpawn> spawns = new ArrayDeque<>();
+        
+        Lane(String key) {
+            this.key = key;
+        }
+    }
+    
+    private static final class PendingSpawn {
+        final Wave wave;
+        final int index;
+        final Location location;
+        
+        PendingSpawn(Wave wave, int index, Location location) {
+            this.wave = wave;
+            this.index = index;
+            this.location = location;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.util.Locale;
+
+// /twitchstats [tenant]: the same numbers as /metrics, condensed for chat
+public class StatsCommand implements CommandExecutor {
+    
+    private final TwitchStreamPlugin plugin;
+    
+    public StatsCommand(TwitchStreamPlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        PluginMetrics metrics = plugin.getMetrics();
+        if (args.length > 0 && !args[0].equalsIgnoreCase(Tenant.DEFAULT)) {
+            Tenant tenant = plugin.getTenant(args[0].toLowerCase(Locale.ROOT));
+            if (tenant == null) {
+                sender.sendMessage(ChatColor.RED + "Unknown tenant: " + args[0]);
+                sender.sendMessage(ChatColor.YELLOW + "Tenants: " + String.join(", ", plugin.getTenants().keySet()));
+                return true;
+            }
+            metrics = tenant.getMetrics();
+            sender.sendMessage(ChatColor.GOLD + "Tenant " + tenant.getId() + ":");
+        }
+        
+        sender.sendMessage(ChatColor.GOLD + "Twitch events (received / rejected / limited / coalesced / duplicate / run, latency p50 p99 max):");
+        for (PluginMetrics.TypeMetrics type : metrics.getTypes()) {
+            LatencyHistogram.Snapshot latency = type.getLatency().snapshot();
+            sender.sendMessage(ChatColor.YELLOW + "  " + type.getType() + ": " + ChatColor.WHITE
+                    + type.getReceived() + " / " + type.getRejected() + " / " + type.getRateLimited() + " / " + type.getCoalesced()
+                    + " / " + type.getDuplicates()
+                    + " / " + type.getExecuted()
+                    + ChatColor.GRAY + "  " + millis(latency.percentileNanos(0.5)) + " " + millis(latency.percentileNanos(0.99))
+                    + " " + millis(latency.getMaxNanos()));
+        }
+        if (metrics.getInvalid() > 0) {
+            sender.sendMessage(ChatColor.YELLOW + "  invalid: " + ChatColor.WHITE + metrics.getInvalid());
+        }
+        
+        LatencyHistogram.Snapshot spawnTick = metrics.getSpawnTick().snapshot();
+        sender.sendMessage(ChatColor.GOLD + "Spawning: " + ChatColor.WHITE + metrics.getMobsSpawned() + " spawned, "
+                + metrics.getMobsCapped() + " capped" + ChatColor.GRAY + "  tick p50 " + millis(spawnTick.percentileNanos(0.5))
+                + " p99 " + millis(spawnTick.percentileNanos(0.99)) + " max " + millis(spawnTick.getMaxNanos()));
+                
+        StringBuilder gauges = new StringBuilder();
+        for (PluginMetrics.Gauge gauge : metrics.getGauges()) {
+            if (gauges.length() > 0) {
+                gauges.append(", ");
+            }
+            double value = gauge.getValue();
+            gauges.append(gauge.getName().replaceFirst("^twitch_", "")).append('=')
+                    .append(value == Math.rint(value) ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.2f", value));
+        }
+        sender.sendMessage(ChatColor.GOLD + "Now: " + ChatColor.WHITE + gauges);
+        if (metrics.getTenant() == null && plugin.getTenants().size() > 1) {
+            sender.sendMessage(ChatColor.GRAY + "Other tenants (/" + label + " <tenant>): "
+                    + String.join(", ", plugin.getTenants().keySet()).replaceFirst("^" + Tenant.DEFAULT + ", ", ""));
+        }
+        return true;
+    }
+    
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1fms", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,416 @@
+package com.minepath.twitchplugin;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// Persistent event channel for the backend: one TCP connection carries any number of events and
+// their acknowledgements, so there is no connection setup, request line or headers per event.
+// It has its own port because the JDK HTTP server cannot hand over a connection (no WebSocket
+// upgrade) and its request/response timeouts would cut a long-lived chunked request.
+//
+// Every frame is an int length of what follows, a type byte and a body, big-endian:
+//   client HELLO    {"tenant": ..., "userName": ..., "userId": ...}, routed like X-Tenant-ID,
+//                   X-User-Name and X-User-ID; must be the first frame
+//   server WELCOME  {"version": 1, "window": n, "maxFrameBytes": n}
+//   client EVENT    long seq, then the event JSON as posted to /twitch-event
+//   server ACK      long seq, byte status, int seconds to wait before retrying (0 if none)
+//   client PING     long, echoed back in a PONG; also keeps an idle connection open
+//   server ERROR    UTF-8 message, then the connection is closed
+// A client may have at most window events without an ACK. ACKs arrive in the order the events
+// were sent; with journal.sync_ack they are sent once the events are on disk, one flush for all
+// events that arrived meanwhile.
+public class StreamServer {
+    
+    public static final int VERSION = 1;
+    
+    static final byte HELLO = 1;
+    static final byte EVENT = 2;
+    static final byte PING = 3;
+    static final byte WELCOME = (byte) 0x81;
+    static final byte ACK = (byte) 0x82;
+    static final byte PONG = (byte) 0x83;
+    static final byte ERROR = (byte) 0x84;
+    
+    // ACK statuses
+    public static final byte QUEUED = 0;
+    public static final byte DUPLICATE = 1;
+    public static final byte RATE_LIMITED = 2;
+    public static final byte QUEUE_FULL = 3;
+    public static final byte INVALID = 4;
+    public static final byte UNKNOWN_TENANT = 5;
+    public static final byte FAILED = 6;
+    
+    // Decides where a connection's events go
+    public interface Router {
+        // From the HELLO frame; null refuses the connection
+        Sink open(String tenant, String userName, String userId);
+    }
+    
+    public interface Sink {
+        // Reader thread: decode and admit one event body without waiting for the journal
+        Ack accept(long seq, byte[] body);
+        
+        // Writer thread, before ACKs go out: wait until everything accepted so far is durable
+        void awaitDurable();
+    }
+    
+    public static final class Ack {
+        final long seq;
+        final byte status;
+        final int retryAfterSeconds;
+        
+        public Ack(long seq, byte status, int retryAfterSeconds) {
+            this.seq = seq;
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+    
+    private static final int BUFFER_BYTES = 64 * 1024;
+    
+    private final Logger logger;
+    private final ConfigurationSection config;
+    private final Router router;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+    private volatile boolean running;
+    private int window;
+    private int maxFrameBytes;
+    private int maxConnections;
+    private int idleTimeoutMillis;
+    
+    public StreamServer(Logger logger, ConfigurationSection config, Router router) {
+        this.logger = logger;
+        this.config = config;
+        this.router = router;
+    }
+    
+    public void start() throws IOException {
+        String host = config.getString("host", "0.0.0.0");
+        int port = config.getInt("port", 8081);
+        window = Math.max(1, config.getInt("window", 256));
+        maxFrameBytes = Math.max(1024, config.getInt("max_frame_bytes", 65536));
+        maxConnections = Math.max(1, config.getInt("max_connections", 16));
+        idleTimeoutMillis = Math.max(1, config.getInt("idle_timeout_seconds", 120)) * 1000;
+        
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getByName(host), port), 50);
+        running = true;
+        acceptor = new Thread(this::acceptLoop, "TwitchStream-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Event stream listening on " + host + ":" + serverSocket.getLocalPort()
+                + " (window " + window + ", up to " + maxConnections + " connections)");
+    }
+    
+    public void stop() {
+        running = false;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+        for (Connection connection : connections) {
+            connection.close("Server shutting down");
+        }
+        if (acceptor != null) {
+            try {
+                acceptor.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            acceptor = null;
+        }
+    }
+    
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+    
+    public int getConnectionCount() {
+        return connections.size();
+    }
+    
+    private void acceptLoop() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    logger.warning("Event stream accept failed: " + e.getMessage());
+                }
+                continue;
+            }
+            Connection connection = new Connection(socket, nextId.incrementAndGet());
+            if (connections.size() >= maxConnections) {
+                connection.refuse("Too many stream connections");
+                continue;
+            }
+            connections.add(connection);
+            connection.start();
+        }
+    }
+    
+    // One reader thread decoding and admitting events, one writer thread sending replies, so a
+    // client can keep a window of events in flight while earlier ones are acknowledged
+    private final class Connection {
+        private final Socket socket;
+        private final String name;
+        private final BlockingQueue<Object> replies;
+        // Events read but not yet acknowledged
+        private final AtomicInteger unacked = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // An ERROR was handed to the writer, which closes the connection after sending it
+        private volatile boolean farewell;
+        private DataOutputStream out;
+        private volatile Thread writer;
+        private Sink sink;
+        
+        Connection(Socket socket, int id) {
+            this.socket = socket;
+            this.name = "TwitchStream-" + id;
+            this.replies = new ArrayBlockingQueue<>(window + 16);
+        }
+        
+        void start() {
+            Thread reader = new Thread(this::readLoop, name + "-read");
+            reader.setDaemon(true);
+            reader.start();
+        }
+        
+        private void readLoop() {
+            String remote = String.valueOf(socket.getRemoteSocketAddress());
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                socket.setSoTimeout(idleTimeoutMillis);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_BYTES));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_BYTES));
+                
+                if (!hello(in)) {
+                    return;
+                }
+                logger.info("Event stream connected from " + remote);
+                writer = new Thread(this::writeLoop, name + "-write");
+                writer.setDaemon(true);
+                writer.start();
+                
+                while (!closed.get()) {
+                    int length = in.readInt();
+                    if (length < 1 || length > maxFrameBytes + 9) {
+                        fail("Frame of " + length + " bytes is over the limit of " + maxFrameBytes);
+                        return;
+                    }
+                    byte type = in.readByte();
+                    if (type == EVENT && length >= 9) {
+                        long seq = in.readLong();
+                        byte[] body = new byte[length - 9];
+                        in.readFully(body);
+                        if (unacked.incrementAndGet() > window) {
+                            fail("More than " + window + " events without an ACK");
+                            return;
+                        }
+                        replies.put(sink.accept(seq, body));
+                    } else if (type == PING && length == 9) {
+                        replies.put(new long[] {in.readLong()});
+                    } else {
+                        fail("Unexpected frame type " + type);
+                        return;
+                    }
+                }
+            } catch (EOFException | SocketException e) {
+                // Closed by the client or by close()
+            } catch (SocketTimeoutException e) {
+                fail("Idle for " + idleTimeoutMillis / 1000 + "s");
+            } catch (IOException e) {
+                logger.warning("Event stream from " + remote + " failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (!farewell) {
+                    shutdown();
+                }
+                logger.info("Event stream from " + remote + " closed");
+            }
+        }
+        
+        // Reads HELLO and answers WELCOME, or refuses the connection
+        private boolean hello(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 1 || length > maxFrameBytes + 1) {
+                fail("Expected HELLO");
+                return false;
+            }
+            byte type = in.readByte();
+            byte[] body = new byte[length - 1];
+            in.readFully(body);
+            if (type != HELLO) {
+                fail("Expected HELLO");
+                return false;
+            }
+            
+            String tenant;
+            String userName;
+            String userId;
+            try {
+                JsonObject hello = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+                tenant = string(hello.get("tenant"));
+                userName = string(hello.get("userName"));
+                userId = string(hello.get("userId"));
+            } catch (JsonParseException | IllegalStateException e) {
+                fail("Malformed HELLO: " + e.getMessage());
+                return false;
+            }
+            sink = router.open(tenant, userName, userId);
+            if (sink == null) {
+                fail("Unknown tenant " + tenant);
+                return false;
+            }
+            
+            JsonObject welcome = new JsonObject();
+            welcome.addProperty("version", VERSION);
+            welcome.addProperty("window", window);
+            welcome.addProperty("maxFrameBytes", maxFrameBytes);
+            writeFrame(WELCOME, welcome.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            return true;
+        }
+        
+        // Sends whatever has piled up since the last flush in one write
+        private void writeLoop() {
+            List<Object> batch = new ArrayList<>();
+            try {
+                while (true) {
+                    batch.add(replies.take());
+                    replies.drainTo(batch);
+                    boolean acks = false;
+                    for (Object reply : batch) {
+                        acks |= reply instanceof Ack;
+                    }
+                    if (acks) {
+                        sink.awaitDurable();
+                    }
+                    
+                    for (Object reply : batch) {
+                        if (reply instanceof Ack) {
+                            Ack ack = (Ack) reply;
+                            // Before the ACK can reach the client, which may then send the next event
+                            unacked.decrementAndGet();
+                            out.writeInt(1 + 8 + 1 + 4);
+                            out.writeByte(ACK);
+                            out.writeLong(ack.seq);
+                            out.writeByte(ack.status);
+                            out.writeInt(ack.retryAfterSeconds);
+                        } else if (reply instanceof long[]) {
+                            out.writeInt(1 + 8);
+                            out.writeByte(PONG);
+                            out.writeLong(((long[]) reply)[0]);
+                        } else {
+                            // An error message: the last thing sent
+                            writeFrame(ERROR, ((String) reply).getBytes(StandardCharsets.UTF_8));
+                            out.flush();
+                            shutdown();
+                            return;
+                        }
+                    }
+                    out.flush();
+                    batch.clear();
+                }
+            } catch (IOException e) {
+                shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        // Tells the client why and closes once the replies before it are out
+        private void fail(String message) {
+            if (closed.get()) {
+                return;
+            }
+            logger.warning("Closing event stream " + name + ": " + message);
+            if (writer == null) {
+                refuse(message);
+            } else {
+                close(message);
+            }
+        }
+        
+        // Before the writer runs
+        void refuse(String message) {
+            try {
+                if (out == null) {
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                }
+                writeFrame(ERROR, message.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException ignored) {
+            }
+            shutdown();
+        }
+        
+        // Sends message after the replies already queued, then closes
+        void close(String message) {
+            if (writer != null && !closed.get() && replies.offer(message)) {
+                farewell = true;
+                return;
+            }
+            shutdown();
+        }
+        
+        private void shutdown() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            if (writer != null) {
+                writer.interrupt();
+            }
+        }
+        
+        private void writeFrame(byte type, byte[] body) throws IOException {
+            out.writeInt(1 + body.length);
+            out.writeByte(type);
+            out.write(body);
+        }
+    }
+    
+    private static String string(JsonElement element) {
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+}
@@ -0,0 +1,41 @@
+package com.minepath.twitchplugin;
+
+public final class SubscribeEvent extends TwitchEvent {
+    
+    private final String tier;
+    private final int tierLevel;
+    private final boolean gift;
+    
+    public SubscribeEvent(String userName, String userId, String tier, boolean gift, long receivedAt) {
+        this(userName, userId, null, tier, gift, receivedAt);
+    }
+    
+    public SubscribeEvent(String userName, String userId, String messageId, String tier, boolean gift, long receivedAt) {
+        super(userName, userId, messageId, receivedAt);
+        this.tier = tier;
+        this.tierLevel = tierLevel(tier);
+        this.gift = gift;
+    }
+    
+    @Override
+    public String getType() {
+        return SUBSCRIBE;
+    }
+    
+    // "1000", "2000" or "3000"
+    @Override
+    public String getTier() {
+        return tier;
+    }
+    
+    @Override
+    public int getTierLevel() {
+        return tierLevel;
+    }
+    
+    // Subs that are part of a gift; the gifter's gift_subscription event covers them
+    @Override
+    public boolean isGift() {
+        return gift;
+    }
+}
@@ -0,0 +1,282 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.entity.EntityRegainHealthEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+// Picks the player an event targets. Every index is kept up to date from player events, so
+// resolving a target never scans or copies the online player list. Main thread only.
+public class TargetResolver implements Listener {
+    
+    private final TwitchStreamPlugin plugin;
+    private final Random random = new Random();
+    
+    // Online players by UUID and by lowercased name
+    private final Map<UUID, String> names = new HashMap<>();
+    private final Map<String, Player> byName = new HashMap<>();
+    private final PlayerPool online = new PlayerPool();
+    
+    // Streamer names (lowercased) already reported as offline; each tenant can have its own streamer
+    private final Set<String> streamersMissingLogged = new HashSet<>();
+    
+    // Kills this session (kept across rejoins); the leader is always an online player
+    private final Map<UUID, int[]> kills = new HashMap<>();
+    private Player killLeader;
+    private int leaderKills;
+    
+    // Ordered by health; entries touched by damage/regain are re-read lazily on the next lookup,
+    // once the change has actually been applied to the player
+    private final TreeSet<HealthEntry> byHealth = new TreeSet<>();
+    private final Map<UUID, HealthEntry> healthEntries = new HashMap<>();
+    private final Set<UUID> dirtyHealth = new HashSet<>();
+    
+    public TargetResolver(TwitchStreamPlugin plugin) {
+        this.plugin = plugin;
+        // Players already online when the plugin is (re)loaded
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            addPlayer(player);
+        }
+    }
+    
+    public Player resolve(PluginSettings settings) {
+        switch (settings.getTargetMode()) {
+            case STREAMER:
+                return resolveStreamer(settings.getStreamerUsername(), settings.getStreamerKey());
+            case RANDOM:
+                return randomPlayer();
+            case MOST_KILLS:
+                if (killLeader != null) {
+                    return killLeader;
+                }
+                // Nobody online has a kill yet
+                return randomPlayer();
+            case LEAST_HEALTH:
+                refreshHealth();
+                if (byHealth.isEmpty()) {
+                    plugin.getEventLog().info("target", "No players online to target!");
+                    return null;
+                }
+                return byHealth.first().player;
+            default:
+                plugin.getLogger().warning("Target mode " + settings.getTargetMode() + " is not supported yet");
+                return null;
+        }
+    }
+    
+    private Player resolveStreamer(String streamerName, String key) {
+        // The key is lowercased once at config load, so this is a single map lookup
+        Player streamer = byName.get(key);
+        if (streamer == null && streamersMissingLogged.add(key)) {
+            // Once per absence instead of on every event
+            plugin.getEventLog().warn("target", "Target player '" + streamerName + "' is not online (" + online.size()
+                    + " player(s) online); events are skipped until they join. Check target.streamer_username if they are.");
+        }
+        return streamer;
+    }
+    
+    private Player randomPlayer() {
+        if (online.isEmpty()) {
+            plugin.getEventLog().info("target", "No players online to target!");
+            return null;
+        }
+        return online.get(random.nextInt(online.size()));
+    }
+    
+    // Cached name of an online player, or null
+    public String getName(UUID playerId) {
+        return names.get(playerId);
+    }
+    
+    public int getKills(UUID playerId) {
+        int[] count = kills.get(playerId);
+        return count == null ? 0 : count[0];
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        addPlayer(event.getPlayer());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        Player player = event.getPlayer();
+        UUID id = player.getUniqueId();
+        String name = names.remove(id);
+        if (name != null) {
+            byName.remove(name.toLowerCase(Locale.ROOT));
+        }
+        online.remove(player);
+        
+        if (player == killLeader) {
+            electKillLeader();
+        }
+        
+        HealthEntry entry = healthEntries.remove(id);
+        if (entry != null) {
+            byHealth.remove(entry);
+        }
+        dirtyHealth.remove(id);
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityDeath(EntityDeathEvent event) {
+        if (event.getEntity().getType() == EntityType.PLAYER) {
+            dirtyHealth.add(event.getEntity().getUniqueId());
+        }
+        
+        Player killer = event.getEntity().getKiller();
+        if (killer == null) {
+            return;
+        }
+        int count = ++kills.computeIfAbsent(killer.getUniqueId(), id -> new int[1])[0];
+        if (count > leaderKills) {
+            killLeader = killer;
+            leaderKills = count;
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityDamage(EntityDamageEvent event) {
+        if (event.getEntity().getType() == EntityType.PLAYER) {
+            dirtyHealth.add(event.getEntity().getUniqueId());
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityRegainHealth(EntityRegainHealthEvent event) {
+        if (event.getEntity().getType() == EntityType.PLAYER) {
+            dirtyHealth.add(event.getEntity().getUniqueId());
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        dirtyHealth.add(event.getPlayer().getUniqueId());
+    }
+    
+    private void addPlayer(Player player) {
+        UUID id = player.getUniqueId();
+        String key = player.getName().toLowerCase(Locale.ROOT);
+        names.put(id, player.getName());
+        byName.put(key, player);
+        online.add(player);
+        
+        streamersMissingLogged.remove(key);
+        int[] count = kills.get(id);
+        if (count != null && count[0] > leaderKills) {
+            killLeader = player;
+            leaderKills = count[0];
+        }
+        
+        healthEntries.put(id, new HealthEntry(player));
+        dirtyHealth.add(id);
+    }
+    
+    // Only runs when the leader leaves
+    private void electKillLeader() {
+        killLeader = null;
+        leaderKills = 0;
+        for (int i = 0; i < online.size(); i++) {
+            Player player = online.get(i);
+            int count = getKills(player.getUniqueId());
+            if (count > leaderKills) {
+                killLeader = player;
+                leaderKills = count;
+            }
+        }
+    }
+    
+    private void refreshHealth() {
+        if (dirtyHealth.isEmpty()) {
+            return;
+        }
+        for (UUID id : dirtyHealth) {
+            HealthEntry entry = healthEntries.get(id);
+            if (entry != null) {
+                byHealth.remove(entry);
+                entry.health = entry.player.getHealth();
+                byHealth.add(entry);
+            }
+        }
+        dirtyHealth.clear();
+    }
+    
+    private static final class HealthEntry implements Comparable<HealthEntry> {
+        final Player player;
+        final UUID id;
+        double health;
+        
+        HealthEntry(Player player) {
+            this.player = player;
+            this.id = player.getUniqueId();
+        }
+        
+        @Override
+        public int compareTo(HealthEntry other) {
+            int byHealth = Double.compare(health, other.health);
+            return byHealth != 0 ? byHealth : id.compareTo(other.id);
+        }
+    }
+    
+    // Array of players with O(1) add, swap-remove and random access
+    private static final class PlayerPool {
+        private Player[] players = new Player[16];
+        private final Map<UUID, Integer> index = new HashMap<>();
+        private int size;
+        
+        void add(Player player) {
+            if (index.containsKey(player.getUniqueId())) {
+                return;
+            }
+            if (size == players.length) {
+                players = Arrays.copyOf(players, size * 2);
+            }
+            index.put(player.getUniqueId(), size);
+            players[size++] = player;
+        }
+        
+        void remove(Player player) {
+            Integer slot = index.remove(player.getUniqueId());
+            if (slot == null) {
+                return;
+            }
+            Player last = players[--size];
+            players[size] = null;
+            if (slot != size) {
+                players[slot] = last;
+                index.put(last.getUniqueId(), slot);
+            }
+        }
+        
+        Player get(int i) {
+            return players[i];
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
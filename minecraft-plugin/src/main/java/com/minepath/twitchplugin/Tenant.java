@@ -0,0 +1,77 @@
+package com.minepath.twitchplugin;
+
+// One streamer hosted by this plugin: their settings (the root config with their tenants.<id>
+// keys laid over it), ingest queue, spawn scheduler and metrics. Each tenant drains on its own
+// budget, so a surge on one channel only queues behind itself. The root config is "default".
+public final class Tenant {
+    
+    public static final String DEFAULT = "default";
+    
+    private final String id;
+    private final TwitchStreamPlugin plugin;
+    private final PluginMetrics metrics;
+    private volatile PluginSettings settings;
+    private final IngestQueue ingestQueue;
+    private final SpawnScheduler spawnScheduler;
+    // Main thread only, like the rest of the rule handling
+    private final RuleCooldowns ruleCooldowns = new RuleCooldowns();
+    
+    Tenant(TwitchStreamPlugin plugin, String id, PluginSettings settings, PluginMetrics metrics) {
+        this.plugin = plugin;
+        this.id = id;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.ingestQueue = new IngestQueue(plugin, this);
+        this.spawnScheduler = new SpawnScheduler(plugin, this);
+    }
+    
+    void start() {
+        spawnScheduler.start();
+        ingestQueue.start();
+    }
+    
+    void stop() {
+        ingestQueue.stop();
+        spawnScheduler.stop();
+    }
+    
+    // On /twitchreload; queued events and spawns are kept, cooldowns start over with the new rules
+    void setSettings(PluginSettings settings) {
+        if (settings != this.settings) {
+            ruleCooldowns.clear();
+        }
+        this.settings = settings;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public boolean isDefault() {
+        return DEFAULT.equals(id);
+    }
+    
+    public TwitchStreamPlugin getPlugin() {
+        return plugin;
+    }
+    
+    public PluginSettings getSettings() {
+        return settings;
+    }
+    
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public IngestQueue getIngestQueue() {
+        return ingestQueue;
+    }
+    
+    public SpawnScheduler getSpawnScheduler() {
+        return spawnScheduler;
+    }
+    
+    public RuleCooldowns getRuleCooldowns() {
+        return ruleCooldowns;
+    }
+}
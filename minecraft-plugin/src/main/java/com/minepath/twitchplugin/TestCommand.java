@@ -1,6 +1,5 @@
 package com.minepath.twitchplugin;
 
-import com.google.gson.JsonObject;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -24,55 +23,52 @@ public class TestCommand implements CommandExecutor {
         }
         
         String eventType = args[0].toLowerCase();
-        JsonObject testData = new JsonObject();
+        long now = System.nanoTime();
         
         switch (eventType) {
             case "subscribe":
             case "sub":
-                testData.addProperty("userName", "TestUser");
-                testData.addProperty("userId", "12345");
-                testData.addProperty("tier", "1000");
-                testData.addProperty("isGift", false);
-                plugin.getEventHandler().handleEvent("subscribe", testData);
+                plugin.getEventHandler().handleEvent(new SubscribeEvent("TestUser", "12345", "1000", false, now));
                 sender.sendMessage(ChatColor.GREEN + "Triggered test subscription event!");
                 break;
                 
             case "gift":
             case "gift_subscription":
-                testData.addProperty("userName", "TestGifter");
-                testData.addProperty("userId", "12345");
-                testData.addProperty("total", 5);
-                testData.addProperty("tier", "1000");
-                plugin.getEventHandler().handleEvent("gift_subscription", testData);
+                plugin.getEventHandler().handleEvent(new GiftSubscriptionEvent("TestGifter", "12345", 5, "1000", now));
                 sender.sendMessage(ChatColor.GREEN + "Triggered test gift subscription event!");
                 break;
                 
             case "cheer":
             case "bits":
-                testData.addProperty("userName", "TestCheerer");
-                testData.addProperty("userId", "12345");
-                testData.addProperty("bits", 500);
-                testData.addProperty("message", "Test cheer message!");
-                plugin.getEventHandler().handleEvent("cheer", testData);
+                plugin.getEventHandler().handleEvent(new CheerEvent("TestCheerer", "12345", 500, "Test cheer message!", now));
                 sender.sendMessage(ChatColor.GREEN + "Triggered test cheer event!");
                 break;
                 
             case "raid":
-                testData.addProperty("fromBroadcasterName", "TestRaider");
-                testData.addProperty("viewers", 100);
-                plugin.getEventHandler().handleEvent("raid", testData);
+                plugin.getEventHandler().handleEvent(new RaidEvent("TestRaider", "12345", 100, now));
                 sender.sendMessage(ChatColor.GREEN + "Triggered test raid event!");
                 break;
                 
             case "follow":
-                testData.addProperty("userName", "TestFollower");
-                testData.addProperty("userId", "12345");
-                testData.addProperty("followedAt", "2024-01-01T00:00:00Z");
-                plugin.getEventHandler().handleEvent("follow", testData);
+                plugin.getEventHandler().handleEvent(new FollowEvent("TestFollower", "12345", "2024-01-01T00:00:00Z", now));
                 sender.sendMessage(ChatColor.GREEN + "Triggered test follow event!");
                 break;
                 
             default:
+                // Custom types configured under events: with rules; an optional second argument is the amount
+                if (plugin.getSettings().getEvent(eventType) != null) {
+                    int amount = 1;
+                    if (args.length > 1) {
+                        try {
+                            amount = Math.max(1, Integer.parseInt(args[1]));
+                        } catch (NumberFormatException ignored) {
+                            // keep 1
+                        }
+                    }
+                    plugin.getEventHandler().handleEvent(new GenericEvent(eventType, "TestUser", "12345", null, amount, null, null, now));
+                    sender.sendMessage(ChatColor.GREEN + "Triggered test " + eventType + " event!");
+                    return true;
+                }
                 sender.sendMessage(ChatColor.RED + "Unknown event type: " + eventType);
                 sender.sendMessage(ChatColor.YELLOW + "Available events: subscribe, gift, cheer, raid, follow");
                 return true;
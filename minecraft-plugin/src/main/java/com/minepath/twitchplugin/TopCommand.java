@@ -0,0 +1,70 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+
+// /twitchtop [events|mobs|<event type>] [tenant]: top viewers and mobs per hour over the history
+// window, from the sums EventHistory keeps in memory
+public class TopCommand implements CommandExecutor {
+    
+    private static final int LIMIT = 10;
+    // Hours listed in the mobs per hour line
+    private static final int HOURS = 6;
+    private static final DateTimeFormatter HOUR = DateTimeFormatter.ofPattern("HH:mm").withZone(ZoneId.systemDefault());
+    
+    private final TwitchStreamPlugin plugin;
+    
+    public TopCommand(TwitchStreamPlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        EventHistory history = plugin.getHistory();
+        if (history == null) {
+            sender.sendMessage(ChatColor.RED + "Event history is disabled (history.enabled in config.yml)");
+            return true;
+        }
+        String metric = args.length > 0 ? args[0].toLowerCase(Locale.ROOT) : EventHistory.EVENTS;
+        String tenant = args.length > 1 ? args[1].toLowerCase(Locale.ROOT) : Tenant.DEFAULT;
+        if (plugin.getTenant(tenant) == null) {
+            sender.sendMessage(ChatColor.RED + "Unknown tenant: " + args[1]);
+            sender.sendMessage(ChatColor.YELLOW + "Tenants: " + String.join(", ", plugin.getTenants().keySet()));
+            return true;
+        }
+        
+        List<EventHistory.ViewerTotal> top = history.top(tenant, metric, LIMIT);
+        sender.sendMessage(ChatColor.GOLD + "Top viewers by " + metric + ", last " + history.getWindowHours() + "h"
+                + (Tenant.DEFAULT.equals(tenant) ? "" : " (" + tenant + ")") + ":");
+        if (top.isEmpty()) {
+            sender.sendMessage(ChatColor.GRAY + "  Nothing yet. Rank by: " + EventHistory.EVENTS + ", " + EventHistory.MOBS
+                    + (history.types(tenant).isEmpty() ? "" : ", " + String.join(", ", history.types(tenant))));
+        }
+        for (int i = 0; i < top.size(); i++) {
+            EventHistory.ViewerTotal viewer = top.get(i);
+            sender.sendMessage(ChatColor.YELLOW + "  " + (i + 1) + ". " + ChatColor.WHITE + viewer.getName()
+                    + ChatColor.GRAY + " " + viewer.getValue());
+        }
+        
+        List<EventHistory.HourTotal> hours = history.hourly(tenant);
+        if (!hours.isEmpty()) {
+            StringBuilder line = new StringBuilder();
+            for (EventHistory.HourTotal hour : hours.subList(Math.max(0, hours.size() - HOURS), hours.size())) {
+                if (line.length() > 0) {
+                    line.append(", ");
+                }
+                line.append(HOUR.format(Instant.ofEpochMilli(hour.getStartMillis()))).append(' ').append(hour.getMobs());
+            }
+            sender.sendMessage(ChatColor.GOLD + "Mobs per hour: " + ChatColor.WHITE + line);
+        }
+        return true;
+    }
+}
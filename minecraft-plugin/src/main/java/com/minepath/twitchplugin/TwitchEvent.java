@@ -0,0 +1,101 @@
+package com.minepath.twitchplugin;
+
+import java.util.Locale;
+
+// Immutable, decoded Twitch event. Subclasses carry the fields of one event type.
+public abstract class TwitchEvent {
+    
+    public static final String SUBSCRIBE = "subscribe";
+    public static final String GIFT_SUBSCRIPTION = "gift_subscription";
+    public static final String CHEER = "cheer";
+    public static final String RAID = "raid";
+    public static final String FOLLOW = "follow";
+    
+    // Tier levels, so rules compare tiers as ints: 1-3 for "1000"-"3000", TIER_PRIME for "prime"
+    public static final int TIER_NONE = 0;
+    public static final int TIER_PRIME = 4;
+    
+    private final String userName;
+    private final String userId;
+    private final String messageId;
+    private final long receivedAt;
+    
+    protected TwitchEvent(String userName, String userId, String messageId, long receivedAt) {
+        this.userName = userName;
+        this.userId = userId;
+        this.messageId = messageId;
+        this.receivedAt = receivedAt;
+    }
+    
+    public abstract String getType();
+    
+    // Twitch display name of whoever triggered the event (the raiding broadcaster for raids)
+    public String getUserName() {
+        return userName;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    // Twitch EventSub message ID used for de-duplication, or null if the sender gave none
+    public String getMessageId() {
+        return messageId;
+    }
+    
+    // System.nanoTime() when the event was decoded
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+    
+    // Main quantity of the event: gifted subs, bits or raid viewers; 1 for single actions
+    public int getAmount() {
+        return 1;
+    }
+    
+    // Subscription tier ("1000", "2000", "3000" or "prime") for events that have one, else null
+    public String getTier() {
+        return null;
+    }
+    
+    // getTier() as parsed by tierLevel, worked out when the event is built
+    public int getTierLevel() {
+        return TIER_NONE;
+    }
+    
+    // "1000", "1" and "tier1" are 1 (likewise 2 and 3), "prime" is TIER_PRIME; anything else,
+    // null included, is TIER_NONE
+    public static int tierLevel(String tier) {
+        if (tier == null) {
+            return TIER_NONE;
+        }
+        String t = tier.trim().toLowerCase(Locale.ROOT);
+        if (t.startsWith("tier")) {
+            t = t.substring(4).trim();
+        }
+        switch (t) {
+            case "1":
+            case "1000":
+                return 1;
+            case "2":
+            case "2000":
+                return 2;
+            case "3":
+            case "3000":
+                return 3;
+            case "prime":
+                return TIER_PRIME;
+            default:
+                return TIER_NONE;
+        }
+    }
+    
+    public boolean isGift() {
+        return false;
+    }
+    
+    @Override
+    public String toString() {
+        return getType() + "{user=" + userName + ", amount=" + getAmount() + "}";
+    }
+}
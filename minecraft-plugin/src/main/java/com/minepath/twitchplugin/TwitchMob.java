@@ -0,0 +1,55 @@
+package com.minepath.twitchplugin;
+
+import java.util.UUID;
+
+// What the registry knows about one live Twitch mob
+public final class TwitchMob {
+    
+    private final int entityId;
+    private final UUID entityUuid;
+    private final UUID targetId;
+    private final String eventType;
+    private final String userName;
+    private final long spawnedAt;
+    // Chunk the mob was last seen in; refreshed by the registry sweep
+    UUID worldId;
+    long chunkKey;
+    
+    TwitchMob(int entityId, UUID entityUuid, UUID targetId, String eventType, String userName,
+              long spawnedAt, UUID worldId, long chunkKey) {
+        this.entityId = entityId;
+        this.entityUuid = entityUuid;
+        this.targetId = targetId;
+        this.eventType = eventType;
+        this.userName = userName;
+        this.spawnedAt = spawnedAt;
+        this.worldId = worldId;
+        this.chunkKey = chunkKey;
+    }
+    
+    public int getEntityId() {
+        return entityId;
+    }
+    
+    public UUID getEntityUuid() {
+        return entityUuid;
+    }
+    
+    // Player the mob was spawned for
+    public UUID getTargetId() {
+        return targetId;
+    }
+    
+    public String getEventType() {
+        return eventType;
+    }
+    
+    public String getUserName() {
+        return userName;
+    }
+    
+    // System.currentTimeMillis() at spawn
+    public long getSpawnedAt() {
+        return spawnedAt;
+    }
+}
@@ -0,0 +1,219 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Tracks every live Twitch mob by entity ID so caps and lookups are O(1), and removes mobs
+// that outlive mobs.ttl_seconds. Main thread only.
+public class TwitchMobRegistry implements Listener, Runnable {
+    
+    private final TwitchStreamPlugin plugin;
+    private final IntObjectMap<TwitchMob> mobs = new IntObjectMap<>(256);
+    private final Map<UUID, int[]> perPlayer = new HashMap<>();
+    // World -> chunk key -> mobs in that chunk as of spawn or the last sweep
+    private final Map<UUID, Map<Long, int[]>> perChunk = new HashMap<>();
+    private BukkitTask task;
+    private long lastSweep;
+    
+    public TwitchMobRegistry(TwitchStreamPlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    public void start() {
+        if (task == null) {
+            lastSweep = System.currentTimeMillis();
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this, 20L, 20L);
+        }
+    }
+    
+    // Removes every tracked mob; they are not saved with the world, so they would be lost anyway
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        mobs.forEach((id, mob) -> {
+            Entity entity = Bukkit.getEntity(mob.getEntityUuid());
+            if (entity != null) {
+                entity.remove();
+            }
+        });
+        mobs.clear();
+        perPlayer.clear();
+        perChunk.clear();
+    }
+    
+    // Null if a mob may spawn at the location for this player, otherwise the name of the cap hit
+    public String checkCaps(Player target, Location location) {
+        PluginSettings settings = plugin.getSettings();
+        if (settings.getMaxAliveMobs() > 0 && mobs.size() >= settings.getMaxAliveMobs()) {
+            return "mobs.max_alive";
+        }
+        if (settings.getMaxMobsPerPlayer() > 0 && getCountFor(target.getUniqueId()) >= settings.getMaxMobsPerPlayer()) {
+            return "mobs.max_per_player";
+        }
+        if (settings.getMaxMobsPerChunk() > 0 && count(perChunk.get(location.getWorld().getUID()),
+                chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4)) >= settings.getMaxMobsPerChunk()) {
+            return "mobs.max_per_chunk";
+        }
+        return null;
+    }
+    
+    public void register(LivingEntity entity, Player target, String eventType, String userName) {
+        Location location = entity.getLocation();
+        TwitchMob mob = new TwitchMob(entity.getEntityId(), entity.getUniqueId(), target.getUniqueId(), eventType, userName,
+                System.currentTimeMillis(), location.getWorld().getUID(),
+                chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4));
+                
+        // Never written to disk: a restart or unload cannot leave untracked Twitch mobs behind
+        entity.setPersistent(false);
+        
+        TwitchMob previous = mobs.put(mob.getEntityId(), mob);
+        if (previous != null) {
+            uncount(previous);
+        }
+        perPlayer.computeIfAbsent(mob.getTargetId(), id -> new int[1])[0]++;
+        countChunk(mob);
+    }
+    
+    public TwitchMob get(int entityId) {
+        return mobs.get(entityId);
+    }
+    
+    public TwitchMob get(Entity entity) {
+        return mobs.get(entity.getEntityId());
+    }
+    
+    public boolean isTwitchMob(Entity entity) {
+        return mobs.containsKey(entity.getEntityId());
+    }
+    
+    public int getAliveCount() {
+        return mobs.size();
+    }
+    
+    // Live mobs spawned for this player
+    public int getCountFor(UUID playerId) {
+        int[] count = perPlayer.get(playerId);
+        return count == null ? 0 : count[0];
+    }
+    
+    public int getCountInChunk(UUID worldId, int chunkX, int chunkZ) {
+        return count(perChunk.get(worldId), chunkKey(chunkX, chunkZ));
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityDeath(EntityDeathEvent event) {
+        unregister(event.getEntity().getEntityId());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesUnload(EntitiesUnloadEvent event) {
+        if (mobs.isEmpty()) {
+            return;
+        }
+        for (Entity entity : event.getEntities()) {
+            unregister(entity.getEntityId());
+        }
+    }
+    
+    private void unregister(int entityId) {
+        TwitchMob mob = mobs.remove(entityId);
+        if (mob != null) {
+            uncount(mob);
+        }
+    }
+    
+    // Once a second: after mobs.sweep_interval_seconds, drop mobs removed without an event,
+    // despawn expired ones and rebuild the chunk counts from where mobs actually are now
+    @Override
+    public void run() {
+        PluginSettings settings = plugin.getSettings();
+        long now = System.currentTimeMillis();
+        if (mobs.isEmpty() || now - lastSweep < settings.getMobSweepIntervalMillis()) {
+            return;
+        }
+        lastSweep = now;
+        
+        long ttl = settings.getMobTtlMillis();
+        int[] gone = new int[mobs.size()];
+        int[] goneCount = new int[2];
+        perChunk.clear();
+        mobs.forEach((id, mob) -> {
+            Entity entity = Bukkit.getEntity(mob.getEntityUuid());
+            if (entity == null || !entity.isValid()) {
+                gone[goneCount[0]++] = id;
+                return;
+            }
+            if (ttl > 0 && now - mob.getSpawnedAt() >= ttl) {
+                entity.remove();
+                gone[goneCount[0]++] = id;
+                goneCount[1]++;
+                return;
+            }
+            Location location = entity.getLocation();
+            mob.worldId = location.getWorld().getUID();
+            mob.chunkKey = chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+            countChunk(mob);
+        });
+        
+        // Chunk counts were rebuilt above without the removed mobs, so only players need adjusting
+        for (int i = 0; i < goneCount[0]; i++) {
+            TwitchMob mob = mobs.remove(gone[i]);
+            decrement(perPlayer, mob.getTargetId());
+        }
+        
+        if (goneCount[1] > 0) {
+            plugin.getEventLog().info("mobs", "Despawned " + goneCount[1] + " Twitch mob(s) past their TTL, "
+                    + mobs.size() + " still alive");
+        }
+    }
+    
+    private void countChunk(TwitchMob mob) {
+        perChunk.computeIfAbsent(mob.worldId, id -> new HashMap<>())
+                .computeIfAbsent(mob.chunkKey, key -> new int[1])[0]++;
+    }
+    
+    private void uncount(TwitchMob mob) {
+        decrement(perPlayer, mob.getTargetId());
+        Map<Long, int[]> chunks = perChunk.get(mob.worldId);
+        if (chunks != null) {
+            decrement(chunks, mob.chunkKey);
+            if (chunks.isEmpty()) {
+                perChunk.remove(mob.worldId);
+            }
+        }
+    }
+    
+    private static <K> void decrement(Map<K, int[]> counts, K key) {
+        int[] count = counts.get(key);
+        if (count != null && --count[0] <= 0) {
+            counts.remove(key);
+        }
+    }
+    
+    private static int count(Map<Long, int[]> chunks, long key) {
+        if (chunks == null) {
+            return 0;
+        }
+        int[] count = chunks.get(key);
+        return count == null ? 0 : count[0];
+    }
+    
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkZ << 32) | (chunkX & 0xFFFFFFFFL);
+    }
+}
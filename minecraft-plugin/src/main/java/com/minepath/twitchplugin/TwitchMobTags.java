@@ -0,0 +1,31 @@
+package com.minepath.twitchplugin;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Entity;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+
+// PersistentDataContainer keys that mark an entity as spawned by a Twitch event. Hit handling reads
+// the tag straight off the entity; counts, caps and the despawn sweep use TwitchMobRegistry.
+public class TwitchMobTags {
+    
+    private final NamespacedKey eventKey;
+    private final NamespacedKey userKey;
+    
+    public TwitchMobTags(TwitchStreamPlugin plugin) {
+        this.eventKey = new NamespacedKey(plugin, "twitch_event");
+        this.userKey = new NamespacedKey(plugin, "twitch_user");
+    }
+    
+    public void tag(Entity entity, String eventType, String userName) {
+        PersistentDataContainer data = entity.getPersistentDataContainer();
+        data.set(eventKey, PersistentDataType.STRING, eventType);
+        data.set(userKey, PersistentDataType.STRING, userName);
+    }
+    
+    // Twitch user the entity was spawned for, or null for regular entities. A single container
+    // lookup, cheap enough for MobAttackListener to run on every hit.
+    public String getUser(Entity entity) {
+        return entity.getPersistentDataContainer().get(userKey, PersistentDataType.STRING);
+    }
+}
@@ -1,52 +1,110 @@
 package com.minepath.twitchplugin;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import com.sun.net.httpserver.HttpServer;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
-import org.bukkit.Bukkit;
-import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.InetSocketAddress;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 
 public class TwitchStreamPlugin extends JavaPlugin {
     
-    private HttpServer server;
-    private Gson gson;
+    private IngestServer server;
+    private StreamServer streamServer;
+    private EventDecoder decoder;
+    private volatile PluginSettings settings;
     private EventHandler eventHandler;
+    private Tenant defaultTenant;
+    // Replaced as a whole on reload; read by the HTTP threads
+    private volatile Map<String, Tenant> tenants = Collections.emptyMap();
+    private TwitchMobTags mobTags;
+    private TwitchMobRegistry mobRegistry;
+    private TargetResolver targetResolver;
+    private SpawnPlanner spawnPlanner;
+    private EventLog eventLog;
+    private EventJournal journal;
+    private EventHistory history;
+    private final PluginMetrics metrics = new PluginMetrics();
     
     @Override
     public void onEnable() {
         // Save default config
         saveDefaultConfig();
         
+        // Compile config; fall back to the bundled defaults if the file has bad values
+        try {
+            settings = PluginSettings.compile(getConfig());
+        } catch (IllegalArgumentException e) {
+            getLogger().severe("Invalid config.yml, using defaults: " + e.getMessage());
+            settings = PluginSettings.compile(getConfig().getDefaults());
+        }
+        
         // Initialize
-        gson = new Gson();
+        eventLog = new EventLog(this, settings.getLogRingSize());
+        eventLog.start();
+        // Unknown event types are accepted when the current config has rules for them
+        decoder = new EventDecoder(this::isConfiguredType);
+        mobTags = new TwitchMobTags(this);
+        mobRegistry = new TwitchMobRegistry(this);
+        mobRegistry.start();
+        targetResolver = new TargetResolver(this);
         eventHandler = new EventHandler(this);
+        spawnPlanner = new SpawnPlanner();
+        defaultTenant = new Tenant(this, Tenant.DEFAULT, settings, metrics);
+        registerTenantGauges(defaultTenant);
+        syncTenants();
+        openJournal();
+        openHistory();
+        for (Tenant tenant : tenants.values()) {
+            tenant.start();
+        }
         
         // Register commands
         getCommand("twitchtest").setExecutor(new TestCommand(this));
         getCommand("twitchreload").setExecutor(new ReloadCommand(this));
+        getCommand("twitchlog").setExecutor(new LogCommand(this));
+        getCommand("twitchstats").setExecutor(new StatsCommand(this));
+        getCommand("twitchtop").setExecutor(new TopCommand(this));
         
         // Register event listeners for mining slowdown
         getServer().getPluginManager().registerEvents(new MobAttackListener(this), this);
+        getServer().getPluginManager().registerEvents(mobRegistry, this);
+        getServer().getPluginManager().registerEvents(targetResolver, this);
+        getServer().getPluginManager().registerEvents(spawnPlanner, this);
         
         // Start HTTP server
         startHttpServer();
+        startStreamServer();
         
         getLogger().info("TwitchStreamPlugin has been enabled!");
         
         // Show configuration info
-        String targetMode = getConfig().getString("target.mode", "streamer");
-        String streamerName = getConfig().getString("target.streamer_username", "NOT_SET");
-        getLogger().info("Target mode: " + targetMode);
-        getLogger().info("Target player: " + streamerName);
+        getLogger().info("Target mode: " + settings.getTargetMode().name().toLowerCase());
+        getLogger().info("Target player: " + settings.getStreamerUsername());
+        if (tenants.size() > 1) {
+            getLogger().info("Tenants: " + String.join(", ", tenants.keySet()));
+        }
         getLogger().warning("Make sure to set 'target.streamer_username' in config.yml to your Minecraft username!");
     }
     
@@ -54,97 +112,602 @@ public class TwitchStreamPlugin extends JavaPlugin {
     public void onDisable() {
         // Stop HTTP server
         if (server != null) {
-            server.stop(0);
+            server.stop();
             getLogger().info("HTTP server stopped");
         }
+        if (streamServer != null) {
+            streamServer.stop();
+        }
+        
+        for (Tenant tenant : tenants.values()) {
+            tenant.stop();
+        }
+        
+        if (journal != null) {
+            journal.stop();
+        }
+        
+        if (history != null) {
+            history.stop();
+        }
+        
+        if (mobRegistry != null) {
+            mobRegistry.stop();
+        }
+        
+        if (eventLog != null) {
+            eventLog.stop();
+        }
         
         getLogger().info("TwitchStreamPlugin has been disabled!");
     }
     
+    // Brings the tenants in line with settings.getTenants(): new ones are created (and started once
+    // the plugin is running), existing ones get their new settings and removed ones are stopped
+    private void syncTenants() {
+        Map<String, Tenant> current = tenants;
+        Map<String, Tenant> next = new LinkedHashMap<>();
+        next.put(Tenant.DEFAULT, defaultTenant);
+        for (Map.Entry<String, PluginSettings> entry : settings.getTenants().entrySet()) {
+            Tenant tenant = current.get(entry.getKey());
+            if (tenant != null) {
+                tenant.setSettings(entry.getValue());
+            } else {
+                tenant = new Tenant(this, entry.getKey(), entry.getValue(), metrics.forTenant(entry.getKey()));
+                registerTenantGauges(tenant);
+                if (!current.isEmpty()) {
+                    tenant.start();
+                }
+            }
+            next.put(entry.getKey(), tenant);
+        }
+        tenants = Collections.unmodifiableMap(next);
+        
+        for (Tenant removed : current.values()) {
+            if (!next.containsKey(removed.getId())) {
+                removed.stop();
+                metrics.removeTenant(removed.getId());
+                getLogger().info("Tenant " + removed.getId() + " was removed from the config and has been stopped");
+            }
+        }
+    }
+    
+    // A type that some tenant's config has rules for
+    private boolean isConfiguredType(String type) {
+        for (Tenant tenant : tenants.values()) {
+            if (tenant.getSettings().getEvent(type) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Replays what the last run left incomplete; on failure the plugin runs without a journal.
+    // Entries go back to the tenant they were accepted for, or the default one if it is gone.
+    private void openJournal() {
+        if (!settings.isJournalEnabled()) {
+            return;
+        }
+        EventJournal opened = new EventJournal(new File(getDataFolder(), "journal"),
+                settings.getJournalSegmentBytes(), settings.getJournalFlushNanos());
+        try {
+            List<EventJournal.Entry> incomplete = opened.open();
+            opened.start();
+            journal = opened;
+            if (!incomplete.isEmpty()) {
+                Map<Tenant, List<EventJournal.Entry>> byTenant = new LinkedHashMap<>();
+                for (EventJournal.Entry entry : incomplete) {
+                    Tenant tenant = null;
+                    try {
+                        String id = EventDecoder.readTenant(new ByteArrayInputStream(entry.getPayload()));
+                        tenant = id != null ? tenants.get(id) : null;
+                    } catch (IOException | RuntimeException e) {
+                        // replay() reports and drops entries it cannot read
+                    }
+                    byTenant.computeIfAbsent(tenant != null ? tenant : defaultTenant, t -> new ArrayList<>()).add(entry);
+                }
+                int replayed = 0;
+                for (Map.Entry<Tenant, List<EventJournal.Entry>> entry : byTenant.entrySet()) {
+                    replayed += entry.getKey().getIngestQueue().replay(entry.getValue(), decoder);
+                }
+                getLogger().info("Replaying " + replayed + " event(s) left unfinished by the last run");
+            }
+        } catch (IOException e) {
+            getLogger().severe("Could not open the event journal, events will not survive a restart: " + e.getMessage());
+        }
+    }
+    
+    // Without a history /twitchtop and /stats have nothing to show, the plugin runs on regardless
+    private void openHistory() {
+        if (!settings.isHistoryEnabled()) {
+            return;
+        }
+        EventHistory opened = new EventHistory(getLogger(), new File(getDataFolder(), "history"),
+                settings.getHistoryWindowHours(), settings.getHistoryRetentionDays(),
+                settings.getHistoryFlushMillis(), settings.getHistoryMaxPending());
+        try {
+            opened.start();
+            history = opened;
+        } catch (IOException e) {
+            getLogger().severe("Could not open the event history: " + e.getMessage());
+        }
+    }
+    
     private void startHttpServer() {
         try {
-            int port = getConfig().getInt("server.port", 8080);
-            String host = getConfig().getString("server.host", "0.0.0.0");
-            
-            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+            ConfigurationSection serverConfig = getConfig().getConfigurationSection("server");
+            server = new IngestServer(getLogger(), serverConfig != null ? serverConfig : new MemoryConfiguration());
+            server.start();
             
             // Register endpoints
             server.createContext("/twitch-event", new TwitchEventHandler());
+            server.createContext("/twitch-events", new BatchEventHandler());
             server.createContext("/health", new HealthCheckHandler());
+            server.createContext("/metrics", new MetricsHandler());
+            server.createContext("/stats", new StatsHandler());
             
-            server.setExecutor(null); // Use default executor
-            server.start();
-            
-            getLogger().info("HTTP server started on " + host + ":" + port);
+            server.listen();
+            registerGauges();
         } catch (IOException e) {
             getLogger().severe("Failed to start HTTP server: " + e.getMessage());
             e.printStackTrace();
         }
     }
     
+    // Persistent event connections for the backend, next to the HTTP endpoints (stream.* in config.yml)
+    private void startStreamServer() {
+        ConfigurationSection streamConfig = getConfig().getConfigurationSection("stream");
+        if (streamConfig == null || !streamConfig.getBoolean("enabled", false)) {
+            return;
+        }
+        try {
+            streamServer = new StreamServer(getLogger(), streamConfig, (tenant, userName, userId) -> {
+                Tenant routed = route(tenant, userName, userId);
+                return routed != null ? new StreamSink(tenant, userName, userId) : null;
+            });
+            streamServer.start();
+            metrics.addGauge("twitch_stream_connections", "Open event stream connections", streamServer::getConnectionCount);
+        } catch (IOException e) {
+            getLogger().severe("Failed to start the event stream: " + e.getMessage());
+            streamServer = null;
+        }
+    }
+    
+    // Gauges read main-thread state without locking; a slightly stale value is fine for a scrape
+    private void registerGauges() {
+        metrics.addGauge("twitch_mobs_alive", "Live Twitch mobs", mobRegistry::getAliveCount);
+        metrics.addGauge("twitch_spawn_planner_chunks", "Chunks with a cached spawn-spot scan", spawnPlanner::getCachedChunks);
+        if (journal != null) {
+            metrics.addGauge("twitch_journal_pending", "Journaled events not yet completed", journal::getPendingCount);
+            metrics.addGauge("twitch_journal_segments", "Journal segment files", journal::getSegmentCount);
+        }
+        if (history != null) {
+            metrics.addGauge("twitch_history_pending", "History records waiting for the writer", history::getPendingCount);
+            metrics.addGauge("twitch_history_dropped", "History records dropped because the writer fell behind",
+                    history::getDroppedCount);
+        }
+        metrics.addGauge("twitch_http_rejected", "Requests answered 503 because the HTTP pool was saturated",
+                server::getRejectedCount);
+        if (server.getExecutor() instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) server.getExecutor();
+            metrics.addGauge("twitch_http_threads_active", "HTTP worker threads busy", pool::getActiveCount);
+            metrics.addGauge("twitch_http_threads_max", "HTTP worker thread limit", pool::getMaximumPoolSize);
+            metrics.addGauge("twitch_http_queue_depth", "Requests waiting for an HTTP worker", () -> pool.getQueue().size());
+            metrics.addGauge("twitch_http_queue_remaining", "Free slots in the HTTP request queue",
+                    () -> pool.getQueue().remainingCapacity());
+        }
+    }
+    
+    // Exported with a tenant label for every tenant but the default one
+    private void registerTenantGauges(Tenant tenant) {
+        PluginMetrics scope = tenant.getMetrics();
+        IngestQueue ingestQueue = tenant.getIngestQueue();
+        SpawnScheduler spawnScheduler = tenant.getSpawnScheduler();
+        scope.addGauge("twitch_ingest_queue_depth", "Events waiting for the main thread", ingestQueue::getDepth);
+        scope.addGauge("twitch_ingest_queue_capacity", "Ingest queue capacity", ingestQueue::getCapacity);
+        scope.addGauge("twitch_spawn_queue_depth", "Mobs waiting to be spawned", spawnScheduler::getQueueDepth);
+        scope.addGauge("twitch_spawn_waiting_viewers", "Viewers with mobs waiting to be spawned", spawnScheduler::getWaitingViewers);
+        scope.addGauge("twitch_spawn_last_tick_seconds", "Spawn time in the last tick",
+                () -> spawnScheduler.getLastTickNanos() / 1e9);
+        scope.addGauge("twitch_dedup_entries", "Message IDs remembered for de-duplication", ingestQueue::getDedupSize);
+    }
+    
+    // Reloads config.yml and swaps in the new snapshot; on invalid values the old one stays active
+    public void reloadPluginConfig() {
+        reloadConfig();
+        settings = PluginSettings.compile(getConfig());
+        defaultTenant.setSettings(settings);
+        syncTenants();
+    }
+    
+    // Tenant for a request. /twitch-event/<id> (or /twitch-events/<id>) and the X-Tenant-ID header
+    // name one directly; otherwise the X-User-Name and X-User-ID headers the backend sends are looked
+    // up in tenants.<id>.accounts and user_ids, and anything unmatched goes to the default tenant.
+    // Returns null for an explicit ID that is not configured.
+    private Tenant route(HttpExchange exchange, String context) {
+        Headers headers = exchange.getRequestHeaders();
+        String path = exchange.getRequestURI().getPath();
+        String id = path.startsWith(context + "/") && path.length() > context.length() + 1
+                ? path.substring(context.length() + 1) : headers.getFirst("X-Tenant-ID");
+        return route(id, headers.getFirst("X-User-Name"), headers.getFirst("X-User-ID"));
+    }
+    
+    // Shared by HTTP requests and stream connections
+    private Tenant route(String id, String userName, String userId) {
+        Map<String, Tenant> current = tenants;
+        if (id != null) {
+            return current.get(id.toLowerCase(Locale.ROOT));
+        }
+        String routed = settings.routeTenant(userName, userId);
+        Tenant tenant = routed != null ? current.get(routed) : null;
+        return tenant != null ? tenant : defaultTenant;
+    }
+    
+    public PluginSettings getSettings() {
+        return settings;
+    }
+    
     public EventHandler getEventHandler() {
         return eventHandler;
     }
     
+    public TwitchMobTags getMobTags() {
+        return mobTags;
+    }
+    
+    public SpawnPlanner getSpawnPlanner() {
+        return spawnPlanner;
+    }
+    
+    public TwitchMobRegistry getMobRegistry() {
+        return mobRegistry;
+    }
+    
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+    
+    public TargetResolver getTargetResolver() {
+        return targetResolver;
+    }
+    
+    // The tenant configured at the root of config.yml
+    public Tenant getDefaultTenant() {
+        return defaultTenant;
+    }
+    
+    // null if no such tenant is configured
+    public Tenant getTenant(String id) {
+        return tenants.get(id);
+    }
+    
+    // The default tenant first, then tenants.<id> in config order
+    public Map<String, Tenant> getTenants() {
+        return tenants;
+    }
+    
+    // null when the journal is disabled or could not be opened
+    public EventJournal getJournal() {
+        return journal;
+    }
+    
+    // null when the history is disabled or could not be opened
+    public EventHistory getHistory() {
+        return history;
+    }
+    
     // HTTP Handler for Twitch events
     private class TwitchEventHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            if ("POST".equals(exchange.getRequestMethod())) {
+            try {
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    // Method not allowed
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                
+                Tenant tenant = route(exchange, "/twitch-event");
+                if (tenant == null) {
+                    server.sendStatus(exchange, 404, "error", "Unknown tenant");
+                    return;
+                }
+                IngestQueue ingestQueue = tenant.getIngestQueue();
+                
+                // Decode straight from the request stream (bounded by server.max_body_bytes)
+                TwitchEvent event = decoder.decode(server.openBody(exchange),
+                        exchange.getRequestHeaders().getFirst("Twitch-Eventsub-Message-Id"));
+                        
+                // Always kept in the log ring; printed only with debug.log_events
+                eventLog.log(settings.isLogEvents() ? EventLog.Level.INFO : EventLog.Level.DEBUG, "http", "Received", event, null);
+                
+                // Hand off to the main thread; back off instead of piling up tasks when full
+                switch (ingestQueue.admit(event)) {
+                    case DUPLICATE:
+                        // Already received under this message ID: acknowledge so the sender stops retrying
+                        server.sendStatus(exchange, 200, "duplicate", "Event already received");
+                        break;
+                    case RATE_LIMITED:
+                        exchange.getResponseHeaders().set("Retry-After",
+                                String.valueOf(ingestQueue.getRetryAfterSeconds(event)));
+                        server.sendStatus(exchange, 429, "error", "Rate limit exceeded for " + event.getUserName());
+                        break;
+                    case FULL:
+                        exchange.getResponseHeaders().set("Retry-After",
+                                String.valueOf(tenant.getSettings().getRetryAfterSeconds()));
+                        server.sendStatus(exchange, 503, "error", "Event queue full");
+                        break;
+                    default:
+                        server.sendStatus(exchange, 200, "success", "Event queued");
+                }
+                
+            } catch (IngestServer.BodyTooLargeException e) {
+                exchange.getResponseHeaders().set("Connection", "close");
+                server.sendStatus(exchange, 413, "error", e.getMessage());
+            } catch (JsonParseException | IllegalStateException | MalformedJsonException | EOFException e) {
+                metrics.invalid();
+                eventLog.warn("http", "Rejected malformed event: " + e.getMessage());
+                server.sendStatus(exchange, 400, "error", "Malformed event: " + e.getMessage());
+            } catch (Exception e) {
+                eventLog.warn("http", "Error processing event: " + e.getMessage(), e);
+                server.sendStatus(exchange, 500, "error", String.valueOf(e.getMessage()));
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+    
+    // HTTP Handler for batches: a JSON array or newline-delimited JSON of events, parsed as a stream
+    private class BatchEventHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                
+                Tenant tenant = route(exchange, "/twitch-events");
+                if (tenant == null) {
+                    server.sendStatus(exchange, 404, "error", "Unknown tenant");
+                    return;
+                }
+                IngestQueue ingestQueue = tenant.getIngestQueue();
+                
+                JsonArray results = new JsonArray();
+                int queued = 0;
+                int duplicates = 0;
+                int full = 0;
+                int retryAfter = 0;
+                String streamError = null;
+                
+                // Buffered whole first: a 413 must not follow items that were already queued, or the
+                // sender's retry of the batch would admit them twice
+                byte[] body = server.readBatchBody(exchange);
+                JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+                // Lenient mode accepts several top-level values, which is what NDJSON is
+                reader.setLenient(true);
                 try {
-                    // Read request body
-                    InputStream is = exchange.getRequestBody();
-                    String body = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-                    
-                    if (getConfig().getBoolean("debug.log_events", true)) {
-                        getLogger().info("Received event: " + body);
+                    boolean array = reader.peek() == JsonToken.BEGIN_ARRAY;
+                    if (array) {
+                        reader.beginArray();
+                    }
+                    while (array ? reader.hasNext() : reader.peek() != JsonToken.END_DOCUMENT) {
+                        JsonObject result = new JsonObject();
+                        try {
+                            TwitchEvent event = decoder.decode(reader);
+                            switch (ingestQueue.admit(event)) {
+                                case QUEUED:
+                                    result.addProperty("status", "queued");
+                                    queued++;
+                                    break;
+                                case DUPLICATE:
+                                    result.addProperty("status", "duplicate");
+                                    duplicates++;
+                                    break;
+                                case RATE_LIMITED:
+                                    int wait = ingestQueue.getRetryAfterSeconds(event);
+                                    result.addProperty("status", "rate_limited");
+                                    result.addProperty("retryAfter", wait);
+                                    retryAfter = Math.max(retryAfter, wait);
+                                    full++;
+                                    break;
+                                default:
+                                    result.addProperty("status", "queue_full");
+                                    full++;
+                            }
+                        } catch (EventDecoder.InvalidEventException e) {
+                            // The item was fully consumed, so the rest of the batch is still readable
+                            metrics.invalid();
+                            result.addProperty("status", "invalid");
+                            result.addProperty("message", e.getMessage());
+                        }
+                        results.add(result);
+                    }
+                    if (array) {
+                        reader.endArray();
                     }
-                    
-                    // Parse JSON
-                    JsonObject json = gson.fromJson(body, JsonObject.class);
-                    String eventType = json.get("eventType").getAsString();
-                    JsonObject data = json.getAsJsonObject("data");
-                    
-                    // Process event on main thread
-                    Bukkit.getScheduler().runTask(TwitchStreamPlugin.this, () -> {
-                        eventHandler.handleEvent(eventType, data);
-                    });
-                    
-                    // Send response
-                    String response = "{\"status\":\"success\",\"message\":\"Event processed\"}";
-                    exchange.getResponseHeaders().set("Content-Type", "application/json");
-                    exchange.sendResponseHeaders(200, response.length());
-                    OutputStream os = exchange.getResponseBody();
-                    os.write(response.getBytes());
-                    os.close();
-                    
-                } catch (Exception e) {
-                    getLogger().warning("Error processing event: " + e.getMessage());
-                    e.printStackTrace();
-                    
-                    String response = "{\"status\":\"error\",\"message\":\"" + e.getMessage() + "\"}";
-                    exchange.sendResponseHeaders(500, response.length());
-                    OutputStream os = exchange.getResponseBody();
-                    os.write(response.getBytes());
-                    os.close();
+                } catch (JsonParseException | IOException | IllegalStateException e) {
+                    // Items before the syntax error were already queued; report them and stop here
+                    streamError = e.getMessage();
                 }
-            } else {
-                // Method not allowed
-                exchange.sendResponseHeaders(405, -1);
+                
+                eventLog.log(settings.isLogEvents() ? EventLog.Level.INFO : EventLog.Level.DEBUG, "http",
+                        "Received batch of " + results.size() + " event(s), " + queued + " queued", null, null);
+                        
+                JsonObject response = new JsonObject();
+                response.addProperty("status", streamError != null ? "partial" : "success");
+                response.addProperty("queued", queued);
+                response.addProperty("duplicates", duplicates);
+                response.addProperty("rejected", results.size() - queued - duplicates);
+                if (streamError != null) {
+                    response.addProperty("message", "Malformed batch after item " + results.size() + ": " + streamError);
+                }
+                response.add("results", results);
+                
+                int status = 200;
+                if (full > 0) {
+                    exchange.getResponseHeaders().set("Retry-After",
+                            String.valueOf(Math.max(tenant.getSettings().getRetryAfterSeconds(), retryAfter)));
+                    if (queued == 0 && duplicates == 0) {
+                        status = retryAfter > 0 ? 429 : 503;
+                    }
+                } else if (streamError != null && results.size() == 0) {
+                    status = 400;
+                }
+                server.sendJson(exchange, status, response.toString());
+                
+            } catch (IngestServer.BodyTooLargeException e) {
+                exchange.getResponseHeaders().set("Connection", "close");
+                server.sendStatus(exchange, 413, "error", e.getMessage());
+            } catch (Exception e) {
+                eventLog.warn("http", "Error processing event batch: " + e.getMessage(), e);
+                server.sendStatus(exchange, 500, "error", String.valueOf(e.getMessage()));
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+    
+    // Events from one stream connection. Routed per event from the connection's HELLO, so a reload
+    // that adds or removes tenants applies to open connections too.
+    private class StreamSink implements StreamServer.Sink {
+        private final String tenantId;
+        private final String userName;
+        private final String userId;
+        // Journal seq the ACKs sent next have to wait for (journal.sync_ack)
+        private volatile long durableSeq;
+        
+        StreamSink(String tenantId, String userName, String userId) {
+            this.tenantId = tenantId;
+            this.userName = userName;
+            this.userId = userId;
+        }
+        
+        @Override
+        public StreamServer.Ack accept(long seq, byte[] body) {
+            Tenant tenant = route(tenantId, userName, userId);
+            if (tenant == null) {
+                return new StreamServer.Ack(seq, StreamServer.UNKNOWN_TENANT, 0);
+            }
+            IngestQueue ingestQueue = tenant.getIngestQueue();
+            try {
+                TwitchEvent event = decoder.decode(new ByteArrayInputStream(body));
+                eventLog.log(settings.isLogEvents() ? EventLog.Level.INFO : EventLog.Level.DEBUG, "stream", "Received", event, null);
+                
+                switch (ingestQueue.admit(event, false)) {
+                    case QUEUED:
+                        if (journal != null && settings.isJournalSyncAck()) {
+                            durableSeq = journal.getAppendedSeq();
+                        }
+                        return new StreamServer.Ack(seq, StreamServer.QUEUED, 0);
+                    case DUPLICATE:
+                        return new StreamServer.Ack(seq, StreamServer.DUPLICATE, 0);
+                    case RATE_LIMITED:
+                        return new StreamServer.Ack(seq, StreamServer.RATE_LIMITED, ingestQueue.getRetryAfterSeconds(event));
+                    default:
+                        return new StreamServer.Ack(seq, StreamServer.QUEUE_FULL, tenant.getSettings().getRetryAfterSeconds());
+                }
+            } catch (JsonParseException | IllegalStateException | IOException e) {
+                metrics.invalid();
+                eventLog.warn("stream", "Rejected malformed event: " + e.getMessage());
+                return new StreamServer.Ack(seq, StreamServer.INVALID, 0);
+            } catch (RuntimeException e) {
+                eventLog.warn("stream", "Error processing event: " + e.getMessage(), e);
+                return new StreamServer.Ack(seq, StreamServer.FAILED, 0);
+            }
+        }
+        
+        @Override
+        public void awaitDurable() {
+            long seq = durableSeq;
+            if (journal == null || seq == 0) {
+                return;
+            }
+            try {
+                if (!journal.awaitDurable(seq, 1_000_000_000L)) {
+                    eventLog.warn("journal", "Journal flush is taking over a second");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
     }
     
+    // HTTP Handler for Prometheus scrapes
+    private class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                server.sendText(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", metrics.toPrometheus());
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+    
+    // HTTP Handler for GET /stats[?tenant=<id>][&top=<n>]: the history's in-memory sums, never the files
+    private class StatsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                EventHistory current = history;
+                if (current == null) {
+                    server.sendStatus(exchange, 404, "error", "Event history is disabled");
+                    return;
+                }
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                String id = query.getOrDefault("tenant", Tenant.DEFAULT).toLowerCase(Locale.ROOT);
+                if (!tenants.containsKey(id)) {
+                    server.sendStatus(exchange, 404, "error", "Unknown tenant");
+                    return;
+                }
+                int top;
+                try {
+                    top = Math.max(1, Math.min(100, Integer.parseInt(query.getOrDefault("top", "10"))));
+                } catch (NumberFormatException e) {
+                    server.sendStatus(exchange, 400, "error", "top must be a number");
+                    return;
+                }
+                server.sendJson(exchange, 200, current.toJson(id, top).toString());
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+    
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new LinkedHashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+    
     // HTTP Handler for health check
     private class HealthCheckHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            String response = "{\"status\":\"ok\",\"plugin\":\"TwitchStreamPlugin\"}";
-            exchange.getResponseHeaders().set("Content-Type", "application/json");
-            exchange.sendResponseHeaders(200, response.length());
-            OutputStream os = exchange.getResponseBody();
-            os.write(response.getBytes());
-            os.close();
+            try {
+                server.sendJson(exchange, 200, "{\"status\":\"ok\",\"plugin\":\"TwitchStreamPlugin\"}");
+            } finally {
+                exchange.close();
+            }
         }
     }
 }
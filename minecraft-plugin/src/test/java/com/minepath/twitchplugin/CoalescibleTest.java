@@ -0,0 +1,43 @@
+package com.minepath.twitchplugin;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescibleTest {
+
+    @Test
+    void giftsOfDifferentTiersDoNotShareAKey() {
+        GiftSubscriptionEvent tier1 = new GiftSubscriptionEvent("Viewer", null, 1, "1000", 0);
+        GiftSubscriptionEvent tier3 = new GiftSubscriptionEvent("viewer", null, 1, "3000", 0);
+        GiftSubscriptionEvent tier1Again = new GiftSubscriptionEvent("VIEWER", null, 4, "1000", 0);
+        assertFalse(tier1.getCoalesceKey().equals(tier3.getCoalesceKey()));
+        assertEquals(tier1.getCoalesceKey(), tier1Again.getCoalesceKey());
+    }
+
+    @Test
+    void mergeSumsAndKeepsTheFirstEvent() {
+        GiftSubscriptionEvent gift = (GiftSubscriptionEvent) new GiftSubscriptionEvent("a", "1", "m1", 2, "2000", 7)
+                .mergeWith(new GiftSubscriptionEvent("a", "1", "m2", 3, "2000", 9));
+        assertEquals(5, gift.getTotal());
+        assertEquals("2000", gift.getTier());
+        assertEquals("m1", gift.getMessageId());
+        assertEquals(7L, gift.getReceivedAt());
+
+        CheerEvent cheer = (CheerEvent) new CheerEvent("a", null, 100, "first", 0).mergeWith(new CheerEvent("a", null, 50, "second", 0));
+        assertEquals(150, cheer.getBits());
+        assertEquals("first", cheer.getMessage());
+
+        RaidEvent raid = (RaidEvent) new RaidEvent("a", null, 10, 0).mergeWith(new RaidEvent("a", null, 0, 0));
+        assertEquals(10, raid.getViewers());
+    }
+
+    @Test
+    void onlyAmountEventsCoalesce() {
+        assertTrue(new CheerEvent("a", null, 1, null, 0) instanceof Coalescible);
+        assertFalse((Object) new FollowEvent("a", null, null, 0) instanceof Coalescible);
+        assertFalse((Object) new SubscribeEvent("a", null, null, "1000", false, 0) instanceof Coalescible);
+    }
+}
@@ -0,0 +1,78 @@
+package com.minepath.twitchplugin;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DedupCacheTest {
+
+    private static final long HOUR = 3_600_000_000_000L;
+
+    @Test
+    void secondClaimIsADuplicate() {
+        DedupCache cache = new DedupCache(100);
+        assertTrue(cache.claim("a", HOUR));
+        assertFalse(cache.claim("a", HOUR));
+        assertTrue(cache.claim("b", HOUR));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void containsDoesNotClaim() {
+        DedupCache cache = new DedupCache(100);
+        assertFalse(cache.contains("a", HOUR));
+        // Checking left the ID free, e.g. for a redelivery of an event refused before its claim
+        assertTrue(cache.claim("a", HOUR));
+        assertTrue(cache.contains("a", HOUR));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void releasedIdsCanBeClaimedAgain() {
+        DedupCache cache = new DedupCache(100);
+        for (int i = 0; i < 40; i++) {
+            cache.claim("id-" + i, HOUR);
+        }
+        // Releases from the middle of probe chains must not lose the other IDs
+        for (int i = 0; i < 40; i += 2) {
+            cache.release("id-" + i);
+        }
+        assertEquals(20, cache.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i % 2 == 0, cache.claim("id-" + i, HOUR), "id-" + i);
+        }
+        cache.release("never-claimed");
+        assertEquals(40, cache.size());
+    }
+
+    @Test
+    void fullGenerationRotatesEarlyButKeepsThePreviousOne() {
+        DedupCache cache = new DedupCache(32);
+        for (int i = 0; i < 16; i++) {
+            assertTrue(cache.claim("id-" + i, HOUR));
+        }
+        // The current generation is full, so this claim rotates and the first 16 move to previous
+        assertTrue(cache.claim("next", HOUR));
+        assertEquals(1, cache.getEarlyRotations());
+        assertFalse(cache.claim("id-0", HOUR));
+        assertEquals(17, cache.size());
+    }
+
+    @Test
+    void idsExpireAfterTwiceTheTtl() throws InterruptedException {
+        DedupCache cache = new DedupCache(100);
+        long ttl = 1_000_000L;
+        assertTrue(cache.claim("a", ttl));
+        Thread.sleep(5);
+        assertTrue(cache.claim("a", ttl));
+    }
+
+    @Test
+    void hashNeverReturnsTheEmptyMarker() {
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(DedupCache.hash("m" + i) != 0);
+        }
+    }
+}
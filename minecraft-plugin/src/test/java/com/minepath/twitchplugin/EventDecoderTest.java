@@ -0,0 +1,77 @@
+package com.minepath.twitchplugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EventDecoderTest {
+
+    private final EventDecoder decoder = new EventDecoder();
+
+    private TwitchEvent decode(String json) throws IOException {
+        return decoder.decode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void assertRejected(String json) {
+        assertThrows(EventDecoder.InvalidEventException.class, () -> decode(json));
+    }
+
+    @Test
+    void zeroCountsAreAccepted() throws IOException {
+        assertEquals(0, ((CheerEvent) decode("{\"eventType\":\"cheer\",\"data\":{\"userName\":\"a\",\"bits\":0}}")).getBits());
+        assertEquals(0, ((GiftSubscriptionEvent) decode("{\"eventType\":\"gift_subscription\",\"data\":{\"userName\":\"a\",\"total\":0}}")).getTotal());
+        assertEquals(0, ((RaidEvent) decode("{\"eventType\":\"raid\",\"data\":{\"fromBroadcasterName\":\"a\",\"viewers\":0}}")).getViewers());
+    }
+
+    @Test
+    void numericStringsAreAccepted() throws IOException {
+        assertEquals(100, ((CheerEvent) decode("{\"eventType\":\"cheer\",\"data\":{\"userName\":\"a\",\"bits\":\" 100 \"}}")).getBits());
+    }
+
+    @Test
+    void missingCountsAreRejected() {
+        assertRejected("{\"eventType\":\"cheer\",\"data\":{\"userName\":\"a\"}}");
+        assertRejected("{\"eventType\":\"gift_subscription\",\"data\":{\"userName\":\"a\"}}");
+        assertRejected("{\"eventType\":\"raid\",\"data\":{\"fromBroadcasterName\":\"a\"}}");
+        assertRejected("{\"eventType\":\"raid\",\"data\":{\"fromBroadcasterName\":\"a\",\"viewers\":null}}");
+    }
+
+    @Test
+    void unparseableCountsAreRejected() {
+        assertRejected("{\"eventType\":\"raid\",\"data\":{\"fromBroadcasterName\":\"a\",\"viewers\":\"abc\"}}");
+        assertRejected("{\"eventType\":\"raid\",\"data\":{\"fromBroadcasterName\":\"a\",\"viewers\":{}}}");
+        assertRejected("{\"eventType\":\"cheer\",\"data\":{\"userName\":\"a\",\"bits\":1.5}}");
+        assertRejected("{\"eventType\":\"cheer\",\"data\":{\"userName\":\"a\",\"bits\":-5}}");
+    }
+
+    @Test
+    void hugeCountsAreClamped() throws IOException {
+        assertEquals(Integer.MAX_VALUE,
+                ((CheerEvent) decode("{\"eventType\":\"cheer\",\"data\":{\"userName\":\"a\",\"bits\":99999999999}}")).getBits());
+    }
+
+    @Test
+    void scratchFieldsDoNotLeakBetweenEvents() throws IOException {
+        decode("{\"eventType\":\"raid\",\"data\":{\"fromBroadcasterName\":\"a\",\"viewers\":5}}");
+        assertRejected("{\"eventType\":\"raid\",\"data\":{\"fromBroadcasterName\":\"a\"}}");
+    }
+
+    @Test
+    void dataMayComeBeforeEventType() throws IOException {
+        TwitchEvent event = decode("{\"data\":{\"userName\":\"a\",\"bits\":5},\"messageId\":\"m1\",\"eventType\":\"cheer\"}");
+        assertEquals(TwitchEvent.CHEER, event.getType());
+        assertEquals("m1", event.getMessageId());
+    }
+
+    @Test
+    void unknownTypeAndMissingUserAreRejected() {
+        assertRejected("{\"eventType\":\"nope\",\"data\":{\"userName\":\"a\"}}");
+        assertRejected("{\"eventType\":\"follow\",\"data\":{}}");
+        assertRejected("{\"data\":{\"userName\":\"a\"}}");
+    }
+}
@@ -0,0 +1,141 @@
+package com.minepath.twitchplugin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EventJournalTest {
+
+    private static final long FLUSH_NANOS = 1_000_000L;
+
+    @TempDir
+    File directory;
+
+    private static String payload(EventJournal.Entry entry) {
+        return new String(entry.getPayload(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void replaysOnlyEventsThatWereNotCompleted() throws IOException {
+        EventJournal journal = new EventJournal(directory, 64 * 1024, FLUSH_NANOS);
+        assertEquals(0, journal.open().size());
+        long first = journal.append("first");
+        long second = journal.append("second");
+        long third = journal.append("third");
+        // The first event's wave started spawning, so it was completed early; the third ran fully
+        journal.complete(first);
+        journal.complete(third);
+        journal.stop();
+
+        EventJournal reopened = new EventJournal(directory, 64 * 1024, FLUSH_NANOS);
+        List<EventJournal.Entry> entries = reopened.open();
+        assertEquals(1, entries.size());
+        assertEquals(second, entries.get(0).getSeq());
+        assertEquals("second", payload(entries.get(0)));
+        assertEquals(1, reopened.getPendingCount());
+        // New events continue after the replayed ones
+        assertEquals(third + 1, reopened.append("fourth"));
+        reopened.stop();
+    }
+
+    @Test
+    void completingTwiceIsHarmless() throws IOException {
+        EventJournal journal = new EventJournal(directory, 64 * 1024, FLUSH_NANOS);
+        journal.open();
+        long seq = journal.append("event");
+        journal.complete(seq);
+        journal.complete(seq);
+        assertEquals(0, journal.getPendingCount());
+        journal.stop();
+        assertEquals(0, new EventJournal(directory, 64 * 1024, FLUSH_NANOS).open().size());
+    }
+
+    @Test
+    void rotationCarriesPendingEventsForward() throws IOException {
+        EventJournal journal = new EventJournal(directory, 1024, FLUSH_NANOS);
+        journal.open();
+        long kept = journal.append("kept");
+        for (int i = 0; i < 200; i++) {
+            journal.complete(journal.append("filler-" + i));
+        }
+        // Old segments are compacted away, the pending event survives in the newest one
+        assertEquals(1, journal.getPendingCount());
+        assertEquals(1, journal.getSegmentCount());
+        journal.stop();
+
+        List<EventJournal.Entry> entries = new EventJournal(directory, 1024, FLUSH_NANOS).open();
+        assertEquals(1, entries.size());
+        assertEquals(kept, entries.get(0).getSeq());
+        assertEquals("kept", payload(entries.get(0)));
+    }
+
+    @Test
+    void pendingEventsReplayInSeqOrderAfterCompaction() throws IOException {
+        EventJournal journal = new EventJournal(directory, 1024, FLUSH_NANOS);
+        journal.open();
+        List<Long> kept = new ArrayList<>();
+        // Seqs that a hash map would not keep in order (17 lands in an earlier bucket than 2)
+        for (int i = 1; i <= 40; i++) {
+            long seq = journal.append("event-" + i);
+            if (i == 2 || i == 17 || i == 33) {
+                kept.add(seq);
+            } else {
+                journal.complete(seq);
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            journal.complete(journal.append("filler-" + i));
+        }
+        assertEquals(1, journal.getSegmentCount());
+        journal.stop();
+
+        List<Long> replayed = new ArrayList<>();
+        for (EventJournal.Entry entry : new EventJournal(directory, 1024, FLUSH_NANOS).open()) {
+            replayed.add(entry.getSeq());
+        }
+        assertEquals(kept, replayed);
+    }
+
+    @Test
+    void largeRecordAfterRotationStillFits() throws IOException {
+        EventJournal journal = new EventJournal(directory, 1024, FLUSH_NANOS);
+        journal.open();
+        long pending = journal.append(repeat('p', 400));
+        // Does not fit behind the pending event, and moving that event forward would leave no room either
+        long large = journal.append(repeat('l', 600));
+        journal.stop();
+
+        List<EventJournal.Entry> entries = new EventJournal(directory, 1024, FLUSH_NANOS).open();
+        assertEquals(2, entries.size());
+        assertEquals(pending, entries.get(0).getSeq());
+        assertEquals(large, entries.get(1).getSeq());
+        assertEquals(600, entries.get(1).getPayload().length);
+    }
+
+    @Test
+    void recordLargerThanASegmentIsRefused() throws IOException {
+        EventJournal journal = new EventJournal(directory, 1024, FLUSH_NANOS);
+        journal.open();
+        assertThrows(IOException.class, () -> journal.append(repeat('x', 1024)));
+        // The journal is still usable afterwards
+        journal.append("small");
+        assertEquals(1, journal.getPendingCount());
+        journal.stop();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder out = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            out.append(c);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.minepath.twitchplugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntObjectMapTest {
+
+    @Test
+    void putGetRemove() {
+        IntObjectMap<String> map = new IntObjectMap<>(4);
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.get(1));
+        assertTrue(map.containsKey(1));
+        assertEquals(1, map.size());
+        assertEquals("b", map.remove(1));
+        assertNull(map.remove(1));
+        assertFalse(map.containsKey(1));
+        assertTrue(map.isEmpty());
+        assertThrows(NullPointerException.class, () -> map.put(2, null));
+    }
+
+    @Test
+    void removingFromTheMiddleOfAProbeChainKeepsTheRestReachable() {
+        // A small table makes the chains long and wrap around the end
+        IntObjectMap<Integer> map = new IntObjectMap<>(4);
+        for (int key = 0; key < 6; key++) {
+            map.put(key, key);
+        }
+        for (int removed = 0; removed < 6; removed++) {
+            assertEquals(Integer.valueOf(removed), map.remove(removed));
+            for (int key = removed + 1; key < 6; key++) {
+                assertEquals(Integer.valueOf(key), map.get(key), "key " + key + " after removing " + removed);
+            }
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void matchesHashMapUnderRandomChurn() {
+        Random random = new Random(42);
+        IntObjectMap<Integer> map = new IntObjectMap<>(8);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int op = 0; op < 200_000; op++) {
+            // Entity IDs are small and dense, and so are these keys
+            int key = random.nextInt(512);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, op), map.put(key, op));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = 0; key < 512; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        Map<Integer, Integer> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+    }
+}
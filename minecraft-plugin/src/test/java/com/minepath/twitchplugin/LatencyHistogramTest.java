@@ -0,0 +1,47 @@
+package com.minepath.twitchplugin;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void everyValueFallsInsideItsBucket() {
+        long previousUpper = -1;
+        for (int index = 0; index < 600; index++) {
+            long upper = LatencyHistogram.upperBound(index);
+            assertTrue(upper > previousUpper, "bucket " + index);
+            // Buckets are contiguous: the first value after the previous bucket belongs here
+            assertEquals(index, LatencyHistogram.index(previousUpper + 1), "lower edge of " + index);
+            assertEquals(index, LatencyHistogram.index(upper), "upper edge of " + index);
+            previousUpper = upper;
+        }
+    }
+
+    @Test
+    void bucketsAreWithinSixPercent() {
+        for (long value = 32; value > 0 && value < Long.MAX_VALUE / 2; value = value * 3 / 2 + 7) {
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+            assertTrue(upper >= value && upper - value <= value / 16, "value " + value + " upper " + upper);
+        }
+    }
+
+    @Test
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().percentileNanos(0.99));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-5);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(101, snapshot.getCount());
+        assertEquals(5_050_000L, snapshot.getSumNanos());
+        assertEquals(100_000L, snapshot.getMaxNanos());
+        long p50 = snapshot.percentileNanos(0.5);
+        assertTrue(p50 >= 49_000 && p50 <= 53_000, "p50 " + p50);
+        assertEquals(100_000L, snapshot.percentileNanos(1.0));
+    }
+}
@@ -0,0 +1,58 @@
+package com.minepath.twitchplugin;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    @Test
+    void burstIsAvailableThenLimited() {
+        RateLimiter limiter = new RateLimiter();
+        assertEquals(0, limiter.tryAcquire("viewer", 1, 2));
+        assertEquals(0, limiter.tryAcquire("viewer", 1, 2));
+        long wait = limiter.tryAcquire("viewer", 1, 2);
+        assertTrue(wait > 0 && wait <= 1_000_000_000L, "wait " + wait);
+        assertTrue(limiter.waitNanos("viewer", 1, 2) > 0);
+        // Other keys have their own bucket
+        assertEquals(0, limiter.tryAcquire("other", 1, 2));
+    }
+
+    @Test
+    void zeroRateIsUnlimited() {
+        RateLimiter limiter = new RateLimiter();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.tryAcquire("viewer", 0, 1));
+        }
+        assertEquals(0, limiter.waitNanos("viewer", 0, 1));
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    void evictIdleKeepsDrainedBuckets() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.tryAcquire("drained", 0.001, 1);
+        assertEquals(1, limiter.evictIdle(0.001, 1));
+    }
+
+    @Test
+    void evictIdleDropsFullBuckets() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.tryAcquire("used", 1, 5);
+        // A burst of 1 is already full again
+        assertEquals(0, limiter.evictIdle(1, 1));
+    }
+
+    @Test
+    void evictIdleAfterReloadToZeroRate() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.tryAcquire("a", 1, 1);
+        limiter.tryAcquire("b", 1, 1);
+        assertEquals(2, limiter.size());
+        // rate: 0 means no limit, so every bucket goes
+        assertEquals(0, limiter.evictIdle(0, 1));
+        assertEquals(0, limiter.size());
+        assertEquals(0, limiter.evictIdle(-1, 1));
+    }
+}
@@ -0,0 +1,109 @@
+package com.minepath.twitchplugin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayBacklogTest {
+
+    private static final long FLUSH_NANOS = 1_000_000L;
+
+    @TempDir
+    File directory;
+
+    private final EventDecoder decoder = new EventDecoder();
+
+    private EventJournal reopen() {
+        return new EventJournal(directory, 64 * 1024, FLUSH_NANOS);
+    }
+
+    // What IngestQueue.replay() does with the entries a restart finds open
+    private ReplayBacklog replay(EventJournal journal, List<EventJournal.Entry> entries) throws IOException {
+        ReplayBacklog backlog = new ReplayBacklog();
+        for (EventJournal.Entry entry : entries) {
+            TwitchEvent event = decoder.decode(new ByteArrayInputStream(entry.getPayload()));
+            backlog.add(event, new JournalCompletion(new long[] {entry.getSeq()}, 1, seq -> {
+                try {
+                    journal.complete(seq);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        return backlog;
+    }
+
+    @Test
+    void entryReplayedBeforeAnyPlayerIsOnlineStaysOpen() throws IOException {
+        EventJournal journal = reopen();
+        journal.open();
+        journal.append(new EventEncoder().encode(new CheerEvent("viewer", null, 500, null, 0)));
+        journal.stop();
+
+        // Restart: nobody has joined yet, so the event finds no target
+        journal = reopen();
+        ReplayBacklog backlog = replay(journal, journal.open());
+        assertEquals(0, backlog.drain((event, completion) -> false, 10));
+        assertEquals(1, backlog.size());
+        assertEquals(1, journal.getPendingCount());
+        journal.stop();
+
+        // Still there after another restart; this time the streamer is online
+        journal = reopen();
+        List<EventJournal.Entry> entries = journal.open();
+        assertEquals(1, entries.size());
+        backlog = replay(journal, entries);
+        List<TwitchEvent> ran = new ArrayList<>();
+        assertEquals(1, backlog.drain((event, completion) -> ran.add(event), 10));
+        assertTrue(backlog.isEmpty());
+        assertEquals(500, ((CheerEvent) ran.get(0)).getBits());
+        assertEquals(0, journal.getPendingCount());
+        journal.stop();
+        assertEquals(0, reopen().open().size());
+    }
+
+    @Test
+    void drainStopsAtTheFirstEventThatCannotRun() {
+        ReplayBacklog backlog = new ReplayBacklog();
+        List<Long> completed = new ArrayList<>();
+        for (long seq = 1; seq <= 3; seq++) {
+            backlog.add(new FollowEvent("viewer" + seq, null, null, 0),
+                    new JournalCompletion(new long[] {seq}, 1, completed::add));
+        }
+        List<String> ran = new ArrayList<>();
+        assertEquals(1, backlog.drain((event, completion) -> ran.size() < 1 && ran.add(event.getUserName()), 10));
+        assertEquals(List.of("viewer1"), ran);
+        assertEquals(List.of(1L), completed);
+        assertEquals(2, backlog.size());
+        // The budget is respected once targets are back
+        assertEquals(1, backlog.drain((event, completion) -> true, 1));
+        assertEquals(List.of(1L, 2L), completed);
+    }
+
+    @Test
+    void waveHoldingTheCompletionKeepsTheEntryOpen() {
+        ReplayBacklog backlog = new ReplayBacklog();
+        List<Long> completed = new ArrayList<>();
+        JournalCompletion held = new JournalCompletion(new long[] {7}, 1, completed::add);
+        backlog.add(new FollowEvent("viewer", null, null, 0), held);
+        // The event queued a wave, which retains the completion until it has spawned
+        backlog.drain((event, completion) -> {
+            completion.retain();
+            return true;
+        }, 10);
+        assertFalse(held.isCompleted());
+        held.release();
+        assertTrue(held.isCompleted());
+        assertEquals(List.of(7L), completed);
+    }
+}
@@ -0,0 +1,36 @@
+package com.minepath.twitchplugin;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RuleCountTest {
+
+    private static GiftSubscriptionEvent gift(int total) {
+        return new GiftSubscriptionEvent("gifter", null, total, "1000", 0);
+    }
+
+    @Test
+    void legacyGiftOfZeroSubsSpawnsNothing() {
+        RuleCount count = RuleCount.scaled(5, 1, 0);
+        assertEquals(0, count.of(gift(0)));
+        assertEquals(5, count.of(gift(1)));
+        assertEquals(15, count.of(gift(3)));
+    }
+
+    @Test
+    void legacyRaidBelowOneLotSpawnsNothing() {
+        RuleCount count = RuleCount.scaled(1, 10, 20);
+        assertEquals(0, count.of(new RaidEvent("raider", null, 9, 0)));
+        assertEquals(2, count.of(new RaidEvent("raider", null, 25, 0)));
+        assertEquals(20, count.of(new RaidEvent("raider", null, 10_000, 0)));
+    }
+
+    @Test
+    void rulesGiveAtLeastOneLot() {
+        assertEquals(1, new RuleCount(1, 100, 0).of(new CheerEvent("cheerer", null, 50, null, 0)));
+        assertEquals(3, new RuleCount(3, 1, 0).of(gift(0)));
+        // per 0 is a fixed amount
+        assertEquals(4, new RuleCount(4, 0, 0).of(gift(7)));
+    }
+}
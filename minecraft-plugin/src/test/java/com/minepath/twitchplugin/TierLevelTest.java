@@ -0,0 +1,31 @@
+package com.minepath.twitchplugin;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TierLevelTest {
+
+    @Test
+    void spellingsOfATierAreTheSameLevel() {
+        assertEquals(1, TwitchEvent.tierLevel("1000"));
+        assertEquals(1, TwitchEvent.tierLevel("1"));
+        assertEquals(2, TwitchEvent.tierLevel("Tier2"));
+        assertEquals(3, TwitchEvent.tierLevel(" tier 3 "));
+        assertEquals(TwitchEvent.TIER_PRIME, TwitchEvent.tierLevel("Prime"));
+    }
+
+    @Test
+    void unknownTiersAreNone() {
+        assertEquals(TwitchEvent.TIER_NONE, TwitchEvent.tierLevel(null));
+        assertEquals(TwitchEvent.TIER_NONE, TwitchEvent.tierLevel(""));
+        assertEquals(TwitchEvent.TIER_NONE, TwitchEvent.tierLevel("4000"));
+    }
+
+    @Test
+    void eventsParseTheirTierOnce() {
+        assertEquals(3, new SubscribeEvent("a", null, "3000", false, 0).getTierLevel());
+        assertEquals(TwitchEvent.TIER_PRIME, new GiftSubscriptionEvent("a", null, 1, "prime", 0).getTierLevel());
+        assertEquals(TwitchEvent.TIER_NONE, new CheerEvent("a", null, 1, null, 0).getTierLevel());
+    }
+}
@@ -0,0 +1,218 @@
+const net = require('net');
+
+// Persistent connection to the plugin's event stream (stream.* in the plugin's config.yml).
+// Frames are a 4-byte length of what follows, a type byte and a body; see StreamServer.java.
+const HELLO = 1;
+const EVENT = 2;
+const PING = 3;
+const WELCOME = 0x81;
+const ACK = 0x82;
+const ERROR = 0x84;
+
+// ACK status byte -> name, matching the item statuses of the HTTP batch endpoint
+const STATUSES = ['queued', 'duplicate', 'rate_limited', 'queue_full', 'invalid', 'unknown_tenant', 'failed'];
+
+const RECONNECT_ATTEMPTS = 3;
+const RECONNECT_BASE_MS = 250;
+// After giving up, sends fail straight away for this long so callers go to HTTP without waiting
+const UNAVAILABLE_MS = 30000;
+const PING_INTERVAL_MS = 30000;
+
+class MinecraftStream {
+  // hello: { tenant, userName, userId }, routed like the X-Tenant-ID / X-User-* headers
+  constructor(host, port, hello, { connectTimeoutMs = 3000, ackTimeoutMs = 5000 } = {}) {
+    this.host = host;
+    this.port = port;
+    this.hello = hello;
+    this.connectTimeoutMs = connectTimeoutMs;
+    this.ackTimeoutMs = ackTimeoutMs;
+    this.socket = null;
+    this.open = false;
+    this.closed = false;
+    this.window = 1;
+    this.nextSeq = 1;
+    // seq -> { frame, resolve, reject, sentAt }, in send order; resent after a reconnect
+    this.inFlight = new Map();
+    // Sent once the window has room
+    this.waiting = [];
+    this.buffer = Buffer.alloc(0);
+    this.attempts = 0;
+    this.reconnecting = null;
+    this.unavailableUntil = 0;
+    this.lastError = null;
+    this.timer = null;
+    this.lastPing = 0;
+  }
+
+  isAvailable() {
+    return !this.closed && Date.now() >= this.unavailableUntil;
+  }
+
+  // Resolves with { status, retryAfter } once the plugin has acknowledged the event. Rejects when
+  // the stream cannot be (re)established; the caller should then fall back to HTTP.
+  send(event) {
+    if (!this.isAvailable()) {
+      return Promise.reject(this.lastError || new Error('Minecraft stream unavailable'));
+    }
+    return new Promise((resolve, reject) => {
+      const body = Buffer.from(JSON.stringify(event), 'utf8');
+      const frame = Buffer.alloc(4 + 1 + 8 + body.length);
+      frame.writeUInt32BE(1 + 8 + body.length, 0);
+      frame.writeUInt8(EVENT, 4);
+      frame.writeBigUInt64BE(BigInt(this.nextSeq++), 5);
+      body.copy(frame, 13);
+      this.waiting.push({ frame, resolve, reject, sentAt: 0 });
+      this.connect();
+      this.pump();
+    });
+  }
+
+  close() {
+    this.closed = true;
+    clearTimeout(this.reconnecting);
+    if (this.socket) this.socket.destroy();
+    this.failAll(new Error('Minecraft stream closed'));
+  }
+
+  connect() {
+    if (this.socket || this.reconnecting || this.closed) return;
+    const socket = net.connect({ host: this.host, port: this.port });
+    this.socket = socket;
+    socket.setNoDelay(true);
+    socket.setKeepAlive(true, PING_INTERVAL_MS);
+    socket.setTimeout(this.connectTimeoutMs, () => socket.destroy(new Error('Minecraft stream connect timeout')));
+
+    socket.on('connect', () => {
+      socket.setTimeout(0);
+      this.writeFrame(HELLO, Buffer.from(JSON.stringify(this.hello), 'utf8'));
+    });
+    socket.on('data', chunk => this.onData(chunk));
+    socket.on('error', error => { this.lastError = error; });
+    socket.on('close', () => this.onClose());
+  }
+
+  onData(chunk) {
+    this.buffer = this.buffer.length ? Buffer.concat([this.buffer, chunk]) : chunk;
+    while (this.buffer.length >= 5) {
+      const length = this.buffer.readUInt32BE(0);
+      if (this.buffer.length < 4 + length) break;
+      const type = this.buffer.readUInt8(4);
+      const body = this.buffer.subarray(5, 4 + length);
+      this.buffer = this.buffer.subarray(4 + length);
+
+      if (type === ACK) {
+        const seq = Number(body.readBigUInt64BE(0));
+        const entry = this.inFlight.get(seq);
+        if (entry) {
+          this.inFlight.delete(seq);
+          entry.resolve({ status: STATUSES[body.readUInt8(8)] || 'failed', retryAfter: body.readInt32BE(9) });
+        }
+      } else if (type === WELCOME) {
+        const welcome = JSON.parse(body.toString('utf8'));
+        this.window = Math.max(1, welcome.window || 1);
+        this.open = true;
+        this.attempts = 0;
+        this.unavailableUntil = 0;
+        console.log(`🔌 Event stream to Minecraft at ${this.host}:${this.port} open (window ${this.window})`);
+        this.startTimer();
+        // Whatever was unacknowledged when the last connection dropped goes first; the plugin
+        // drops the ones it already had by messageId
+        const now = Date.now();
+        for (const entry of this.inFlight.values()) {
+          entry.sentAt = now;
+          this.socketWrite(entry.frame);
+        }
+      } else if (type === ERROR) {
+        this.lastError = new Error(`Minecraft stream error: ${body.toString('utf8')}`);
+        console.warn(`⚠️ ${this.lastError.message}`);
+        // Refused at HELLO (unknown tenant, too many connections): reconnecting won't help
+        if (!this.open) this.attempts = RECONNECT_ATTEMPTS;
+      }
+      // PONG needs no handling, any data keeps the connection alive
+    }
+    this.pump();
+  }
+
+  pump() {
+    if (!this.open) return;
+    const now = Date.now();
+    while (this.waiting.length && this.inFlight.size < this.window) {
+      const entry = this.waiting.shift();
+      entry.sentAt = now;
+      this.inFlight.set(Number(entry.frame.readBigUInt64BE(5)), entry);
+      this.socketWrite(entry.frame);
+    }
+  }
+
+  onClose() {
+    this.socket = null;
+    this.open = false;
+    this.buffer = Buffer.alloc(0);
+    clearInterval(this.timer);
+    if (this.closed || (!this.inFlight.size && !this.waiting.length)) return;
+
+    if (this.attempts >= RECONNECT_ATTEMPTS) {
+      this.attempts = 0;
+      this.unavailableUntil = Date.now() + UNAVAILABLE_MS;
+      this.failAll(this.lastError || new Error('Minecraft stream closed'));
+      return;
+    }
+    const delay = RECONNECT_BASE_MS * Math.pow(2, this.attempts++);
+    this.reconnecting = setTimeout(() => {
+      this.reconnecting = null;
+      this.connect();
+    }, delay);
+    this.reconnecting.unref();
+  }
+
+  failAll(error) {
+    const entries = [...this.inFlight.values(), ...this.waiting];
+    this.inFlight.clear();
+    this.waiting = [];
+    entries.forEach(entry => entry.reject(error));
+  }
+
+  // Once a second: ping when idle, and drop a connection whose ACKs have stopped coming so the
+  // events in flight are resent on a new one
+  startTimer() {
+    clearInterval(this.timer);
+    this.lastPing = Date.now();
+    this.timer = setInterval(() => {
+      const now = Date.now();
+      const oldest = this.inFlight.values().next().value;
+      if (oldest && now - oldest.sentAt > this.ackTimeoutMs) {
+        this.lastError = new Error('Minecraft stream ACK timeout');
+        if (this.socket) this.socket.destroy();
+        return;
+      }
+      if (now - this.lastPing >= PING_INTERVAL_MS) {
+        this.lastPing = now;
+        const body = Buffer.alloc(8);
+        body.writeBigUInt64BE(BigInt(now), 0);
+        this.writeFrame(PING, body);
+      }
+    }, 1000);
+    this.timer.unref();
+  }
+
+  writeFrame(type, body) {
+    const frame = Buffer.alloc(5 + body.length);
+    frame.writeUInt32BE(1 + body.length, 0);
+    frame.writeUInt8(type, 4);
+    body.copy(frame, 5);
+    this.socketWrite(frame);
+  }
+
+  // Frames written in the same tick go out together
+  socketWrite(frame) {
+    const socket = this.socket;
+    if (!socket) return;
+    if (socket.writableCorked === 0) {
+      socket.cork();
+      process.nextTick(() => socket.uncork());
+    }
+    socket.write(frame);
+  }
+}
+
+module.exports = MinecraftStream;
@@ -182,30 +182,34 @@ router.post('/:userId', async (req, res) => {
           return res.status(204).send();
       }
 
-      // Forward to Minecraft server
+      // Acknowledge before forwarding: retries, backoff and the batch window can take far longer
+      // than Twitch waits for a response, and a late answer gets the event redelivered
+      res.status(204).send();
+
+      // Forward to Minecraft server in the background
       if (eventData) {
-        try {
-          await twitchService.sendToMinecraft(user, eventData.eventType, eventData.data);
-          
-          // Store event for web dashboard
-          const eventForDashboard = {
-            id: Date.now().toString() + Math.random().toString(36).substr(2, 9),
-            eventType: eventData.eventType,
-            timestamp: new Date().toISOString(),
-            data: eventData.data,
-            userName: eventData.data.userName || eventData.data.fromBroadcasterName || 'Anonymous'
-          };
-          
-          addEvent(userId, eventForDashboard);
-          console.log(`📊 Event stored for dashboard: ${eventData.eventType}`);
-          
-        } catch (error) {
-          console.error(`❌ Failed to forward event to Minecraft for ${user.username}:`, error.message);
-          // Still return 204 to acknowledge receipt from Twitch
-        }
+        // The message ID lets the plugin drop Twitch redeliveries and our own retries
+        twitchService.sendToMinecraft(user, eventData.eventType, eventData.data,
+          req.headers['twitch-eventsub-message-id'])
+          .then(() => {
+            // Store event for web dashboard
+            const eventForDashboard = {
+              id: Date.now().toString() + Math.random().toString(36).substr(2, 9),
+              eventType: eventData.eventType,
+              timestamp: new Date().toISOString(),
+              data: eventData.data,
+              userName: eventData.data.userName || eventData.data.fromBroadcasterName || 'Anonymous'
+            };
+
+            addEvent(userId, eventForDashboard);
+            console.log(`📊 Event stored for dashboard: ${eventData.eventType}`);
+          })
+          .catch(error => {
+            console.error(`❌ Failed to forward event to Minecraft for ${user.username}:`, error.message);
+          });
       }
 
-      return res.status(204).send();
+      return;
     }
 
     res.status(200).send();
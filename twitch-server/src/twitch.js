@@ -1,8 +1,42 @@
 const crypto = require('crypto');
 const axios = require('axios');
 const database = require('./database.postgres');
+const MinecraftStream = require('./minecraftStream');
+
+// Forwarding to the Minecraft plugin is batched over a short window to cut per-event round trips
+const BATCH_WINDOW_MS = parseInt(process.env.MINECRAFT_BATCH_WINDOW_MS || '15', 10);
+const BATCH_MAX_EVENTS = parseInt(process.env.MINECRAFT_BATCH_MAX_EVENTS || '100', 10);
+
+// Failed, refused (503) or rate limited (429) deliveries are retried; the plugin de-duplicates by messageId so this is safe
+const RETRY_ATTEMPTS = parseInt(process.env.MINECRAFT_RETRY_ATTEMPTS || '3', 10);
+const RETRY_BASE_MS = parseInt(process.env.MINECRAFT_RETRY_BASE_MS || '250', 10);
+
+// Port of the plugin's event stream (stream.port); 0 posts every event over HTTP
+const STREAM_PORT = parseInt(process.env.MINECRAFT_STREAM_PORT || '0', 10);
+
+const sleep = ms => new Promise(resolve => setTimeout(resolve, ms));
+
+// Network errors, 5xx and 429 responses are worth retrying; other 4xx means the event itself was rejected
+function isRetryable(error) {
+  const status = error?.response?.status;
+  return !status || status >= 500 || status === 429;
+}
+
+// Exponential backoff, but never sooner than the plugin's Retry-After
+function retryDelay(attempt, response) {
+  const retryAfter = parseInt(response?.headers?.['retry-after'], 10);
+  const backoff = RETRY_BASE_MS * Math.pow(2, attempt);
+  return Number.isFinite(retryAfter) ? Math.max(backoff, retryAfter * 1000) : backoff;
+}
 
 class TwitchService {
+  constructor() {
+    // "<userId>|<serverUrl>" -> events waiting to be sent together
+    this.pendingBatches = new Map();
+    // "<userId>|<serverUrl>" -> persistent stream to that server, when MINECRAFT_STREAM_PORT is set
+    this.streams = new Map();
+  }
+
   // Get app access token (for API calls that don't need user permission)
   async getAccessToken(userId) {
     const user = await database.getUserById(userId);
@@ -248,30 +282,205 @@ class TwitchService {
     }
   }
 
-  // Send event to Minecraft server
-  async sendToMinecraft(user, eventType, data) {
+  // Send event to Minecraft server.
+  // Events for the same server that arrive within MINECRAFT_BATCH_WINDOW_MS are sent together
+  // to the plugin's /twitch-events batch endpoint; each caller still gets its own item result.
+  // messageId (the EventSub message ID) makes delivery idempotent; one is generated if missing.
+  sendToMinecraft(user, eventType, data, messageId) {
+    const base = (user.minecraftServerUrl || '').toString().replace(/\/+$/,'');
+    messageId = messageId || crypto.randomUUID();
+
+    const stream = this.streamFor(user, base);
+    if (stream) {
+      return this.sendOverStream(stream, user, base, eventType, data, messageId);
+    }
+
+    if (BATCH_WINDOW_MS <= 0) {
+      return this.postSingleEvent(user, base, eventType, data, messageId);
+    }
+
+    const key = `${user.userId}|${base}`;
+    return new Promise((resolve, reject) => {
+      let batch = this.pendingBatches.get(key);
+      if (!batch) {
+        batch = { user, base, items: [], timer: null };
+        this.pendingBatches.set(key, batch);
+        batch.timer = setTimeout(() => this.flushBatch(key), BATCH_WINDOW_MS);
+      }
+
+      batch.items.push({ eventType, data, messageId, resolve, reject });
+      if (batch.items.length >= BATCH_MAX_EVENTS) {
+        clearTimeout(batch.timer);
+        this.flushBatch(key);
+      }
+    });
+  }
+
+  // One stream per streamer and server, opened on first use. null when streaming is off, the URL
+  // has no host or the stream recently failed (it then rejects until it is worth trying again).
+  streamFor(user, base) {
+    if (STREAM_PORT <= 0) return null;
+    const key = `${user.userId}|${base}`;
+    let stream = this.streams.get(key);
+    if (!stream) {
+      let host;
+      try {
+        host = new URL(base).hostname;
+      } catch (error) {
+        return null;
+      }
+      stream = new MinecraftStream(host, STREAM_PORT, { userName: user.username, userId: user.userId });
+      this.streams.set(key, stream);
+    }
+    return stream.isAvailable() ? stream : null;
+  }
+
+  // Same outcomes as a batch item: queue_full and rate_limited are retried over the stream, and
+  // if the stream itself goes down the event is posted over HTTP instead
+  async sendOverStream(stream, user, base, eventType, data, messageId) {
+    for (let attempt = 0; ; attempt++) {
+      let result;
+      try {
+        result = await stream.send({ eventType, messageId, data });
+      } catch (error) {
+        console.warn(`⚠️ Event stream to Minecraft unavailable (${error.message}), sending ${eventType} over HTTP`);
+        return this.postSingleEvent(user, base, eventType, data, messageId);
+      }
+
+      if (result.status === 'queued' || result.status === 'duplicate') {
+        return result;
+      }
+      if ((result.status === 'queue_full' || result.status === 'rate_limited') && attempt < RETRY_ATTEMPTS) {
+        await sleep(Math.max(retryDelay(attempt), (result.retryAfter || 0) * 1000));
+        continue;
+      }
+      const error = new Error(`Minecraft server did not queue ${eventType}: ${result.status}`);
+      error.result = result;
+      throw error;
+    }
+  }
+
+  async flushBatch(key) {
+    const batch = this.pendingBatches.get(key);
+    if (!batch) return;
+    this.pendingBatches.delete(key);
+
+    const { user, base, items } = batch;
+
+    // A lone event doesn't need the batch envelope
+    if (items.length === 1) {
+      const item = items[0];
+      this.postSingleEvent(user, base, item.eventType, item.data, item.messageId).then(item.resolve, item.reject);
+      return;
+    }
+
+    const targetUrl = `${base}/twitch-events`;
+    console.log(`→ Forwarding batch of ${items.length} events to Minecraft at ${targetUrl}`);
+
+    const post = () => axios.post(
+      targetUrl,
+      items.map(item => ({ eventType: item.eventType, messageId: item.messageId, data: item.data })),
+      {
+        timeout: 5000,
+        headers: {
+          'Content-Type': 'application/json',
+          'X-User-ID': user.userId,
+          // Lets a plugin hosting several streamers route by tenants.<id>.accounts
+          'X-User-Name': user.username
+        },
+        // Per-item statuses are in the body even when the plugin reports 503 or 429
+        validateStatus: status => status === 200 || status === 503 || status === 429
+      }
+    );
+
+    try {
+      let response;
+      for (let attempt = 0; ; attempt++) {
+        try {
+          response = await post();
+          break;
+        } catch (error) {
+          if (attempt >= RETRY_ATTEMPTS || !isRetryable(error)) throw error;
+          await sleep(retryDelay(attempt, error.response));
+        }
+      }
+
+      const results = (response.data && response.data.results) || [];
+      console.log(`✅ Sent batch to Minecraft server for ${user.username} (status ${response.status}, ${response.data?.queued ?? 0}/${items.length} queued)`);
+
+      items.forEach((item, index) => {
+        const result = results[index];
+        if (result && (result.status === 'queued' || result.status === 'duplicate')) {
+          item.resolve(result);
+        } else if (result && result.status === 'queue_full') {
+          // Retry just this event once the plugin has had time to drain its queue
+          sleep(retryDelay(0, response))
+            .then(() => this.postSingleEvent(user, base, item.eventType, item.data, item.messageId))
+            .then(item.resolve, item.reject);
+        } else if (result && result.status === 'rate_limited') {
+          // The viewer or event type is over the plugin's rate limit; wait as long as it asked
+          sleep(Math.max(retryDelay(0), (result.retryAfter || 1) * 1000))
+            .then(() => this.postSingleEvent(user, base, item.eventType, item.data, item.messageId))
+            .then(item.resolve, item.reject);
+        } else {
+          const error = new Error(`Minecraft server did not queue ${item.eventType}: ${result ? result.status : 'no result'}`);
+          error.result = result;
+          item.reject(error);
+        }
+      });
+    } catch (error) {
+      // Plugins without the batch endpoint answer 404; fall back to one request per event
+      if (error?.response?.status === 404) {
+        items.forEach(item => {
+          this.postSingleEvent(user, base, item.eventType, item.data, item.messageId).then(item.resolve, item.reject);
+        });
+        return;
+      }
+
+      console.error('❌ Error sending batch to Minecraft server:', {
+        target: user?.minecraftServerUrl,
+        events: items.length,
+        message: error?.message,
+        code: error?.code,
+        responseStatus: error?.response?.status,
+        responseData: error?.response?.data
+      });
+      items.forEach(item => item.reject(error));
+    }
+  }
+
+  async postSingleEvent(user, base, eventType, data, messageId) {
     try {
-      const base = (user.minecraftServerUrl || '').toString().replace(/\/+$/,'');
       const targetUrl = `${base}/twitch-event`;
       console.log(`→ Forwarding ${eventType} to Minecraft at ${targetUrl}`);
 
-      const response = await axios.post(
-        targetUrl,
-        {
-          eventType: eventType,
-          data: data
-        },
-        {
-          timeout: 5000,
-          headers: {
-            'Content-Type': 'application/json',
-            'X-User-ID': user.userId
-          }
+      for (let attempt = 0; ; attempt++) {
+        try {
+          const response = await axios.post(
+            targetUrl,
+            {
+              eventType: eventType,
+              messageId: messageId,
+              data: data
+            },
+            {
+              timeout: 5000,
+              headers: {
+                'Content-Type': 'application/json',
+                'X-User-ID': user.userId,
+                'X-User-Name': user.username
+              }
+            }
+          );
+
+          console.log(`✅ Sent ${eventType} to Minecraft server for ${user.username} (status ${response.status}, ${response.data?.status})`);
+          return response.data;
+        } catch (error) {
+          if (attempt >= RETRY_ATTEMPTS || !isRetryable(error)) throw error;
+          console.warn(`↻ Retrying ${eventType} to Minecraft (attempt ${attempt + 2}): ${error?.response?.status || error?.code || error?.message}`);
+          await sleep(retryDelay(attempt, error.response));
         }
-      );
-
-      console.log(`✅ Sent ${eventType} to Minecraft server for ${user.username} (status ${response.status})`);
-      return response.data;
+      }
     } catch (error) {
       // Log as much detail as possible to help debug network/SSL/errors from Render logs
       console.error('❌ Error sending to Minecraft server:', {